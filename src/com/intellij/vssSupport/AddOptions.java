@@ -46,10 +46,19 @@ public class AddOptions implements JDOMExternalizable
    * Creates option set for passed file.
    */
   public List<String> getOptions( VirtualFile virtualFile )
+  {
+    List<String> options = getOptions();
+    options.add( 1, virtualFile.getName() );
+    return options;
+  }
+
+  /**
+   * Creates option set without the items to add.
+   */
+  public List<String> getOptions()
   {
     ArrayList<String> options = new ArrayList<>();
     options.add( ADD_COMMAND );
-    options.add( virtualFile.getName() );
 
     //-- Comments --
     //  We use unified Checkin dialog for all operations - add new, update
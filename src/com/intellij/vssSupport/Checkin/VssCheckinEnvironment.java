@@ -2,10 +2,12 @@
 package com.intellij.vssSupport.Checkin;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
@@ -13,6 +15,7 @@ import com.intellij.openapi.vcs.changes.*;
 import com.intellij.openapi.vcs.checkin.CheckinEnvironment;
 import com.intellij.openapi.vcs.ui.RefreshableOnComponent;
 import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.NullableFunction;
 import com.intellij.util.PairConsumer;
@@ -21,11 +24,16 @@ import com.intellij.vssSupport.AddOptions;
 import com.intellij.vssSupport.CheckinOptions;
 import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssVcs;
+import com.intellij.vssSupport.commands.DirectoryCommand;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.intellij.util.containers.ContainerUtil.map;
 import static com.intellij.util.containers.ContainerUtil.map2Array;
@@ -68,6 +76,10 @@ public class VssCheckinEnvironment implements CheckinEnvironment
       additionalPanel.add( storeOnlyLatestVersion );
     }
 
+    final JLabel planSize = new JLabel();
+    additionalPanel.add( planSize );
+    final int[] planRequest = new int[ 1 ];
+
     return new RefreshableOnComponent()
     {
       public JComponent getComponent() {   return additionalPanel;    }
@@ -82,10 +94,61 @@ public class VssCheckinEnvironment implements CheckinEnvironment
       public void refresh() {
         storeOnlyLatestVersion.setSelected(addOptions.STORE_ONLY_LATEST_VERSION);
         keepCheckedOut.setSelected(checkinOptions.KEEP_CHECKED_OUT);
+
+        //  Planning asks the repository index which may be busy loading or
+        //  saving; do not hold the dialog for that. Only the last request
+        //  updates the label.
+        final Collection<Change> changes = panel.getSelectedChanges();
+        final int request = ++planRequest[ 0 ];
+        final ModalityState state = ModalityState.stateForComponent( planSize );
+        ApplicationManager.getApplication().executeOnPooledThread( () -> {
+          int size = ApplicationManager.getApplication().runReadAction( (Computable<Integer>)() -> getPlanSize( changes ) );
+          ApplicationManager.getApplication().invokeLater( () -> {
+            if( request == planRequest[ 0 ] )
+              planSize.setText( VssBundle.message( "label.commit.plan.size", size ));
+          }, state );
+        });
       }
     };
   }
 
+  /**
+   * Number of ss.exe commands the commit of the changes takes, as planned
+   * by <code>buildPlan</code>; renamed items and new folders take one
+   * command each, new subtrees - one, other new files - one per folder.
+   */
+  private int getPlanSize( Collection<Change> changes )
+  {
+    List<Change> list = new ArrayList<>( changes );
+    int size = buildPlan( list, null ).size();
+
+    HashSet<FilePath> newFolders = new HashSet<>();
+    HashSet<FilePath> newFiles = new HashSet<>();
+    collectNewChanges( list, newFolders, newFiles, new HashSet<>() );
+    FilePath[] foldersSorted = newFolders.toArray( new FilePath[ newFolders.size() ] );
+    Set<FilePath> trees = findNewTrees( VcsUtil.sortPathsFromOutermost( foldersSorted ), newFolders, newFiles );
+    for( FilePath folder : newFolders )
+    {
+      if( trees.contains( folder ) || !isUnderAny( folder, trees ) )
+        size++;
+    }
+    HashSet<FilePath> newFileFolders = new HashSet<>();
+    for( FilePath file : newFiles )
+    {
+      if( !isUnderAny( file, trees ) )
+        newFileFolders.add( file.getParentPath() );
+    }
+    size += newFileFolders.size();
+
+    for( Change change : list )
+    {
+      if( !VcsUtil.isChangeForNew( change ) && !VcsUtil.isChangeForDeleted( change ) &&
+          ( VcsUtil.isChangeForFolder( change ) ?  VcsUtil.isRenameChange( change ) : isRenamedFile( change ) ))
+        size++;
+    }
+    return size;
+  }
+
   private boolean isAnyNewFile( final Collection<VirtualFile> files )
   {
     FileStatusManager mgr = FileStatusManager.getInstance(project);
@@ -134,6 +197,7 @@ public class VssCheckinEnvironment implements CheckinEnvironment
     //  "X was checkout from Y folder, continue?" which are invevitable when
     //  we will checkin changed files under the renamed fodlers.
     boolean isAnyAddedFolder = adjustChangesWithRenamedParentFolders( changes );
+    VssCommitPlan plan = buildPlan( changes, errors );
 
     try
     {
@@ -153,12 +217,12 @@ public class VssCheckinEnvironment implements CheckinEnvironment
 
       commitRenamedFolders( changes, errors );
 
-      commitDeleted( changes, errors );
+      commitDeleted( changes, plan, errors );
 
       //  IMPORTANT!
       //  Committment of the changed files must be performed first because of
       //  specially processed exceptions described in the ChangeProvider.
-      commitChanged( changes, processedFiles, errors, isAnyAddedFolder );
+      commitChanged( changes, plan, processedFiles, errors, isAnyAddedFolder );
       commitNew( changes, processedFiles, errors );
     }
     catch( ProcessCanceledException e )
@@ -188,6 +252,87 @@ public class VssCheckinEnvironment implements CheckinEnvironment
     return isAnyAddedFolder;
   }
 
+  /**
+   * Plans the ss.exe runs for the plain checkins and the deletions: a folder
+   * subtree all of whose checked out files are committed is checked in by
+   * one recursive command, renamed items keep their own processing and
+   * prevent that for the folders above them.
+   * @param errors if not null, the folders found fit for the recursive
+   *               checkin in the repository index are confirmed by a fresh
+   *               "Dir" since the index may be outdated; otherwise the plan
+   *               is an estimate.
+   */
+  private VssCommitPlan buildPlan( List<Change> changes, @Nullable List<VcsException> errors )
+  {
+    List<String> checkins = new ArrayList<>();
+    List<String> deletions = new ArrayList<>();
+    List<String> deletedFolders = new ArrayList<>();
+    List<String> blocked = new ArrayList<>();
+    for( Change change : changes )
+    {
+      if( VcsUtil.isChangeForDeleted( change ) )
+      {
+        String path = VcsUtil.getCanonicalLocalPath( change.getBeforeRevision().getFile().getPath() );
+        deletions.add( path );
+        if( host.deletedFolders.contains( path ) )
+          deletedFolders.add( path );
+      }
+      else
+      if( !VcsUtil.isChangeForNew( change ) )
+      {
+        String path = VcsUtil.getCanonicalLocalPath( change.getAfterRevision().getFile().getPath() );
+        if( VcsUtil.isChangeForFolder( change ) || isRenamedFile( change ) )
+        {
+          blocked.add( path );
+          blocked.add( VcsUtil.getCanonicalLocalPath( change.getBeforeRevision().getFile().getPath() ));
+        }
+        else
+          checkins.add( path );
+      }
+    }
+
+    List<String> roots = new ArrayList<>();
+    for( VirtualFile root : ProjectLevelVcsManager.getInstance( project ).getRootsUnderVcs( host ) )
+      roots.add( VcsUtil.getCanonicalLocalPath( root.getPath() ) );
+
+    final VssRepositoryIndex index = VssRepositoryIndex.getInstance( project );
+    VssCommitPlan.CheckoutSource freshSource = errors == null ? null : folder -> queryCheckedOutFiles( folder, index, errors );
+    return VssCommitPlan.build( checkins, deletions, deletedFolders, blocked, roots, index::getCheckedOutFiles, freshSource );
+  }
+
+  /**
+   * Runs "Dir" for the folder and stores its result into the index.
+   * @return the files of the folder subtree checked out by the current user,
+   *         or null if the folder could not be listed.
+   */
+  @Nullable
+  private Set<String> queryCheckedOutFiles( String folder, VssRepositoryIndex index, List<VcsException> errors )
+  {
+    List<VcsException> dirErrors = new ArrayList<>();
+    try
+    {
+      DirectoryCommand cmd = new DirectoryCommand( project, folder, dirErrors );
+      cmd.execute();
+      if( !dirErrors.isEmpty() )
+      {
+        errors.addAll( dirErrors );
+        return null;
+      }
+      cmd.storeTo( index );
+    }
+    catch( IllegalArgumentException e )
+    {
+      return null;
+    }
+    return index.getCheckedOutFiles( folder );
+  }
+
+  private boolean isRenamedFile( Change change )
+  {
+    String path = VcsUtil.getCanonicalLocalPath( change.getAfterRevision().getFile().getPath() );
+    return host.renamedFiles.containsKey( path );
+  }
+
   private void commitRenamedFolders( List<Change> changes, List<VcsException> errors )
   {
     for( Change change : changes )
@@ -220,15 +365,70 @@ public class VssCheckinEnvironment implements CheckinEnvironment
     //  to the inner one.
     FilePath[] foldersSorted = folders.toArray( new FilePath[ folders.size() ] );
     foldersSorted = VcsUtil.sortPathsFromOutermost( foldersSorted );
+    Set<FilePath> trees = findNewTrees( foldersSorted, folders, files );
 
     for( FilePath folder : foldersSorted )
-      host.addFolder( folder.getVirtualFile(), errors );
+    {
+      if( trees.contains( folder ) )
+        host.addFolderTree( folder.getVirtualFile(), errors );
+      else
+      if( !isUnderAny( folder, trees ) )
+        host.addFolder( folder.getVirtualFile(), errors );
+    }
 
+    //  Files of one folder are added by one ss.exe run.
+    Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
     for( FilePath file : files )
     {
-      host.addFile( file.getVirtualFile(), errors );
-      incrementProgress( file.getPath() );
+      if( isUnderAny( file, trees ) )
+        incrementProgress( file.getPath() );
+      else
+        groups.computeIfAbsent( file.getVirtualFileParent(), parent -> new ArrayList<>() ).add( file.getVirtualFile() );
     }
+
+    for( List<VirtualFile> group : groups.values() )
+    {
+      host.addFiles( group, errors );
+      for( VirtualFile file : group )
+        incrementProgress( file.getPath() );
+    }
+  }
+
+  /**
+   * A new folder whose whole subtree is committed as new, without any
+   * ignored or unversioned item, is added by one recursive "Add": ss.exe
+   * takes everything it finds on the disk.
+   * @return the outermost of such folders.
+   */
+  private Set<FilePath> findNewTrees( FilePath[] foldersSorted, Set<FilePath> folders, Set<FilePath> files )
+  {
+    final Set<String> newPaths = new HashSet<>();
+    for( FilePath path : folders )
+      newPaths.add( path.getPath() );
+    for( FilePath path : files )
+      newPaths.add( path.getPath() );
+
+    final ChangeListManager mgr = ChangeListManager.getInstance( project );
+    Set<FilePath> trees = new HashSet<>();
+    for( FilePath folder : foldersSorted )
+    {
+      VirtualFile vFolder = folder.getVirtualFile();
+      if( vFolder != null && !isUnderAny( folder, trees ) &&
+          VfsUtilCore.iterateChildrenRecursively( vFolder, null, file -> !mgr.isIgnoredFile( file ) &&
+                                                                        newPaths.contains( file.getPath() )))
+        trees.add( folder );
+    }
+    return trees;
+  }
+
+  private static boolean isUnderAny( FilePath path, Set<FilePath> folders )
+  {
+    for( FilePath folder : folders )
+    {
+      if( path.isUnder( folder, true ) )
+        return true;
+    }
+    return false;
   }
 
   private void collectNewChanges( List<Change> changes, HashSet<FilePath> folders,
@@ -273,16 +473,19 @@ public class VssCheckinEnvironment implements CheckinEnvironment
     }
   }
 
-  private void commitDeleted( List<Change> changes, List<VcsException> errors )
+  private void commitDeleted( List<Change> changes, VssCommitPlan plan, List<VcsException> errors )
   {
+    //  Items of one folder are deleted by one ss.exe run, items under a
+    //  deleted folder are deleted together with it.
+    for( VssCommitPlan.Step step : plan.getDeletions() )
+      host.removeFiles( step.getPaths(), errors );
+
     for( Change change : changes )
     {
       if( VcsUtil.isChangeForDeleted( change ) )
       {
         final FilePath fp = change.getBeforeRevision().getFile();
         String path = VcsUtil.getCanonicalLocalPath( fp.getPath() );
-        host.removeFile( path, errors );
-
         host.deletedFiles.remove( path );
         host.deletedFolders.remove( path );
         ApplicationManager.getApplication().invokeLater(() -> VcsDirtyScopeManager.getInstance(project ).fileDirty(fp ));
@@ -290,9 +493,15 @@ public class VssCheckinEnvironment implements CheckinEnvironment
     }
   }
 
-  private void commitChanged( List<Change> changes, HashSet<FilePath> processedFiles,
+  private void commitChanged( List<Change> changes, VssCommitPlan plan, HashSet<FilePath> processedFiles,
                               List<VcsException> errors, boolean suppressWarns )
   {
+    //  Plain modifications are checked in by the steps of the plan, renamed
+    //  files are processed one by one, moved files - by one move per pair
+    //  of the source and target folders.
+    Map<String, FilePath> plainFiles = new HashMap<>();
+    Map<String, List<FilePath>> moves = new LinkedHashMap<>();
+    Map<FilePath, String> movedFrom = new HashMap<>();
     for( Change change : changes )
     {
       if( !VcsUtil.isChangeForNew( change ) &&
@@ -319,19 +528,94 @@ public class VssCheckinEnvironment implements CheckinEnvironment
           else
           {
             String newFolder = VcsUtil.getCanonicalLocalPath( file.getVirtualFileParent().getPath() );
-            host.moveRenameAndCheckInFile( prevPath, newFolder, file.getName(), errors );
+            moves.computeIfAbsent( oldFile.getParentPath().getPath() + "|" + newFolder, key -> new ArrayList<>() ).add( file );
+            movedFrom.put( file, prevPath );
+            host.renamedFiles.remove( newPath );
+            continue;
           }
           host.renamedFiles.remove( newPath );
         }
         else
         {
-          host.checkinFile( file.getVirtualFile(), errors, suppressWarns );
+          plainFiles.put( newPath, file );
+          continue;
         }
+        incrementProgress( file.getPath() );
+        processedFiles.add( file );
+      }
+    }
 
+    for( List<FilePath> group : moves.values() )
+    {
+      List<String> oldPaths = new ArrayList<>();
+      List<String> newPaths = new ArrayList<>();
+      for( FilePath file : group )
+      {
+        oldPaths.add( movedFrom.get( file ) );
+        newPaths.add( VcsUtil.getCanonicalLocalPath( file.getPath() ) );
+      }
+      host.moveAndCheckInFiles( oldPaths, newPaths, errors );
+
+      for( FilePath file : group )
+      {
         incrementProgress( file.getPath() );
         processedFiles.add( file );
       }
     }
+
+    //  The steps of the plan never share a folder, so they run at the same
+    //  time as far as the database allows; the results are collected in the
+    //  order of the plan.
+    List<List<FilePath>> stepFiles = new ArrayList<>();
+    List<List<CompletableFuture<List<VcsException>>>> stepResults = new ArrayList<>();
+    for( VssCommitPlan.Step step : plan.getCheckins() )
+    {
+      List<FilePath> files = map( step.getPaths(), plainFiles::get );
+      List<CompletableFuture<List<VcsException>>> results = new ArrayList<>();
+      VirtualFile folder = step.isRecursive() ? VcsUtil.getVirtualFile( step.getFolder() ) : null;
+      if( folder != null )
+        results.add( host.checkinFolder( folder, map( files, FilePath::getVirtualFile ), suppressWarns ));
+      else
+      {
+        Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
+        for( FilePath file : files )
+          groups.computeIfAbsent( file.getVirtualFileParent(), parent -> new ArrayList<>() ).add( file.getVirtualFile() );
+        for( List<VirtualFile> group : groups.values() )
+          results.add( host.checkinFiles( group, suppressWarns ));
+      }
+      stepFiles.add( files );
+      stepResults.add( results );
+    }
+
+    for( int i = 0; i < stepFiles.size(); i++ )
+    {
+      for( CompletableFuture<List<VcsException>> result : stepResults.get( i ) )
+        errors.addAll( join( result ) );
+
+      for( FilePath file : stepFiles.get( i ) )
+      {
+        incrementProgress( file.getPath() );
+        processedFiles.add( file );
+      }
+    }
+  }
+
+  /**
+   * @return the errors of the finished command, or of its failure; the
+   *         cancellation of the command is thrown to the caller.
+   */
+  private static List<VcsException> join( CompletableFuture<List<VcsException>> result ) throws ProcessCanceledException
+  {
+    try
+    {
+      return result.join();
+    }
+    catch( CompletionException e )
+    {
+      if( e.getCause() instanceof ProcessCanceledException )
+        throw (ProcessCanceledException)e.getCause();
+      return Collections.singletonList( new VcsException( e.getCause() ));
+    }
   }
 
   public List<VcsException> scheduleMissingFileForDeletion( List<FilePath> paths )
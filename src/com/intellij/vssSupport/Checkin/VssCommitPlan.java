@@ -0,0 +1,270 @@
+package com.intellij.vssSupport.Checkin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Execution plan of a commit: which ss.exe runs check in and delete the
+ * committed items. Checkins of one folder are made by one run; a folder
+ * subtree whose checked out files are all committed as plain modifications
+ * is checked in by one recursive "Checkin -R". Items under a deleted folder
+ * are deleted together with it.
+ * The checkouts known from the repository index may be stale; a folder found
+ * fit for the recursive checkin is confirmed by a fresh query.
+ * All paths are canonical local paths.
+ */
+public class VssCommitPlan
+{
+  /**
+   * Supplies the files checked out by the current user under a folder
+   * (in the lower case), or null if they are not known for sure.
+   */
+  public interface CheckoutSource
+  {
+    @Nullable
+    Set<String> getCheckedOutFiles( @NotNull String folder );
+  }
+
+  /**
+   * One ss.exe run over the items of the folder, or over the whole folder
+   * subtree if the step is recursive.
+   */
+  public static final class Step
+  {
+    private final String myFolder;
+    private final boolean myRecursive;
+    private final List<String> myPaths;
+
+    Step( String folder, boolean recursive, List<String> paths )
+    {
+      myFolder = folder;
+      myRecursive = recursive;
+      myPaths = paths;
+    }
+
+    public String getFolder()       {  return myFolder;     }
+    public boolean isRecursive()    {  return myRecursive;  }
+    public List<String> getPaths()  {  return myPaths;      }
+  }
+
+  private final List<Step> myDeletions;
+  private final List<Step> myCheckins;
+
+  private VssCommitPlan( List<Step> deletions, List<Step> checkins )
+  {
+    myDeletions = deletions;
+    myCheckins = checkins;
+  }
+
+  /**
+   * @param checkins plain modifications, without renamed and moved files.
+   * @param deletions deleted files and folders.
+   * @param deletedFolders paths of <code>deletions</code> which are folders.
+   * @param blocked paths which prevent recursive checkin of the folders
+   *                above them, like renamed files and folders.
+   * @param roots the roots under VSS; no recursive checkin goes above them.
+   */
+  public static VssCommitPlan build( List<String> checkins, List<String> deletions,
+                                     Collection<String> deletedFolders, Collection<String> blocked,
+                                     Collection<String> roots, CheckoutSource source )
+  {
+    return build( checkins, deletions, deletedFolders, blocked, roots, source, null );
+  }
+
+  /**
+   * @param source the checkouts as far as they are known, cheap to ask.
+   * @param freshSource the current checkouts, asked only for the folders
+   *                    <code>source</code> finds fit for the recursive
+   *                    checkin; null if the plan is just an estimate.
+   */
+  public static VssCommitPlan build( List<String> checkins, List<String> deletions,
+                                     Collection<String> deletedFolders, Collection<String> blocked,
+                                     Collection<String> roots, CheckoutSource source,
+                                     @Nullable CheckoutSource freshSource )
+  {
+    return new VssCommitPlan( planDeletions( deletions, deletedFolders ),
+                              planCheckins( checkins, blocked, roots, source, freshSource ) );
+  }
+
+  /**
+   * Deletions grouped by the parent folder, in the order of appearance.
+   */
+  public List<Step> getDeletions()  {  return myDeletions;  }
+
+  /**
+   * Recursive checkins first, then checkins of single folders.
+   */
+  public List<Step> getCheckins()   {  return myCheckins;   }
+
+  public int size()
+  {
+    return myDeletions.size() + myCheckins.size();
+  }
+
+  private static List<Step> planDeletions( List<String> deletions, Collection<String> deletedFolders )
+  {
+    Set<String> folders = new HashSet<>();
+    for( String folder : deletedFolders )
+      folders.add( key( folder ) );
+
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    for( String path : deletions )
+    {
+      if( !isUnderAny( key( path ), folders ) )
+        groups.computeIfAbsent( parent( path ), folder -> new ArrayList<>() ).add( path );
+    }
+    return toSteps( groups );
+  }
+
+  private static List<Step> planCheckins( List<String> checkins, Collection<String> blocked,
+                                          Collection<String> roots, CheckoutSource source,
+                                          @Nullable CheckoutSource freshSource )
+  {
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    for( String path : checkins )
+      groups.computeIfAbsent( parent( path ), folder -> new ArrayList<>() ).add( path );
+
+    //  Candidates are the folders between the groups and their roots, the
+    //  outer ones go first so that a subtree is covered by one run.
+    TreeMap<String, String> candidates = new TreeMap<>( Comparator.comparingInt( VssCommitPlan::depth )
+                                                                  .thenComparing( Comparator.naturalOrder() ) );
+    for( String folder : groups.keySet() )
+    {
+      String root = findRoot( folder, roots );
+      for( String candidate = folder; root != null && candidate != null; candidate = parent( candidate ) )
+      {
+        candidates.put( key( candidate ), candidate );
+        if( key( candidate ).equals( key( root ) ) )
+          break;
+      }
+    }
+
+    Set<String> blockedKeys = new HashSet<>();
+    for( String path : blocked )
+      blockedKeys.add( key( path ) );
+
+    List<Step> steps = new ArrayList<>();
+    Set<String> coveredGroups = new HashSet<>();
+    for( String candidate : candidates.values() )
+    {
+      String candidateKey = key( candidate );
+      List<String> folders = new ArrayList<>();
+      for( String folder : groups.keySet() )
+      {
+        if( !coveredGroups.contains( folder ) && isUnder( key( folder ), candidateKey ) )
+          folders.add( folder );
+      }
+      if( folders.size() < 2 || hasUnder( blockedKeys, candidateKey ) )
+        continue;
+
+      List<String> paths = new ArrayList<>();
+      for( String folder : folders )
+        paths.addAll( groups.get( folder ) );
+      if( isRecursiveSafe( candidate, paths, source ) &&
+          ( freshSource == null || isRecursiveSafe( candidate, paths, freshSource )))
+      {
+        steps.add( new Step( candidate, true, paths ) );
+        coveredGroups.addAll( folders );
+      }
+    }
+
+    for( Map.Entry<String, List<String>> group : groups.entrySet() )
+    {
+      if( !coveredGroups.contains( group.getKey() ) )
+        steps.add( new Step( group.getKey(), false, group.getValue() ) );
+    }
+    return steps;
+  }
+
+  /**
+   * "Checkin -R" checks in every file checked out under the folder and
+   * nothing else, so these must be exactly the committed files. The names
+   * must be unique for the output to be attributed to the files.
+   */
+  private static boolean isRecursiveSafe( String folder, List<String> paths, CheckoutSource source )
+  {
+    Set<String> checkedOut = source.getCheckedOutFiles( folder );
+    if( checkedOut == null )
+      return false;
+
+    Set<String> keys = new HashSet<>();
+    Set<String> names = new HashSet<>();
+    for( String path : paths )
+    {
+      String key = key( path );
+      keys.add( key );
+      names.add( key.substring( key.lastIndexOf( '/' ) + 1 ) );
+    }
+    return names.size() == paths.size() && keys.equals( checkedOut );
+  }
+
+  private static List<Step> toSteps( Map<String, List<String>> groups )
+  {
+    List<Step> steps = new ArrayList<>();
+    for( Map.Entry<String, List<String>> group : groups.entrySet() )
+      steps.add( new Step( group.getKey(), false, group.getValue() ) );
+    return steps;
+  }
+
+  @Nullable
+  private static String findRoot( String folder, Collection<String> roots )
+  {
+    String found = null;
+    for( String root : roots )
+    {
+      if( isUnder( key( folder ), key( root ) ) && ( found == null || root.length() > found.length() ) )
+        found = root;
+    }
+    return found;
+  }
+
+  private static boolean isUnderAny( String key, Set<String> folders )
+  {
+    for( String folder = parent( key ); folder != null; folder = parent( folder ) )
+    {
+      if( folders.contains( folder ) )
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean hasUnder( Set<String> keys, String folder )
+  {
+    for( String key : keys )
+    {
+      if( isUnder( key, folder ) )
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean isUnder( String key, String folder )
+  {
+    return key.equals( folder ) || key.startsWith( folder + "/" );
+  }
+
+  private static int depth( String path )
+  {
+    int depth = 0;
+    for( int i = 0; i < path.length(); i++ )
+    {
+      if( path.charAt( i ) == '/' )
+        depth++;
+    }
+    return depth;
+  }
+
+  @Nullable
+  private static String parent( String path )
+  {
+    int index = path.lastIndexOf( '/' );
+    return ( index > 0 ) ? path.substring( 0, index ) : null;
+  }
+
+  private static String key( String path )
+  {
+    return path.toLowerCase();
+  }
+}
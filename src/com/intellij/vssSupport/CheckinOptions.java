@@ -60,11 +60,19 @@ public class CheckinOptions implements JDOMExternalizable
   }
 
   public List<String> getOptions(VirtualFile virtualFile){
-    ArrayList<String> options= new ArrayList<>();
-    options.add(CHECKIN_COMMAND);
+    List<String> options = getOptions();
     String vssPath = VssUtil.getVssPath(virtualFile, myConfig.getProject());
     if (vssPath != null)
-      options.add(vssPath);
+      options.add(1, vssPath);
+    return options;
+  }
+
+  /**
+   * Creates option set without the items to check in.
+   */
+  public List<String> getOptions(){
+    ArrayList<String> options= new ArrayList<>();
+    options.add(CHECKIN_COMMAND);
     // Comments
     if(COMMENT.length()!=0){
       options.add(StringUtil.escapeQuotes(_C_OPTION +COMMENT+""));
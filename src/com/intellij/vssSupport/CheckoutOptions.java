@@ -76,10 +76,32 @@ public class CheckoutOptions implements JDOMExternalizable, Cloneable
    * Create command line options for specified file.
    */
   public List<String> getOptions( VirtualFile file )
+  {
+    List<String> options = getOptions();
+    options.add( 1, VssUtil.getVssPath( file, myConfig.getProject() ));
+
+    if( file.isDirectory() )
+    {
+      //  If "Recursive" option is not set this does not mean that we should
+      //  simply omit it. If the "Act on projects recursively" option is set
+      //  in the SS Explorer, then all commands to the [sub]projects are
+      //  applied in the recursive manner by default.
+      if( RECURSIVE )
+        options.add( _R_OPTION );
+      else
+        options.add( _R_NOT_OPTION );
+    }
+    return options;
+  }
+
+  /**
+   * Create command line options without the items to check out; the items
+   * must be files.
+   */
+  public List<String> getOptions()
   {
     ArrayList<String> options= new ArrayList<>();
     options.add(CHECKOUT_COMMAND);
-    options.add(VssUtil.getVssPath(file, myConfig.getProject()));
     // Comments
     if(COMMENT.length()!=0){
       options.add(StringUtil.escapeQuotes(_C_OPTION +COMMENT+""));
@@ -94,18 +116,6 @@ public class CheckoutOptions implements JDOMExternalizable, Cloneable
     if( REPLACE_WRITABLE )
       options.add( _GWR_OPTION );
 
-    if( file.isDirectory() )
-    {
-      //  If "Recursive" option is not set this does not mean that we should
-      //  simply omit it. If the "Act on projects recursively" option is set
-      //  in the SS Explorer, then all commands to the [sub]projects are
-      //  applied in the recursive manner by default.
-      if( RECURSIVE )
-        options.add( _R_OPTION );
-      else
-        options.add( _R_NOT_OPTION );
-    }
-
     //  Answer "Yes" on all appeared questions.
     //  Questions may arrise if:
     //  1. "File is already checked out" message - it is issued when the file
@@ -31,10 +31,15 @@ public class VssConfigurable extends BaseConfigurable
   private TextFieldWithBrowseButton mySrcsafeIni;
   private JTextField myTextFieldUserName;
   private JPasswordField myPasswordField;
+  private JSpinner myMaxProcessesSpinner;
+  private JCheckBox myListFilesCheckBox;
+  private JCheckBox myBatchSessionsCheckBox;
 
   @NonNls public static final String PATH_TO_SS_EXE = "ss.exe";
   @NonNls public static final String PATH_TO_SS_INI = "srcsafe.ini";
 
+  private static final int MAX_PROCESSES_LIMIT = 16;
+
   @NonNls public String getDisplayName() {  return "SourceSafe";  }
 
   public VssConfigurable( Project project )
@@ -48,6 +53,9 @@ public class VssConfigurable extends BaseConfigurable
     myConfig.SRCSAFEINI_PATH = mySrcsafeIni.getText().replace('/',File.separatorChar);
     myConfig.USER_NAME = myTextFieldUserName.getText().trim();
     myConfig.setPassword( new String( myPasswordField.getPassword() ) );
+    myConfig.MAX_CONCURRENT_PROCESSES = ((Number)myMaxProcessesSpinner.getValue()).intValue();
+    myConfig.USE_LIST_FILES = myListFilesCheckBox.isSelected();
+    myConfig.USE_BATCH_SESSIONS = myBatchSessionsCheckBox.isSelected();
   }
 
   public void disposeUIResources() {  myPanel = null;  }
@@ -55,6 +63,8 @@ public class VssConfigurable extends BaseConfigurable
 
   public JComponent createComponent()
   {
+    myMaxProcessesSpinner.setModel( new SpinnerNumberModel( 1, 1, MAX_PROCESSES_LIMIT, 1 ) );
+
     myClientPath.addActionListener(
       new ActionListener(){
         public void actionPerformed(ActionEvent ignored){
@@ -125,7 +135,10 @@ public class VssConfigurable extends BaseConfigurable
     return !myClientPath.getText().replace('/',File.separatorChar).equals( myConfig.CLIENT_PATH ) ||
            !mySrcsafeIni.getText().replace('/',File.separatorChar).equals( myConfig.SRCSAFEINI_PATH ) ||
            !myTextFieldUserName.getText().trim().equals( myConfig.USER_NAME ) ||
-           !(new String(myPasswordField.getPassword())).equals( myConfig.getPassword() );
+           !(new String(myPasswordField.getPassword())).equals( myConfig.getPassword() ) ||
+           ((Number)myMaxProcessesSpinner.getValue()).intValue() != myConfig.MAX_CONCURRENT_PROCESSES ||
+           myListFilesCheckBox.isSelected() != myConfig.USE_LIST_FILES ||
+           myBatchSessionsCheckBox.isSelected() != myConfig.USE_BATCH_SESSIONS;
   }
 
   public void reset()
@@ -134,5 +147,8 @@ public class VssConfigurable extends BaseConfigurable
     mySrcsafeIni.setText(myConfig.SRCSAFEINI_PATH);
     myTextFieldUserName.setText(myConfig.USER_NAME);
     myPasswordField.setText(myConfig.getPassword());
+    myMaxProcessesSpinner.setValue(Math.max(1, Math.min(MAX_PROCESSES_LIMIT, myConfig.MAX_CONCURRENT_PROCESSES)));
+    myListFilesCheckBox.setSelected(myConfig.USE_LIST_FILES);
+    myBatchSessionsCheckBox.setSelected(myConfig.USE_BATCH_SESSIONS);
   }
 }
@@ -10,6 +10,7 @@ import com.intellij.openapi.util.DefaultJDOMExternalizer;
 import com.intellij.openapi.util.InvalidDataException;
 import com.intellij.openapi.util.PasswordUtil;
 import com.intellij.openapi.util.WriteExternalException;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.vssSupport.*;
 import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
@@ -34,6 +35,7 @@ public class VssConfiguration implements PersistentStateComponent<Element>
   @NonNls private static final String SSEXP_FILE_NAME = "ssexp.exe";
   @NonNls private static final String SSDIR_PARAM_NAME = "SSDIR";
   @NonNls private static final String _Y_OPTION = "-Y";
+  @NonNls private static final String SSUSER_ENV = "SSUSER";
   @NonNls private static final String MAP_ITEM_ELEMENT_NAME = "MapItem";
 
   //  All fields are public for JDOM saving mechanism to
@@ -42,6 +44,40 @@ public class VssConfiguration implements PersistentStateComponent<Element>
   public String SRCSAFEINI_PATH = "";
   public String USER_NAME = "";
   public String PWD = "";
+  //  Maximal number of ss.exe processes running simultaneously against the
+  //  database of this project.
+  public int MAX_CONCURRENT_PROCESSES = 3;
+  //  Time in minutes during which the repository state index built by "Dir"
+  //  command is trusted without asking ss.exe again, zero disables the index.
+  public int REPOSITORY_INDEX_TTL = 15;
+  //  Read project listings directly from the database files instead of
+  //  running "Dir" command. ss.exe is still used if the database can not be read.
+  //  Not shown in the settings: the reader is not verified against databases
+  //  written by SourceSafe yet and knows neither history nor old contents.
+  public boolean USE_NATIVE_READER = false;
+  //  Pass long item lists to ss.exe through a list file ("@file" argument)
+  //  instead of splitting them over several command lines.
+  public boolean USE_LIST_FILES = false;
+  //  Run sequences of independent commands in one shell session instead of
+  //  starting the session for every command.
+  public boolean USE_BATCH_SESSIONS = false;
+  //  Time limits in seconds of quick ss.exe commands like "cp" and
+  //  "Properties": the whole run and the silence after the last output line.
+  //  Zero means no limit.
+  public int COMMAND_TIMEOUT = 40;
+  public int COMMAND_INACTIVITY_TIMEOUT = 15;
+  //  The same limits for the commands changing the database, which may wait
+  //  silently for a file transfer.
+  public int WRITE_COMMAND_TIMEOUT = 600;
+  public int WRITE_COMMAND_INACTIVITY_TIMEOUT = 60;
+  //  The same limits for "Dir", "Get" and "History", recursive commands and
+  //  commands over several items.
+  public int LONG_COMMAND_TIMEOUT = 1800;
+  public int LONG_COMMAND_INACTIVITY_TIMEOUT = 120;
+  //  Size limit in megabytes of the disk cache of repository file contents,
+  //  zero disables the cache.
+  public int CONTENT_CACHE_SIZE = 64;
+  public boolean COMPRESS_CONTENT_CACHE = true;
   public ArrayList myMapItems;
 
   /*
@@ -132,6 +168,17 @@ public class VssConfiguration implements PersistentStateComponent<Element>
     return _Y_OPTION + USER_NAME + (getPassword().length() > 0 ? "," + getPassword() : "");
   }
 
+  /**
+   * The user ss.exe works as: the configured one, otherwise the one given by
+   * SSUSER environment variable, otherwise the login name.
+   */
+  public String getSSUserName() {
+    if (USER_NAME.length() > 0)
+      return USER_NAME;
+    String user = System.getenv(SSUSER_ENV);
+    return StringUtil.isNotEmpty(user) ? user : StringUtil.notNullize(System.getProperty("user.name"));
+  }
+
   public static VssConfiguration getInstance(Project project){
     return ServiceManager.getService(project, VssConfiguration.class);
   }
@@ -1,23 +1,46 @@
 package com.intellij.vssSupport;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vfs.*;
-import com.intellij.vcsUtil.VcsUtil;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * Keeps base revisions of the changed files between refreshes. The map is
+ * read by the change provider in background threads and modified by VFS
+ * events, so it is a concurrent one. Revisions are softly referenced since
+ * each of them may hold the whole content of the file - the memory is given
+ * back under pressure, and the content is then taken from the disk cache.
+ * Keys are normalized paths sorted so that all the files under a folder form
+ * one contiguous range.
+ */
 public class ContentRevisionFactory
 {
   private static final VFSKeysListener listener;
-  private static final HashMap<FilePath, VssContentRevision> cachedRevisions;
+  private static final ConcurrentSkipListMap<String, RevisionReference> cachedRevisions;
+  private static final ReferenceQueue<VssContentRevision> collectedRevisions;
+
+  private static class RevisionReference extends SoftReference<VssContentRevision>
+  {
+    private final String key;
+
+    RevisionReference( String key, VssContentRevision revision, ReferenceQueue<VssContentRevision> queue )
+    {
+      super( revision, queue );
+      this.key = key;
+    }
+  }
 
   static
   {
-    cachedRevisions = new HashMap<>();
+    cachedRevisions = new ConcurrentSkipListMap<>();
+    collectedRevisions = new ReferenceQueue<>();
     listener = new VFSKeysListener();
     LocalFileSystem.getInstance().addVirtualFileListener( listener );
   }
@@ -31,19 +54,50 @@ public class ContentRevisionFactory
 
   public static VssContentRevision getRevision( @NotNull FilePath path, Project project )
   {
-    VssContentRevision revision = cachedRevisions.get( path );
+    purgeCollected();
+
+    String key = getKey( path.getPath() );
+    RevisionReference reference = cachedRevisions.get( key );
+    VssContentRevision revision = (reference != null) ? reference.get() : null;
     if( revision == null )
     {
       revision = new VssContentRevision( path, project );
-      cachedRevisions.put( path, revision );
+      cachedRevisions.put( key, new RevisionReference( key, revision, collectedRevisions ) );
     }
     return revision;
   }
 
   public static void clearCacheForFile( String file )
   {
-    FilePath path = VcsUtil.getFilePath( file );
-    cachedRevisions.remove( path );
+    cachedRevisions.remove( getKey( file ) );
+  }
+
+  /**
+   * Remove the revisions of the file or of all files under the folder.
+   */
+  private static void clearCacheForSubtree( String path )
+  {
+    String key = getKey( path );
+    cachedRevisions.remove( key );
+
+    //  '0' follows '/' immediately, so the range holds exactly the keys
+    //  starting with "<key>/".
+    cachedRevisions.subMap( key + "/", key + "0" ).clear();
+  }
+
+  private static void purgeCollected()
+  {
+    RevisionReference reference;
+    while( (reference = (RevisionReference)collectedRevisions.poll()) != null )
+      cachedRevisions.remove( reference.key, reference );
+  }
+
+  private static String getKey( String path )
+  {
+    String key = FileUtil.toSystemIndependentName( path );
+    if( key.endsWith( "/" ) && key.length() > 1 )
+      key = key.substring( 0, key.length() - 1 );
+    return SystemInfo.isFileSystemCaseSensitive ? key : key.toLowerCase();
   }
 
   private static class VFSKeysListener implements VirtualFileListener {
@@ -67,25 +121,10 @@ public class ContentRevisionFactory
 
     private static void analyzeEvent( String filePath )
     {
-      FilePath path = VcsUtil.getFilePath( filePath );
-      VssContentRevision revision = cachedRevisions.get( path );
-      if( revision != null )
-      {
-        cachedRevisions.remove( path );
-      }
-
       //  If the given path is a folder, we need to remove cached revisions
       //  for ALL files under that folder since all of them will change
       //  VirtualFile value inside their FilePath keys.
-      if( path.isDirectory() )
-      {
-        List<FilePath> keys = new ArrayList<>(cachedRevisions.keySet());
-        for( FilePath file : keys )
-        {
-          if( file.isUnder( path, false ) )
-            cachedRevisions.remove( file );
-        }
-      }
+      clearCacheForSubtree( filePath );
     }
   }
 }
@@ -3,7 +3,6 @@
  */
 package com.intellij.vssSupport;
 
-import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.DefaultJDOMExternalizer;
 import com.intellij.openapi.util.InvalidDataException;
 import com.intellij.openapi.util.JDOMExternalizable;
@@ -95,9 +94,8 @@ public class GetOptions implements JDOMExternalizable, Cloneable
    */
   public List<String> getOptions( File file )
   {
-    Project project = myConfig.getProject();
-    ArrayList<String> options = new ArrayList<>();
-    options.add( GET_COMMAND );
+    List<String> options = getOptions();
+    options.add( 1, VssUtil.getVssPath( file, myConfig.getProject() ));
 
     if( file.isDirectory() )
     {
@@ -105,11 +103,20 @@ public class GetOptions implements JDOMExternalizable, Cloneable
       //  simply omit it. If the "Act on projects recursively" option is set
       //  in the SS Explorer, then all commands to the [sub]projects are
       //  applied in the recursive manner by default.
-      options.add( RECURSIVE ? _R_OPTION : _R_NOT_OPTION );
+      options.add( 1, RECURSIVE ? _R_OPTION : _R_NOT_OPTION );
     }
+    return options;
+  }
+
+  /**
+   * Create command line options without the items to get; the items must be
+   * files.
+   */
+  public List<String> getOptions()
+  {
+    ArrayList<String> options = new ArrayList<>();
+    options.add( GET_COMMAND );
 
-    options.add( VssUtil.getVssPath( file, project ));
-    
     if( VERSION != null )
       options.add( _V_OPTION + VERSION.trim() );
 
@@ -73,13 +73,8 @@ public class UndocheckoutOptions implements JDOMExternalizable, Cloneable
 
   public List<String> getOptions( VirtualFile file )
   {
-    ArrayList<String> options = new ArrayList<>();
-    options.add( UNDOCHECKOUT_COMMAND );
-    options.add( VssUtil.getVssPath( file, myConfig.getProject() ));
-
-    options.add( (REPLACE_LOCAL_COPY == OPTION_ASK) ? _I_N_OPTION : _I_Y_OPTION );
-    if( REPLACE_LOCAL_COPY == OPTION_LEAVE )
-      options.add( _G_OPTION );
+    List<String> options = getOptions();
+    options.add( 1, VssUtil.getVssPath( file, myConfig.getProject() ));
 
     if( file.isDirectory() )
     {
@@ -89,6 +84,20 @@ public class UndocheckoutOptions implements JDOMExternalizable, Cloneable
       //  applied in the recursive manner by default.
       options.add( RECURSIVE ? _R_OPTION : _R_NOT_OPTION );
     }
+    return options;
+  }
+
+  /**
+   * Create command line options without the items; the items must be files.
+   */
+  public List<String> getOptions()
+  {
+    ArrayList<String> options = new ArrayList<>();
+    options.add( UNDOCHECKOUT_COMMAND );
+
+    options.add( (REPLACE_LOCAL_COPY == OPTION_ASK) ? _I_N_OPTION : _I_Y_OPTION );
+    if( REPLACE_LOCAL_COPY == OPTION_LEAVE )
+      options.add( _G_OPTION );
 
     if( MAKE_WRITABLE )
       options.add( _W_OPTION );
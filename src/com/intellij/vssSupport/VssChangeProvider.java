@@ -15,6 +15,8 @@ import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.commands.DirectoryCommand;
 import com.intellij.vssSupport.commands.PropertiesCommand;
 import com.intellij.vssSupport.commands.StatusMultipleCommand;
+import com.intellij.vssSupport.commands.VSSExecUtil;
+import com.intellij.vssSupport.commands.VssCommandPriority;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -83,9 +85,12 @@ public class VssChangeProvider implements ChangeProvider
 
     initInternals();
 
-    iterateOverRecursiveFolders( dirtyScope );
-    iterateOverDirtyDirectories( dirtyScope );
-    iterateOverDirtyFiles( dirtyScope );
+    //  Nobody waits for the refresh, the commands of the user go first.
+    VSSExecUtil.runWithPriority( VssCommandPriority.BACKGROUND, () -> {
+      iterateOverRecursiveFolders( dirtyScope );
+      iterateOverDirtyDirectories( dirtyScope );
+      iterateOverDirtyFiles( dirtyScope );
+    });
     processStatusExceptions();
 
     addAddedFiles( builder );
@@ -97,6 +102,10 @@ public class VssChangeProvider implements ChangeProvider
     LOG.info( "-- ChangeProvider| New: " + filesNew.size() + ", modified: " + filesChanged.size() +
               ", hijacked:" + filesHijacked.size() + ", obsolete: " + filesObsolete.size() +
               ", ignored: " + filesIgnored.size() );
+
+    //  Base revisions of the modified files are needed for the diffs and
+    //  gutter markers right after the refresh - get them in advance.
+    VssContentPrefetcher.getInstance( project ).prefetch( new ArrayList<>( filesChanged ) );
   }
 
   /**
@@ -283,17 +292,28 @@ public class VssChangeProvider implements ChangeProvider
     filesNew.addAll( newFiles );
   }
 
-  private void analyzeWritableFilesByStatus( List<String> files,
+  private void analyzeWritableFilesByStatus( List<String> allFiles,
                                              HashSet<String> newf, HashSet<String> changed,
                                              HashSet<String> hijacked, HashSet<String> obsolete )
   {
+    //  Files checked out by the user according to the repository index do
+    //  not need "Status" command at all.
+    VssRepositoryIndex index = VssRepositoryIndex.getInstance( project );
+    List<String> files = new ArrayList<>();
     List<String> oldNames = new ArrayList<>();
-    for( String file : files )
+    for( String file : allFiles )
     {
       String legalName = discoverOldName( host, file );
-      oldNames.add( legalName );
+      if( !classifyByIndex( index, file, legalName, changed ) )
+      {
+        files.add( file );
+        oldNames.add( legalName );
+      }
     }
 
+    if( files.isEmpty() )
+      return;
+
     try
     {
       StatusMultipleCommand cmd = new StatusMultipleCommand( project, oldNames );
@@ -345,6 +365,27 @@ public class VssChangeProvider implements ChangeProvider
                                                 HashSet<String> newFiles, HashSet<String> changed,
                                                 HashSet<String> hijacked )
   {
+    //  The repository state of the folder is already known and is not too old,
+    //  consult ss.exe only for the files which were changed since then by the
+    //  structural commands.
+    VssRepositoryIndex index = VssRepositoryIndex.getInstance( project );
+    if( index.isFresh( filePath.getPath() ) )
+    {
+      List<String> unknown = new ArrayList<>();
+      for( String path : writableFiles )
+      {
+        if (progress != null) {
+          progress.checkCanceled();
+        }
+        String oldPath = VssChangeProvider.discoverOldName( host, path );
+        if( !classifyByIndex( index, path, oldPath, changed ) )
+          unknown.add( path );
+      }
+      if( !unknown.isEmpty() )
+        analyzeWritableFilesByStatus( unknown, newFiles, changed, hijacked, filesObsolete );
+      return;
+    }
+
     ArrayList<VcsException> errors = new ArrayList<>();
     DirectoryCommand cmd = new DirectoryCommand( project, filePath.getPath(), errors );
     cmd.execute();
@@ -358,6 +399,7 @@ public class VssChangeProvider implements ChangeProvider
     }
     else
     {
+      cmd.storeTo( index );
       for( String path : writableFiles )
       {
         if (progress != null) {
@@ -374,6 +416,22 @@ public class VssChangeProvider implements ChangeProvider
       }
     }
   }
+  /**
+   * The index only narrows the set of files "Status" is run for: a checkout
+   * of the user stays until the user ends it, so such a file is changed.
+   * Checkouts and deletions by others are not seen by the index until it is
+   * seeded again, so files checked in or missing from the project according
+   * to it are hijacked, obsolete or new as "Status" tells.
+   */
+  private static boolean classifyByIndex( VssRepositoryIndex index, String path, String oldPath,
+                                          HashSet<String> changed )
+  {
+    if( index.getState( oldPath ) != VssRepositoryIndex.ItemState.CHECKED_OUT )
+      return false;
+    changed.add( path );
+    return true;
+  }
+
   //---------------------------------------------------------------------------
   //  For a given file which is known that it is new, check also its direct
   //  parent folder for presence in the VSS repository, and then all its indirect
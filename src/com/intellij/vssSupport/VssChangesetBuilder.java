@@ -0,0 +1,285 @@
+package com.intellij.vssSupport;
+
+import com.intellij.vssSupport.commands.HistoryParser;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * VSS keeps no changesets, so they are reconstructed from the output of the
+ * recursive "History": the records of the same user with the same comment
+ * go into one changeset while they are not further than
+ * <code>CHANGESET_WINDOW</code> from each other and do not touch the same
+ * file twice.
+ */
+public class VssChangesetBuilder
+{
+  @NonNls private static final String CHECKED_IN_ACTION = "Checked in ";
+  @NonNls private static final String ADDED_ACTION = "Add";
+  @NonNls private static final String DELETED_ACTION = "Deleted";
+  @NonNls private static final String RECOVERED_ACTION = "Recovered";
+  @NonNls private static final String PROJECT_PREFIX = "$";
+
+  public static final long CHANGESET_WINDOW = 5 * 60 * 1000L;
+
+  //  "24-04-06  6:33p", "4/24/2006 18:33" - the order of the day and the
+  //  month depends on the locale of the machine running ss.exe, which is the
+  //  machine of the IDE.
+  private static final Pattern DATE_PATTERN = Pattern.compile( "(\\d+)[-/.](\\d+)[-/.](\\d+)\\s+(\\d+):(\\d+)\\s*([aApP])?.*" );
+
+  public enum ChangeType {  MODIFIED, ADDED, DELETED  }
+
+  public static class Change
+  {
+    public final String vssPath;
+    public final ChangeType type;
+
+    //  Version of the file after the change, of the deleted one for the
+    //  deletion; 0 if the history does not go that far back.
+    public final int version;
+
+    Change( String vssPath, ChangeType type, int version )
+    {
+      this.vssPath = vssPath;
+      this.type = type;
+      this.version = version;
+    }
+  }
+
+  public static class Changeset
+  {
+    public final String user;
+    public final String comment;
+    public final long date;
+    public final List<Change> changes = new ArrayList<>();
+    private final Set<String> myPaths = new HashSet<>();
+    private long myOldestDate;
+
+    Changeset( String user, String comment, long date )
+    {
+      this.user = user;
+      this.comment = comment;
+      this.date = date;
+      myOldestDate = date;
+    }
+  }
+
+  private final String myRoot;
+
+  /**
+   * @param vssRoot the VSS project the recursive history was taken for.
+   */
+  public VssChangesetBuilder( @NotNull String vssRoot )
+  {
+    myRoot = trimSlash( vssRoot );
+  }
+
+  /**
+   * @param history the records of the recursive "History", newest first.
+   * @return changesets, newest first.
+   */
+  @NotNull
+  public List<Changeset> build( @NotNull List<HistoryParser.SubmissionData> history )
+  {
+    boolean dayFirst = isDayFirst( Locale.getDefault() );
+    Map<String, String> projects = collectProjects( history );
+
+    List<Change> changes = new ArrayList<>( history.size() );
+    for( HistoryParser.SubmissionData record : history )
+      changes.add( createChange( record, projects ));
+    resolveVersions( changes );
+
+    List<Changeset> result = new ArrayList<>();
+    Map<String, Changeset> open = new HashMap<>();
+    long lastDate = 0;
+    for( int i = 0; i < history.size(); i++ )
+    {
+      HistoryParser.SubmissionData record = history.get( i );
+      Change change = changes.get( i );
+      if( change == null )
+        continue;
+
+      long date = parseDate( record.changeDate, dayFirst );
+      if( date < 0 )
+        date = lastDate;
+      lastDate = date;
+
+      String comment = ( record.comment == null ) ? "" : record.comment;
+      String key = String.valueOf( record.submitter ).toLowerCase() + "\n" + comment;
+      String pathKey = change.vssPath.toLowerCase();
+      Changeset changeset = open.get( key );
+      if( changeset == null || changeset.myOldestDate - date > CHANGESET_WINDOW || changeset.myPaths.contains( pathKey ) )
+      {
+        changeset = new Changeset( record.submitter, comment, date );
+        open.put( key, changeset );
+        result.add( changeset );
+      }
+      changeset.changes.add( change );
+      changeset.myPaths.add( pathKey );
+      changeset.myOldestDate = date;
+    }
+    return result;
+  }
+
+  @Nullable
+  private Change createChange( HistoryParser.SubmissionData record, Map<String, String> projects )
+  {
+    if( record.item == null )
+      return null;
+
+    //  "Checked in $/Project" record of a file.
+    if( CHECKED_IN_ACTION.equals( record.action ) && record.folder != null )
+      return new Change( trimSlash( record.folder ) + "/" + record.item, ChangeType.MODIFIED, parseVersion( record.version ) );
+
+    //  "file.java added" record of its project; subprojects are not shown.
+    if( record.target == null || record.target.startsWith( PROJECT_PREFIX ) )
+      return null;
+
+    String project = projects.get( record.item.toLowerCase() );
+    if( project == null )
+      return null;
+
+    String path = project + "/" + record.target;
+    if( ADDED_ACTION.equals( record.action ) )
+      return new Change( path, ChangeType.ADDED, 1 );
+    if( RECOVERED_ACTION.equals( record.action ) )
+      return new Change( path, ChangeType.ADDED, 0 );
+    if( DELETED_ACTION.equals( record.action ) )
+      return new Change( path, ChangeType.DELETED, 0 );
+    return null;
+  }
+
+  /**
+   * Records of projects do not give the version of the file. A deleted file
+   * has the last version it had before the deletion, and a recovered file
+   * gets it back; it is taken from the next older record of the file.
+   * @param changes the changes of the history records, newest first.
+   */
+  private static void resolveVersions( List<Change> changes )
+  {
+    for( int i = 0; i < changes.size(); i++ )
+    {
+      Change change = changes.get( i );
+      if( change == null || change.version != 0 )
+        continue;
+
+      String pathKey = change.vssPath.toLowerCase();
+      for( int k = i + 1; k < changes.size(); k++ )
+      {
+        Change older = changes.get( k );
+        if( older != null && older.version != 0 && older.vssPath.toLowerCase().equals( pathKey ) )
+        {
+          changes.set( i, new Change( change.vssPath, change.type, older.version ));
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Records of projects give only their names; they are resolved against the
+   * projects seen in the "Checked in" records and their parents under the
+   * root. Ambiguous names are dropped.
+   */
+  private Map<String, String> collectProjects( List<HistoryParser.SubmissionData> history )
+  {
+    Map<String, String> projects = new HashMap<>();
+    Set<String> ambiguous = new HashSet<>();
+    addProject( myRoot, projects, ambiguous );
+    for( HistoryParser.SubmissionData record : history )
+    {
+      //  Parents of the project are known as well.
+      for( String path = ( record.folder == null ) ? null : trimSlash( record.folder );
+           path != null && path.length() > myRoot.length(); path = getParent( path ) )
+        addProject( path, projects, ambiguous );
+    }
+    for( String name : ambiguous )
+      projects.remove( name );
+    return projects;
+  }
+
+  private static void addProject( String path, Map<String, String> projects, Set<String> ambiguous )
+  {
+    String name = path.substring( path.lastIndexOf( '/' ) + 1 ).toLowerCase();
+    String known = projects.put( name, path );
+    if( known != null && !known.equalsIgnoreCase( path ) )
+      ambiguous.add( name );
+  }
+
+  /**
+   * @return true if the short date format of the locale puts the day before
+   * the month, as ss.exe does for such a locale.
+   */
+  static boolean isDayFirst( @NotNull Locale locale )
+  {
+    DateFormat format = DateFormat.getDateInstance( DateFormat.SHORT, locale );
+    if( !( format instanceof SimpleDateFormat ) )
+      return false;
+
+    String pattern = ((SimpleDateFormat)format).toPattern();
+    int day = pattern.indexOf( 'd' );
+    int month = pattern.indexOf( 'M' );
+    return day >= 0 && month >= 0 && day < month;
+  }
+
+  /**
+   * @return the date in milliseconds, or -1 if it is not recognized.
+   */
+  static long parseDate( @Nullable String text, boolean dayFirst )
+  {
+    Matcher matcher = ( text == null ) ? null : DATE_PATTERN.matcher( text.trim() );
+    if( matcher == null || !matcher.matches() )
+      return -1;
+
+    int first = Integer.parseInt( matcher.group( 1 ) );
+    int second = Integer.parseInt( matcher.group( 2 ) );
+    int year = Integer.parseInt( matcher.group( 3 ) );
+    int hour = Integer.parseInt( matcher.group( 4 ) );
+    int minute = Integer.parseInt( matcher.group( 5 ) );
+    String amPm = matcher.group( 6 );
+
+    if( year < 100 )
+      year += ( year < 80 ) ? 2000 : 1900;
+    if( amPm != null )
+    {
+      hour %= 12;
+      if( Character.toLowerCase( amPm.charAt( 0 ) ) == 'p' )
+        hour += 12;
+    }
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set( year, ( dayFirst ? second : first ) - 1, dayFirst ? first : second, hour, minute );
+    return calendar.getTimeInMillis();
+  }
+
+  private static int parseVersion( @Nullable String version )
+  {
+    try
+    {
+      return ( version == null ) ? 0 : Integer.parseInt( version.trim() );
+    }
+    catch( NumberFormatException e )
+    {
+      return 0;
+    }
+  }
+
+  @Nullable
+  private static String getParent( String path )
+  {
+    int index = path.lastIndexOf( '/' );
+    return ( index > 0 ) ? path.substring( 0, index ) : null;
+  }
+
+  private static String trimSlash( String path )
+  {
+    return path.endsWith( "/" ) ? path.substring( 0, path.length() - 1 ) : path;
+  }
+}
@@ -0,0 +1,201 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vcs.ChangeListColumn;
+import com.intellij.openapi.vcs.CommittedChangesProvider;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.RepositoryLocation;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeListImpl;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.AsynchConsumer;
+import com.intellij.vcsUtil.VcsUtil;
+import com.intellij.vssSupport.commands.HistoryParser;
+import com.intellij.vssSupport.ui.VssVersionFilterComponent;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository log of a content root. It is built from one recursive "History"
+ * of the root, which is cached and updated incrementally like the history of
+ * a single file; the records are grouped into changesets by
+ * <code>VssChangesetBuilder</code>.
+ */
+public class VssCommittedChangesProvider implements CommittedChangesProvider<CommittedChangeList, ChangeBrowserSettings>
+{
+  //  Recursive history of a folder is stored apart from its own history.
+  @NonNls private static final String RECURSIVE_KEY_SUFFIX = " -R";
+
+  private final Project project;
+
+  public VssCommittedChangesProvider( Project project )
+  {
+    this.project = project;
+  }
+
+  @NotNull
+  public ChangeBrowserSettings createDefaultSettings()
+  {
+    return new ChangeBrowserSettings();
+  }
+
+  @NotNull
+  public VssVersionFilterComponent createFilterUI( boolean showDateFilter )
+  {
+    return new VssVersionFilterComponent( showDateFilter );
+  }
+
+  @Nullable
+  public RepositoryLocation getLocationFor( @NotNull FilePath root )
+  {
+    String vssPath = VssUtil.getVssPath( root, project );
+    return ( vssPath == null ) ? null : new VssRepositoryLocation( vssPath, root.getPath() );
+  }
+
+  @NotNull
+  public List<CommittedChangeList> getCommittedChanges( ChangeBrowserSettings settings, RepositoryLocation location,
+                                                        int maxCount ) throws VcsException
+  {
+    VssRepositoryLocation vssLocation = (VssRepositoryLocation)location;
+    List<HistoryParser.SubmissionData> history = loadHistory( vssLocation );
+
+    List<CommittedChangeList> lists = new ArrayList<>();
+    List<VssChangesetBuilder.Changeset> changesets = new VssChangesetBuilder( vssLocation.getVssPath() ).build( history );
+    for( int i = 0; i < changesets.size(); i++ )
+    {
+      //  Numbers are counted from the oldest changeset, so that they do not
+      //  change when the log grows.
+      lists.add( createChangeList( changesets.get( i ), changesets.size() - i, vssLocation ) );
+    }
+
+    lists = settings.filterChanges( lists );
+    if( maxCount > 0 && lists.size() > maxCount )
+      lists = new ArrayList<>( lists.subList( 0, maxCount ) );
+    return lists;
+  }
+
+  public void loadCommittedChanges( ChangeBrowserSettings settings, RepositoryLocation location, int maxCount,
+                                    AsynchConsumer<CommittedChangeList> consumer ) throws VcsException
+  {
+    try
+    {
+      for( CommittedChangeList list : getCommittedChanges( settings, location, maxCount ) )
+        consumer.consume( list );
+    }
+    finally
+    {
+      consumer.finished();
+    }
+  }
+
+  @NotNull
+  public ChangeListColumn[] getColumns()
+  {
+    return new ChangeListColumn[] { ChangeListColumn.NUMBER, ChangeListColumn.DATE, ChangeListColumn.NAME, ChangeListColumn.DESCRIPTION };
+  }
+
+  @Nullable
+  public Pair<CommittedChangeList, FilePath> getOneList( VirtualFile file, VcsRevisionNumber number )
+  {
+    return null;
+  }
+
+  public boolean supportsIncomingChanges()
+  {
+    return false;
+  }
+
+  private List<HistoryParser.SubmissionData> loadHistory( VssRepositoryLocation location ) throws VcsException
+  {
+    String key = location.getVssPath() + RECURSIVE_KEY_SUFFIX;
+    VssHistoryCache cache = VssHistoryCache.getInstance( project );
+
+    List<VcsException> errors = new ArrayList<>();
+    List<HistoryParser.SubmissionData> history = cache.update( location.getLocalPath(), key, true, cache.get( key ), errors );
+    if( history == null )
+    {
+      if( !errors.isEmpty() )
+        throw errors.get( 0 );
+      throw new VcsException( VssBundle.message( "message.file.deleted.or.not.in.repository" ) );
+    }
+    return history;
+  }
+
+  private CommittedChangeList createChangeList( VssChangesetBuilder.Changeset changeset, long number,
+                                                VssRepositoryLocation location )
+  {
+    List<Change> changes = new ArrayList<>();
+    for( VssChangesetBuilder.Change change : changeset.changes )
+    {
+      //  Content of the version older than the history is not known, there
+      //  is nothing to show for such a change.
+      FilePath path = location.getLocalFilePath( change.vssPath );
+      if( path == null || change.version == 0 )
+        continue;
+
+      ContentRevision before = null, after = null;
+      if( change.type == VssChangesetBuilder.ChangeType.MODIFIED )
+      {
+        before = ( change.version > 1 ) ? new VssVersionContentRevision( project, path, change.version - 1 ) : null;
+        after = new VssVersionContentRevision( project, path, change.version, before != null );
+      }
+      else
+      if( change.type == VssChangesetBuilder.ChangeType.ADDED )
+        after = new VssVersionContentRevision( project, path, change.version );
+      else
+        before = new VssVersionContentRevision( project, path, change.version );
+
+      changes.add( new Change( before, after ) );
+    }
+
+    String name = changeset.comment.isEmpty() ? changeset.user : changeset.comment;
+    return new CommittedChangeListImpl( name, changeset.comment, changeset.user, number, new Date( changeset.date ), changes );
+  }
+
+  public static class VssRepositoryLocation implements RepositoryLocation
+  {
+    private final String myVssPath;
+    private final String myLocalPath;
+
+    public VssRepositoryLocation( @NotNull String vssPath, @NotNull String localPath )
+    {
+      myVssPath = vssPath;
+      myLocalPath = localPath;
+    }
+
+    public String getVssPath()    {  return myVssPath;    }
+    public String getLocalPath()  {  return myLocalPath;  }
+
+    /**
+     * @return the local path of the repository item under this location, or
+     *         null if it lies outside.
+     */
+    @Nullable
+    public FilePath getLocalFilePath( String vssPath )
+    {
+      String root = myVssPath.endsWith( "/" ) ? myVssPath.substring( 0, myVssPath.length() - 1 ) : myVssPath;
+      if( !vssPath.toLowerCase().startsWith( root.toLowerCase() + "/" ) )
+        return null;
+      return VcsUtil.getFilePath( myLocalPath + vssPath.substring( root.length() ), false );
+    }
+
+    public String toPresentableString()  {  return myVssPath;  }
+    public String getKey()               {  return myVssPath;  }
+
+    public void onBeforeBatch() {}
+    public void onAfterBatch()  {}
+
+    public String toString()  {  return toPresentableString();  }
+  }
+}
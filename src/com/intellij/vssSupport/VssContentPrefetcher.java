@@ -0,0 +1,181 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.intellij.vssSupport.commands.GetContentCommand;
+import com.intellij.vssSupport.commands.VSSExecUtil;
+import com.intellij.vssSupport.commands.VssCommandPriority;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Fills the content store with the base revisions of checked out files
+ * before they are asked for by diffs and gutter markers. Files are grouped
+ * by their VSS project and every group is fetched by one "Get" command in a
+ * single background thread, so that the prefetch never competes with the
+ * user actions for more than one ss.exe process.
+ */
+public class VssContentPrefetcher implements Disposable
+{
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.VssContentPrefetcher");
+
+  private static final class Request
+  {
+    final String localPath;
+    final String vssPath;
+    final String revision;
+
+    Request( String localPath, String vssPath, String revision )
+    {
+      this.localPath = localPath;
+      this.vssPath = vssPath;
+      this.revision = revision;
+    }
+  }
+
+  private final Project myProject;
+  private final ExecutorService myExecutor;
+  private final Set<String> myScheduled = ConcurrentHashMap.newKeySet();
+  private MessageBusConnection myConnection;
+
+  public VssContentPrefetcher( Project project )
+  {
+    myProject = project;
+    myExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor( "VSS Content Prefetch", 1 );
+  }
+
+  public static VssContentPrefetcher getInstance( Project project )
+  {
+    return ServiceManager.getService( project, VssContentPrefetcher.class );
+  }
+
+  /**
+   * Start prefetching the files opened in the editor.
+   */
+  public synchronized void activate()
+  {
+    if( myConnection != null )
+      return;
+
+    myConnection = myProject.getMessageBus().connect( this );
+    myConnection.subscribe( FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
+      @Override
+      public void fileOpened( @NotNull FileEditorManager source, @NotNull VirtualFile file )
+      {
+        if( file.isInLocalFileSystem() && file.isWritable() )
+          prefetch( Collections.singletonList( file.getPath() ) );
+      }
+    });
+  }
+
+  public synchronized void deactivate()
+  {
+    if( myConnection != null )
+    {
+      myConnection.disconnect();
+      myConnection = null;
+    }
+  }
+
+  /**
+   * Schedule fetching of the base revisions for the given local files. Files
+   * which are not checked out by the current user or are already in the
+   * store are skipped.
+   */
+  public void prefetch( @NotNull Collection<String> paths )
+  {
+    final List<String> scheduled = new ArrayList<>();
+    for( String path : paths )
+    {
+      if( myScheduled.add( path ) )
+        scheduled.add( path );
+    }
+    if( scheduled.isEmpty() )
+      return;
+
+    myExecutor.execute( () -> {
+      try
+      {
+        VSSExecUtil.runWithPriority( VssCommandPriority.BACKGROUND, () -> fetch( scheduled ) );
+      }
+      finally
+      {
+        myScheduled.removeAll( scheduled );
+      }
+    });
+  }
+
+  public void dispose()
+  {
+    myExecutor.shutdownNow();
+  }
+
+  private void fetch( List<String> paths )
+  {
+    //  VSS project path -> files to fetch from it.
+    Map<String, List<Request>> groups = new HashMap<>();
+    VssContentStore store = VssContentStore.getInstance( myProject );
+    for( String path : paths )
+    {
+      if( myProject.isDisposed() )
+        return;
+
+      String vssPath = VssUtil.getVssPath( path, false, myProject );
+      String revision = VssContentStore.getBaseRevision( myProject, path );
+      if( vssPath == null || revision == null || store.contains( vssPath, revision ) )
+        continue;
+
+      String vssFolder = vssPath.substring( 0, vssPath.lastIndexOf( '/' ) + 1 );
+      List<Request> group = groups.get( vssFolder );
+      if( group == null )
+      {
+        group = new ArrayList<>();
+        groups.put( vssFolder, group );
+      }
+      group.add( new Request( path, vssPath, revision ) );
+    }
+
+    for( List<Request> group : groups.values() )
+    {
+      if( myProject.isDisposed() )
+        return;
+      fetchGroup( group, store );
+    }
+  }
+
+  private void fetchGroup( List<Request> requests, VssContentStore store )
+  {
+    List<String> vssPaths = new ArrayList<>();
+    for( Request request : requests )
+      vssPaths.add( request.vssPath );
+
+    List<VcsException> errors = new ArrayList<>();
+    String workingPath = new File( requests.get( 0 ).localPath ).getParent();
+    GetContentCommand cmd = new GetContentCommand( myProject, vssPaths, workingPath, errors );
+    try
+    {
+      cmd.execute();
+      for( Request request : requests )
+        store.put( request.vssPath, request.revision, cmd.getContent( request.vssPath ) );
+    }
+    finally
+    {
+      cmd.dispose();
+    }
+
+    if( !errors.isEmpty() )
+      LOG.info( "Prefetch of " + requests.size() + " files finished with errors: " + errors.get( 0 ).getMessage() );
+  }
+}
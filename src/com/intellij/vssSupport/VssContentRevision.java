@@ -1,5 +1,6 @@
 package com.intellij.vssSupport;
 
+import com.intellij.execution.ExecutionException;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
@@ -11,6 +12,7 @@ import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.commands.VSSExecUtil;
+import com.intellij.vssSupport.commands.VssSingleFlight;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -28,9 +30,11 @@ public class VssContentRevision implements ByteBackedContentRevision
   @NonNls private static final String GET_COMMAND = "Get";
   @NonNls private static final String TMP_FILE_NAME = "idea_vss";
 
+  //  The diff and the gutter markers ask for the same content at once.
+  private static final VssSingleFlight<byte[]> ourFlights = new VssSingleFlight<>();
+
   private final FilePath  path;
   private final Project   project;
-  private File      myTmpFile;
   private byte[]    myServerContent;
 
   public VssContentRevision( FilePath path, @NotNull Project proj )
@@ -49,16 +53,28 @@ public class VssContentRevision implements ByteBackedContentRevision
   @Override
   public byte[] getContentAsBytes() {
     if( myServerContent == null )
-      myServerContent = getServerContent();
+    {
+      //  Base revision of a checked out file does not change until checkin,
+      //  it is fetched from the repository only once.
+      String vssPath = VssUtil.getVssPath( path, project );
+      String revision = (vssPath == null) ? null : VssContentStore.getBaseRevision( project, path.getPath() );
+      VssContentStore store = VssContentStore.getInstance( project );
+      if( revision != null )
+        myServerContent = store.get( vssPath, revision );
+
+      if( myServerContent == null )
+      {
+        myServerContent = getServerContent();
+        if( revision != null )
+          store.put( vssPath, revision, myServerContent );
+      }
+    }
 
     return myServerContent;
   }
 
   private byte[] getServerContent()
   {
-    List<VcsException> errors = new ArrayList<>();
-    GetContentListener listener = new GetContentListener( errors );
-
     //  1. For renamed or deleted files, VirtualFile for <path> is NULL.
     //  2. For files which are in the project but reside outside the repository
     //     root their base revision version content is not defined (NULL).
@@ -73,19 +89,12 @@ public class VssContentRevision implements ByteBackedContentRevision
       VssConfiguration config = VssConfiguration.getInstance( project );
       try
       {
-        //  The name of temporary copy is the name of temporary directory concatenated
-        //  with the name of file.
-        File tmpFile = FileUtil.createTempFile(TMP_FILE_NAME, "." + path.getName());
-        tmpFile.deleteOnExit();
-        File tmpDir = tmpFile.getParentFile();
-        myTmpFile = new File( tmpDir, path.getName() );
-        myTmpFile.deleteOnExit();
-
-        // Launch Get command to store temporary file.
+        //  Requests for the same item join, so the key does not include the
+        //  folder the file is got into. Every run gets its own folder: files
+        //  of the same name from different projects may be got at once.
         List<String> options = new LinkedList<>();
         options.add( GET_COMMAND );
         options.add( vssPath );
-        options.add( _GL_OPTION + tmpDir.getCanonicalPath() );
         options.add( _GWR_OPTION );
         if( config.USER_NAME.length() > 0 )
           options.add( config.getYOption() );
@@ -103,7 +112,37 @@ public class VssContentRevision implements ByteBackedContentRevision
             () -> {roots[ 0 ] = ProjectLevelVcsManager.getInstance(project).getVcsRootFor(path );  });
           workDir = roots[ 0 ].getPath().replace('/', File.separatorChar);
         }
-        VSSExecUtil.runProcess( project, config.CLIENT_PATH, options, config.getSSDIREnv(), workDir, listener );
+        final String workingDir = workDir;
+        return ourFlights.run( VssSingleFlight.key( config.getSSDIR(), options ), () -> {
+          File tmpDir;
+          try
+          {
+            tmpDir = FileUtil.createTempDirectory( TMP_FILE_NAME, null );
+          }
+          catch( IOException e )
+          {
+            VssUtil.showErrorOutput( e.getMessage(), project );
+            return null;
+          }
+
+          try
+          {
+            List<String> runOptions = new ArrayList<>( options );
+            runOptions.add( 2, _GL_OPTION + tmpDir.getPath() );
+            GetContentListener listener = new GetContentListener( new ArrayList<>(), new File( tmpDir, path.getName() ) );
+            VSSExecUtil.runProcess( project, config.CLIENT_PATH, runOptions, config.getSSDIREnv(), workingDir, listener );
+            return listener.content;
+          }
+          catch( ExecutionException exc )
+          {
+            VssUtil.showErrorOutput( exc.getMessage(), project );
+            return null;
+          }
+          finally
+          {
+            FileUtil.delete( tmpDir );
+          }
+        });
       }
       catch( Exception exc )
       {
@@ -111,7 +150,7 @@ public class VssContentRevision implements ByteBackedContentRevision
       }
     }
 
-    return listener.content;
+    return null;
   }
 
   @NotNull
@@ -123,9 +162,14 @@ public class VssContentRevision implements ByteBackedContentRevision
     @NonNls private static final String DELETED_MESSAGE = "has been deleted";
     @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
 
+    private final File myTmpFile;
     public byte[] content = null;
 
-    public GetContentListener( List<VcsException> errors ) { super( errors ); }
+    public GetContentListener( List<VcsException> errors, File tmpFile )
+    {
+      super( errors );
+      myTmpFile = tmpFile;
+    }
 
     public void everythingFinishedImpl( final String output )
     {
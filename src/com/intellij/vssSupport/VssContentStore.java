@@ -0,0 +1,225 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.vssSupport.Configuration.VssConfiguration;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Disk cache of file contents fetched from the repository, shared by the
+ * base revisions of changed files, diffs and file history. An entry is keyed
+ * by the VSS path and a revision key which identifies the content for good:
+ * "v5" for the version from the history, or the checkout stamp for the base
+ * of a checked out file (see <code>getBaseRevision</code>).
+ * The least recently used entries are removed when the cache grows over
+ * <code>VssConfiguration.CONTENT_CACHE_SIZE</code> megabytes.
+ */
+public class VssContentStore
+{
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.VssContentStore");
+
+  @NonNls private static final String STORE_FOLDER = "vss" + File.separator + "content";
+  @NonNls private static final String COMPRESSED_EXT = ".gz";
+  @NonNls private static final String PLAIN_EXT = ".bin";
+  @NonNls private static final String VERSION_PREFIX = "v";
+  @NonNls private static final String CHECKOUT_PREFIX = "co";
+  private static final long BYTES_IN_MEGABYTE = 1024 * 1024L;
+
+  private final Project myProject;
+  private final File myFolder;
+  private long myTotalSize = -1;
+
+  public VssContentStore( Project project )
+  {
+    myProject = project;
+    myFolder = new File( PathManager.getSystemPath() + File.separator + STORE_FOLDER, project.getLocationHash() );
+  }
+
+  public static VssContentStore getInstance( Project project )
+  {
+    return ServiceManager.getService( project, VssContentStore.class );
+  }
+
+  public static String getVersionRevision( int version )
+  {
+    return VERSION_PREFIX + version;
+  }
+
+  /**
+   * The repository content of a checked out file can not change until it is
+   * checked in, so the checkout record identifies it.
+   * @return the revision key, or null if the file is not known to be checked
+   *         out by the current user.
+   */
+  @Nullable
+  public static String getBaseRevision( Project project, String localPath )
+  {
+    VssRepositoryIndex index = VssRepositoryIndex.getInstance( project );
+    if( index.getState( localPath ) != VssRepositoryIndex.ItemState.CHECKED_OUT )
+      return null;
+
+    VssRepositoryIndex.Checkout checkout = index.getCheckout( localPath );
+    if( checkout == null || StringUtil.isEmpty( checkout.getDate() ) )
+      return null;
+    return CHECKOUT_PREFIX + checkout.getDate();
+  }
+
+  @Nullable
+  public synchronized byte[] get( @NotNull String vssPath, @Nullable String revision )
+  {
+    if( revision == null || !isEnabled() )
+      return null;
+
+    for( String ext : new String[] { COMPRESSED_EXT, PLAIN_EXT } )
+    {
+      File file = getFile( vssPath, revision, ext );
+      if( file.exists() )
+      {
+        try( InputStream in = open( file, ext ) )
+        {
+          byte[] content = FileUtil.loadBytes( in );
+          file.setLastModified( System.currentTimeMillis() );
+          return content;
+        }
+        catch( IOException e )
+        {
+          LOG.info( "Cached content is broken: " + e.getMessage() );
+          delete( file );
+        }
+      }
+    }
+    return null;
+  }
+
+  public synchronized boolean contains( @NotNull String vssPath, @Nullable String revision )
+  {
+    return revision != null && isEnabled() &&
+           ( getFile( vssPath, revision, COMPRESSED_EXT ).exists() || getFile( vssPath, revision, PLAIN_EXT ).exists() );
+  }
+
+  public synchronized void put( @NotNull String vssPath, @Nullable String revision, @Nullable byte[] content )
+  {
+    if( revision == null || content == null || !isEnabled() )
+      return;
+
+    boolean compress = VssConfiguration.getInstance( myProject ).COMPRESS_CONTENT_CACHE;
+    File file = getFile( vssPath, revision, compress ? COMPRESSED_EXT : PLAIN_EXT );
+    if( file.exists() )
+      return;
+
+    FileUtil.createParentDirs( file );
+    try( OutputStream out = compress ? new GZIPOutputStream( new FileOutputStream( file ) ) : new FileOutputStream( file ) )
+    {
+      out.write( content );
+    }
+    catch( IOException e )
+    {
+      LOG.info( "Content is not cached: " + e.getMessage() );
+      FileUtil.delete( file );
+      return;
+    }
+
+    computeTotalSize();
+    myTotalSize += file.length();
+    evictIfNeeded();
+  }
+
+  /**
+   * Remove the cached base revisions of the file after its checkout is
+   * finished. Versions from the history never change and are kept.
+   */
+  public synchronized void invalidateBase( @NotNull String vssPath )
+  {
+    final String prefix = hash( vssPath ) + "." + CHECKOUT_PREFIX;
+    File[] files = myFolder.listFiles( ( dir, name ) -> name.startsWith( prefix ) );
+    if( files != null )
+    {
+      for( File file : files )
+        delete( file );
+    }
+  }
+
+  public boolean isEnabled()
+  {
+    return VssConfiguration.getInstance( myProject ).CONTENT_CACHE_SIZE > 0;
+  }
+
+  private void evictIfNeeded()
+  {
+    long limit = VssConfiguration.getInstance( myProject ).CONTENT_CACHE_SIZE * BYTES_IN_MEGABYTE;
+    if( myTotalSize <= limit )
+      return;
+
+    File[] files = myFolder.listFiles();
+    if( files == null )
+      return;
+
+    //  Go down to 90% of the limit at once, so that the folder is not listed
+    //  on every put.
+    Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+    for( int i = 0; i < files.length && myTotalSize > limit * 9 / 10; i++ )
+      delete( files[ i ] );
+  }
+
+  private void computeTotalSize()
+  {
+    if( myTotalSize < 0 )
+    {
+      myTotalSize = 0;
+      File[] files = myFolder.listFiles();
+      if( files != null )
+      {
+        for( File file : files )
+          myTotalSize += file.length();
+      }
+    }
+  }
+
+  private void delete( File file )
+  {
+    long length = file.length();
+    if( FileUtil.delete( file ) && myTotalSize >= 0 )
+      myTotalSize = Math.max( 0, myTotalSize - length );
+  }
+
+  private static InputStream open( File file, String ext ) throws IOException
+  {
+    InputStream in = new BufferedInputStream( new FileInputStream( file ) );
+    return COMPRESSED_EXT.equals( ext ) ? new GZIPInputStream( in ) : in;
+  }
+
+  private File getFile( String vssPath, String revision, String ext )
+  {
+    String safeRevision = revision.replaceAll( "[^A-Za-z0-9_-]", "_" );
+    return new File( myFolder, hash( vssPath ) + "." + safeRevision + ext );
+  }
+
+  static String hash( String vssPath )
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+      byte[] bytes = digest.digest( vssPath.toLowerCase().getBytes( StandardCharsets.UTF_8 ) );
+      return StringUtil.toHexString( bytes );
+    }
+    catch( NoSuchAlgorithmException e )
+    {
+      return Integer.toHexString( vssPath.toLowerCase().hashCode() );
+    }
+  }
+}
@@ -1,17 +1,22 @@
 package com.intellij.vssSupport;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vcs.EditFileProvider;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.io.ReadOnlyAttributeUtil;
-import com.intellij.vssSupport.commands.CheckoutFileCommand;
+import com.intellij.vssSupport.commands.CheckoutFilesCommand;
+import com.intellij.vssSupport.commands.VSSExecUtil;
+import com.intellij.vssSupport.commands.VssCommandPriority;
 import com.intellij.vssSupport.ui.CheckoutFilesDialog;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class VssEditFileProvider implements EditFileProvider
 {
@@ -26,25 +31,37 @@ public class VssEditFileProvider implements EditFileProvider
 
   public void editFiles( VirtualFile[] files )
   {
+    //  One dialog for the whole selection, then one command per folder.
+    boolean showOptions = VssVcs.getInstance( project ).getCheckoutOptions().getValue();
+    if( showOptions ) {
+      CheckoutFilesDialog editor = new CheckoutFilesDialog(project);
+      editor.setTitle((files.length == 1) ? VssBundle.message("dialog.title.check.out.file", files[0].getName()) :
+                      VssBundle.message("dialog.title.check.out.multiple"));
+      if (!editor.showAndGet()) {
+        return;
+      }
+    }
+
+    //  The dispatch thread must not wait for a process slot: commands holding
+    //  the slots may need it to ask their questions. The documents are saved
+    //  here since it can be done in the dispatch thread only.
+    FileDocumentManager.getInstance().saveAllDocuments();
     ArrayList<VcsException> errors = new ArrayList<>();
-    for( final VirtualFile file : files )
+    ProgressManager.getInstance().runProcessWithProgressSynchronously(
+      () -> VSSExecUtil.runWithPriority( VssCommandPriority.INTERACTIVE,
+                                         () -> ( new CheckoutFilesCommand( project, Arrays.asList( files ), errors )).execute() ),
+      VssBundle.message( "progress.title.check.out" ), true, project );
+
+    //  In the case of any errors, set RO status back to the failed files.
+    if( !errors.isEmpty() )
     {
-      //  Calc options for each iteration since user can set "do not show"
-      //  in the middle.
-      boolean showOptions = VssVcs.getInstance( project ).getCheckoutOptions().getValue();
-      if( showOptions ) {
-        CheckoutFilesDialog editor = new CheckoutFilesDialog(project);
-        editor.setTitle(VssBundle.message("dialog.title.check.out.file", file.getName()));
-        if (!editor.showAndGet()) {
-          return;
-        }
-      }
-      ( new CheckoutFileCommand( project, file, errors )).execute();
+      Messages.showErrorDialog( errors.get( 0 ).getLocalizedMessage(), VssBundle.message("message.title.error"));
 
-      //  In the case of any errors, set RO status back to the file.
-      if( !errors.isEmpty() )
+      for( VcsException error : errors )
       {
-        Messages.showErrorDialog( errors.get( 0 ).getLocalizedMessage(), VssBundle.message("message.title.error"));
+        final VirtualFile file = error.getVirtualFile();
+        if( file == null )
+          continue;
 
         ApplicationManager.getApplication().runWriteAction(() -> {
           try {   ReadOnlyAttributeUtil.setReadOnlyAttribute( file, false );  }
@@ -54,7 +71,6 @@ public class VssEditFileProvider implements EditFileProvider
           }
         });
       }
-      errors.clear();
     }
 
     for( VirtualFile file : files )
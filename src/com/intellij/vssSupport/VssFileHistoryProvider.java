@@ -19,27 +19,22 @@ package com.intellij.vssSupport;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.RepositoryLocation;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.history.*;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.util.ArrayUtil;
 import com.intellij.util.ui.ColumnInfo;
-import com.intellij.vssSupport.commands.GetFileCommand;
-import com.intellij.vssSupport.commands.HistoryCommand;
 import com.intellij.vssSupport.commands.HistoryParser;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 public class VssFileHistoryProvider implements VcsHistoryProvider
@@ -116,42 +111,104 @@ public class VssFileHistoryProvider implements VcsHistoryProvider
 
   public VcsHistorySession createSessionFor( FilePath filePath ) throws VcsException
   {
-    List<VcsException> errors = new ArrayList<>();
+    String path = getRepositoryPath( filePath );
+    String vssPath = getVssPath( path );
+    ArrayList<HistoryParser.SubmissionData> cached = ( vssPath != null ) ? VssHistoryCache.getInstance( project ).get( vssPath ) : null;
+
+    ArrayList<HistoryParser.SubmissionData> changes = loadHistory( path, vssPath, cached );
+    return new VssHistorySession( createRevisions( changes, filePath ) );
+  }
+
+  /**
+   * Show the cached history at once and append the records which appeared in
+   * the repository since it was stored.
+   */
+  public void reportAppendableHistory(FilePath filePath, VcsAppendableHistorySessionPartner partner) throws VcsException {
+    String path = getRepositoryPath( filePath );
+    String vssPath = getVssPath( path );
+    ArrayList<HistoryParser.SubmissionData> cached = ( vssPath != null ) ? VssHistoryCache.getInstance( project ).get( vssPath ) : null;
+    if( cached == null )
+    {
+      partner.reportCreatedEmptySession( (VcsAbstractHistorySession)createSessionFor( filePath ) );
+      return;
+    }
+
+    partner.reportCreatedEmptySession( new VssHistorySession( createRevisions( cached, filePath ) ) );
+
+    HashSet<String> shown = new HashSet<>();
+    for( HistoryParser.SubmissionData change : cached )
+      shown.add( change.getId() );
+
     try
     {
-      //  Take care of renamed files - refer to the original file name in
-      //  the repository.
-      VssVcs host = VssVcs.getInstance( project );
-      String path = filePath.getPath();
-      if( host.renamedFiles.containsKey( path ))
-        path = host.renamedFiles.get( path );
-
-      HistoryCommand cmd = new HistoryCommand( project, path, errors );
-      cmd.execute();
-
-      if( errors.size() > 0 )
-        throw errors.get( 0 );
-
-      ArrayList<HistoryParser.SubmissionData> changes = cmd.changes;
-      ArrayList<VcsFileRevision> revisions = new ArrayList<>();
-      for( HistoryParser.SubmissionData change : changes )
+      for( HistoryParser.SubmissionData change : loadHistory( path, vssPath, cached ) )
       {
-        VcsFileRevision rev = new VssFileRevision( change, filePath );
-        revisions.add( rev );
+        if( !shown.contains( change.getId() ) )
+          partner.acceptRevision( new VssFileRevision( change, filePath ) );
       }
+    }
+    catch( VcsException e )
+    {
+      partner.reportException( e );
+    }
+  }
 
-      return new VssHistorySession( revisions );
+  /**
+   * Take care of renamed files - refer to the original file name in the
+   * repository.
+   */
+  private String getRepositoryPath( FilePath filePath )
+  {
+    VssVcs host = VssVcs.getInstance( project );
+    String path = filePath.getPath();
+    if( host.renamedFiles.containsKey( path ))
+      path = host.renamedFiles.get( path );
+    return path;
+  }
+
+  /**
+   * @return the key of the cached history, or null if the file can not be
+   *         mapped onto the repository (e.g. its content root is removed).
+   */
+  @Nullable
+  private String getVssPath( String path )
+  {
+    try
+    {
+      return VssUtil.getVssPath( VssUtil.getCanonicalLocalPath( path ), false, project );
+    }
+    catch( RuntimeException e )
+    {
+      return null;
+    }
+  }
+
+  private ArrayList<HistoryParser.SubmissionData> loadHistory( String path, @Nullable String vssPath,
+                                                               @Nullable ArrayList<HistoryParser.SubmissionData> cached ) throws VcsException
+  {
+    List<VcsException> errors = new ArrayList<>();
+    ArrayList<HistoryParser.SubmissionData> changes = null;
+    try
+    {
+      changes = VssHistoryCache.getInstance( project ).update( path, vssPath, false, cached, errors );
     }
     catch( Throwable e )
     {
-      //  This is one of the potential problems. And most common.
-      throw new VcsException( VssBundle.message("message.file.deleted.or.not.in.repository") );
+      LOG.info( e );
     }
+
+    //  This is one of the potential problems. And most common.
+    if( changes == null )
+      throw new VcsException( VssBundle.message("message.file.deleted.or.not.in.repository") );
+    return changes;
   }
 
-  public void reportAppendableHistory(FilePath path, VcsAppendableHistorySessionPartner partner) throws VcsException {
-    final VcsHistorySession session = createSessionFor(path);
-    partner.reportCreatedEmptySession((VcsAbstractHistorySession) session);
+  private ArrayList<VcsFileRevision> createRevisions( List<HistoryParser.SubmissionData> changes, FilePath filePath )
+  {
+    ArrayList<VcsFileRevision> revisions = new ArrayList<>();
+    for( HistoryParser.SubmissionData change : changes )
+      revisions.add( new VssFileRevision( change, filePath ) );
+    return revisions;
   }
 
   private class VssFileRevision implements VcsFileRevision
@@ -200,23 +257,8 @@ public class VssFileHistoryProvider implements VcsHistoryProvider
     public byte[] getContent() { return content; }
 
     public byte[] loadContent() {
-      ArrayList<VcsException> errors = new ArrayList<>();
-      String tmpDir = FileUtil.getTempDirectory();
-      
-      GetFileCommand cmd = new GetFileCommand( project, path.getPath(), Integer.toString( version ), errors );
-      cmd.setOutputPath( tmpDir );
-      cmd.execute();
-
-      File fileContent = new File( tmpDir, path.getName() );
-      content = ArrayUtil.EMPTY_BYTE_ARRAY;
-      try
-      {
-        content = FileUtil.loadFileBytes( fileContent );
-        fileContent.delete();
-      }
-      catch( IOException e ){
-        LOG.error( e.getMessage() );
-      }
+      //  "Show Diff" compares the revision with the previous one.
+      content = VssVersionContentRevision.loadWithPrevious( project, path, version );
       return content;
     }
 
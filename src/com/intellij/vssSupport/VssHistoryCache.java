@@ -0,0 +1,174 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.vssSupport.commands.HistoryCommand;
+import com.intellij.vssSupport.commands.HistoryParser;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * History records of repository items stored under the system directory,
+ * one file per VSS path. The history of an item only grows at its head, so
+ * the stored records are merged with the latest ones on the next request
+ * instead of being parsed again from the full "History" output.
+ */
+public class VssHistoryCache
+{
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.VssHistoryCache");
+
+  @NonNls private static final String CACHE_FOLDER = "vss" + File.separator + "history";
+  private static final int FORMAT_VERSION = 2;
+
+  //  Number of the latest history records asked for when the cached history
+  //  is updated, and its growth when they are not enough.
+  private static final int INITIAL_INCREMENT = 16;
+  private static final int INCREMENT_GROWTH = 8;
+
+  private final Project myProject;
+  private final File myFolder;
+
+  public VssHistoryCache( Project project )
+  {
+    myProject = project;
+    myFolder = new File( PathManager.getSystemPath() + File.separator + CACHE_FOLDER, project.getLocationHash() );
+  }
+
+  public static VssHistoryCache getInstance( Project project )
+  {
+    return ServiceManager.getService( project, VssHistoryCache.class );
+  }
+
+  @Nullable
+  public synchronized ArrayList<HistoryParser.SubmissionData> get( @NotNull String vssPath )
+  {
+    File file = getFile( vssPath );
+    if( !file.exists() )
+      return null;
+
+    try( DataInputStream in = new DataInputStream( new GZIPInputStream( new BufferedInputStream( new FileInputStream( file )))))
+    {
+      if( in.readInt() != FORMAT_VERSION )
+        return null;
+
+      int count = in.readInt();
+      ArrayList<HistoryParser.SubmissionData> changes = new ArrayList<>( count );
+      for( ; count > 0; count-- )
+      {
+        HistoryParser.SubmissionData change = new HistoryParser.SubmissionData();
+        change.action = readString( in );
+        change.version = readString( in );
+        change.submitter = readString( in );
+        change.changeDate = readString( in );
+        change.comment = readString( in );
+        change.label = readString( in );
+        change.item = readString( in );
+        change.folder = readString( in );
+        change.target = readString( in );
+        change.order = in.readInt();
+        changes.add( change );
+      }
+      return changes;
+    }
+    catch( IOException e )
+    {
+      LOG.info( "Cached history is broken: " + e.getMessage() );
+      FileUtil.delete( file );
+      return null;
+    }
+  }
+
+  /**
+   * Bring the history of the file or folder up to date and store it. Without
+   * the cached history the full one is asked for. Otherwise only the latest
+   * records are, and their number grows until they reach the newest cached
+   * record.
+   * @param key the key to store the history under, or null if it is not stored.
+   * @return the history, or null if ss.exe failed to give it.
+   */
+  @Nullable
+  public ArrayList<HistoryParser.SubmissionData> update( @NotNull String localPath, @Nullable String key, boolean recursive,
+                                                          @Nullable ArrayList<HistoryParser.SubmissionData> cached,
+                                                          @NotNull List<VcsException> errors )
+  {
+    ArrayList<HistoryParser.SubmissionData> changes = null;
+    for( int count = INITIAL_INCREMENT; changes == null; count *= INCREMENT_GROWTH )
+    {
+      HistoryCommand cmd = new HistoryCommand( myProject, localPath, errors );
+      cmd.setRecursive( recursive );
+      if( cached != null )
+        cmd.setMaxEntries( count );
+      cmd.execute();
+
+      if( !errors.isEmpty() || cmd.changes == null )
+        return null;
+
+      if( cached == null )
+        changes = cmd.changes;
+      else
+        changes = HistoryParser.merge( cached, cmd.changes, cmd.changes.size() < count );
+    }
+
+    if( key != null )
+      put( key, changes );
+    return changes;
+  }
+
+  public synchronized void put( @NotNull String vssPath, @NotNull List<HistoryParser.SubmissionData> changes )
+  {
+    File file = getFile( vssPath );
+    FileUtil.createParentDirs( file );
+    try( DataOutputStream out = new DataOutputStream( new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( file )))))
+    {
+      out.writeInt( FORMAT_VERSION );
+      out.writeInt( changes.size() );
+      for( HistoryParser.SubmissionData change : changes )
+      {
+        writeString( out, change.action );
+        writeString( out, change.version );
+        writeString( out, change.submitter );
+        writeString( out, change.changeDate );
+        writeString( out, change.comment );
+        writeString( out, change.label );
+        writeString( out, change.item );
+        writeString( out, change.folder );
+        writeString( out, change.target );
+        out.writeInt( change.order );
+      }
+    }
+    catch( IOException e )
+    {
+      LOG.info( "History is not cached: " + e.getMessage() );
+      FileUtil.delete( file );
+    }
+  }
+
+  private File getFile( String vssPath )
+  {
+    return new File( myFolder, VssContentStore.hash( vssPath ) );
+  }
+
+  @Nullable
+  private static String readString( DataInputStream in ) throws IOException
+  {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeString( DataOutputStream out, @Nullable String value ) throws IOException
+  {
+    out.writeBoolean( value != null );
+    if( value != null )
+      out.writeUTF( value );
+  }
+}
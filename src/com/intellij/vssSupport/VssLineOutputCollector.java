@@ -0,0 +1,72 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.util.text.LineTokenizer;
+import com.intellij.openapi.vcs.VcsException;
+
+import java.util.List;
+
+/**
+ * Output collector which receives the output of ss.exe line by line while the
+ * process is still running, so that the output of commands like "Dir -R" is
+ * never kept in memory as a whole.
+ * Lines of the output stream come in the order of their arrival, lines of the
+ * error stream - after the process finished, that is - after the output lines,
+ * while <code>everythingFinishedImpl</code> of other collectors gets the error
+ * stream first. Then <code>processFinished</code> is called, at that moment
+ * the exit code is already set. A fatal message found in the output is given
+ * to <code>onCommandCriticalFail</code> only, never as a line.
+ */
+public abstract class VssLineOutputCollector extends VssOutputCollector
+{
+  //  The beginning of the output is kept for error messages - when the
+  //  command fails, its output is usually short.
+  private static final int OUTPUT_HEAD_LIMIT = 4096;
+
+  private final StringBuilder myOutputHead = new StringBuilder();
+
+  public VssLineOutputCollector( List<VcsException> errors )
+  {
+    super( errors );
+  }
+
+  protected abstract void processLine( final String line );
+
+  protected abstract void processFinished();
+
+  public final void lineAvailable( final String line )
+  {
+    if( myOutputHead.length() < OUTPUT_HEAD_LIMIT )
+    {
+      if( myOutputHead.length() > 0 )
+        myOutputHead.append( '\n' );
+      myOutputHead.append( line );
+    }
+    processLine( line );
+  }
+
+  public final void linesAvailable( final String text )
+  {
+    for( String line : LineTokenizer.tokenize( text, false ) )
+      lineAvailable( line );
+  }
+
+  public final void outputFinished()
+  {
+    processFinished();
+    myOutputHead.setLength( 0 );
+  }
+
+  /**
+   * Compatibility with the callers which give the whole output at once.
+   */
+  public final void everythingFinishedImpl( final String output )
+  {
+    linesAvailable( output );
+    outputFinished();
+  }
+
+  protected String getOutputHead()
+  {
+    return myOutputHead.toString();
+  }
+}
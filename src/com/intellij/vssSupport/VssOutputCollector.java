@@ -14,6 +14,7 @@ public abstract class VssOutputCollector
   protected enum LineType { NO_PROJECT, SIMPLE_FORMAT, WRAPPED_FORMAT }
 
   private int myExitCode;
+  private boolean myCriticalFailure;
   protected final List<VcsException> myErrors;
 
   public VssOutputCollector( List<VcsException> errors )
@@ -27,9 +28,16 @@ public abstract class VssOutputCollector
   @SuppressWarnings({"ThrowableInstanceNeverThrown"})
   public final void onCommandCriticalFail( final String message )
   {
+    myCriticalFailure = true;
     myErrors.add( new VcsException( message ) );
   }
 
+  /**
+   * @return true if the process was stopped or has not started at all; the
+   * exit code is not set then.
+   */
+  public boolean hasCriticalFailure()  {  return myCriticalFailure;  }
+
   /**
    * This method is invoked when process succesfully finished.
    * It means the VSS database was found, user name/password pair is correct
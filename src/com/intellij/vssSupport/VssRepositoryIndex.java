@@ -0,0 +1,489 @@
+package com.intellij.vssSupport;
+
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.vssSupport.Configuration.VssConfiguration;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local copy of the repository state of the project: which files exist in the
+ * repository and who has them checked out. The index is seeded from the output
+ * of "Dir -R -E" for a folder, kept up to date by our own commands and the
+ * results of "Status", and stored
+ * under the system directory, so that the change provider can classify writable
+ * files without running ss.exe on most refreshes.
+ * Seeded folders expire after <code>VssConfiguration.REPOSITORY_INDEX_TTL</code>
+ * minutes since the repository may be changed by other users at any moment.
+ * All paths are canonical local paths in the lower case.
+ */
+public class VssRepositoryIndex implements Disposable
+{
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.VssRepositoryIndex");
+
+  @NonNls private static final String INDEX_FOLDER = "vss" + File.separator + "index";
+  private static final int FORMAT_VERSION = 2;
+  private static final long MILLIS_IN_MINUTE = 60 * 1000L;
+
+  //  Changes which come in a row are written to the disk once, after a pause.
+  private static final int SAVE_DELAY_MILLIS = 5000;
+
+  //  Checkout date and time as printed by ss.exe, e.g. "2-18-07  1:55p".
+  private static final Pattern CHECKOUT_DATE_PATTERN =
+    Pattern.compile( "(\\d{1,2})[-/.](\\d{1,2})[-/.](\\d{2,4})\\s+(\\d{1,2}):(\\d{2})([ap]?)" );
+
+  public enum ItemState {  UNKNOWN, NOT_IN_PROJECT, CHECKED_IN, CHECKED_OUT  }
+
+  /**
+   * Checkout record as shown by "Dir -E": the user, the date and time of the
+   * checkout and the working folder it was done into.
+   */
+  public static final class Checkout
+  {
+    private final String myUser;
+    private final String myDate;
+    private final String myFolder;
+
+    public Checkout( @NotNull String user, @NotNull String date, @NotNull String folder )
+    {
+      myUser = user;
+      myDate = date;
+      myFolder = folder;
+    }
+
+    public String getUser()   {  return myUser;    }
+    public String getDate()   {  return myDate;    }
+    public String getFolder() {  return myFolder;  }
+  }
+
+  private final Project myProject;
+
+  //  Items are kept sorted so that the whole subtree of a folder can be
+  //  dropped when the folder is seeded again.
+  private final TreeMap<String, Checkout> myItems = new TreeMap<>();
+  private final HashMap<String, Long> mySeededFolders = new HashMap<>();
+  private final HashSet<String> myInvalidated = new HashSet<>();
+  private boolean myLoaded;
+  private boolean myModified;
+  private ScheduledFuture<?> mySaveRequest;
+
+  //  Serializes the writes of the file, which go outside the index lock.
+  private final Object mySaveLock = new Object();
+
+  public VssRepositoryIndex( Project project )
+  {
+    myProject = project;
+  }
+
+  public static VssRepositoryIndex getInstance( Project project )
+  {
+    return ServiceManager.getService( project, VssRepositoryIndex.class );
+  }
+
+  /**
+   * Checkout date in the only form kept by the index, e.g. "2-18-07 13:55";
+   * it is a part of the base revision key in the content store.
+   */
+  public static String formatCheckoutDate( long date )
+  {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis( date );
+    return formatCheckoutDate( calendar.get( Calendar.MONTH ) + 1, calendar.get( Calendar.DAY_OF_MONTH ),
+                               calendar.get( Calendar.YEAR ), calendar.get( Calendar.HOUR_OF_DAY ),
+                               calendar.get( Calendar.MINUTE ) );
+  }
+
+  /**
+   * Brings the checkout date printed by ss.exe to the form of
+   * <code>formatCheckoutDate</code>. The first two numbers of the date are
+   * taken as the month and the day, in the order "Dir -E" prints them.
+   * @return the empty string if the text is not a date.
+   */
+  @NotNull
+  public static String parseCheckoutDate( @NotNull String text )
+  {
+    Matcher matcher = CHECKOUT_DATE_PATTERN.matcher( text.trim() );
+    if( !matcher.matches() )
+      return "";
+
+    int hour = Integer.parseInt( matcher.group( 4 ) );
+    if( matcher.group( 6 ).length() > 0 )
+      hour = hour % 12 + ( matcher.group( 6 ).equals( "p" ) ? 12 : 0 );
+    return formatCheckoutDate( Integer.parseInt( matcher.group( 1 ) ), Integer.parseInt( matcher.group( 2 ) ),
+                               Integer.parseInt( matcher.group( 3 ) ), hour, Integer.parseInt( matcher.group( 5 ) ) );
+  }
+
+  @NonNls
+  private static String formatCheckoutDate( int month, int day, int year, int hour, int minute )
+  {
+    return String.format( "%d-%02d-%02d %d:%02d", month, day, year % 100, hour, minute );
+  }
+
+  /**
+   * @return true if the folder lies under the folder which was seeded not
+   * earlier than the configured time-to-live.
+   */
+  public synchronized boolean isFresh( @NotNull String folder )
+  {
+    ensureLoaded();
+    return isCovered( normalize( folder ) );
+  }
+
+  @NotNull
+  public synchronized ItemState getState( @NotNull String path )
+  {
+    ensureLoaded();
+    String key = normalize( path );
+    if( !isCovered( key ) || isInvalidated( key ) )
+      return ItemState.UNKNOWN;
+
+    if( !myItems.containsKey( key ) )
+      return ItemState.NOT_IN_PROJECT;
+
+    Checkout checkout = myItems.get( key );
+    return ( checkout != null && checkout.getUser().equalsIgnoreCase( getUserName() ) ) ?
+           ItemState.CHECKED_OUT : ItemState.CHECKED_IN;
+  }
+
+  @Nullable
+  public synchronized Checkout getCheckout( @NotNull String path )
+  {
+    ensureLoaded();
+    String key = normalize( path );
+    return isCovered( key ) && !isInvalidated( key ) ? myItems.get( key ) : null;
+  }
+
+  /**
+   * @return the files of the folder subtree checked out by the current user
+   *         (in the normalized form), or null if the state of the subtree is
+   *         not known completely.
+   */
+  @Nullable
+  public synchronized Set<String> getCheckedOutFiles( @NotNull String folder )
+  {
+    ensureLoaded();
+    String key = normalize( folder );
+    if( !isCovered( key ) || isInvalidated( key ) )
+      return null;
+
+    String prefix = key + "/";
+    for( String invalidated : myInvalidated )
+    {
+      if( invalidated.startsWith( prefix ) )
+        return null;
+    }
+
+    //  '0' is the next char after '/', so the submap is exactly the subtree.
+    HashSet<String> files = new HashSet<>();
+    String user = getUserName();
+    for( Map.Entry<String, Checkout> entry : myItems.subMap( prefix, key + "0" ).entrySet() )
+    {
+      Checkout checkout = entry.getValue();
+      if( checkout != null && checkout.getUser().equalsIgnoreCase( user ) )
+        files.add( entry.getKey() );
+    }
+    return files;
+  }
+
+  /**
+   * Replaces everything known about the folder subtree with the result of
+   * "Dir -R -E" command issued for it.
+   * @param files all files found in the subtree.
+   * @param checkouts checkout records of the checked out files.
+   */
+  public synchronized void seed( @NotNull String folder, @NotNull Collection<String> files,
+                                 @NotNull Map<String, Checkout> checkouts )
+  {
+    ensureLoaded();
+    String key = normalize( folder );
+    removeSubtree( myItems.keySet(), key );
+    removeSubtree( mySeededFolders.keySet(), key );
+    removeSubtree( myInvalidated, key );
+
+    for( String file : files )
+    {
+      String fileKey = normalize( file );
+      myItems.put( fileKey, checkouts.get( fileKey ) );
+    }
+    mySeededFolders.put( key, System.currentTimeMillis() );
+    modified();
+  }
+
+  /**
+   * The file has been checked out by the current user into its own folder.
+   */
+  public synchronized void checkedOut( @NotNull String path )
+  {
+    String folder = new File( path ).getParent();
+    update( path, new Checkout( getUserName(), formatCheckoutDate( System.currentTimeMillis() ),
+                                folder == null ? "" : folder ) );
+  }
+
+  /**
+   * The file has been checked in or its checkout has been undone.
+   */
+  public synchronized void checkedIn( @NotNull String path )
+  {
+    update( path, null );
+  }
+
+  /**
+   * Forget the state of the file or folder subtree until the next seeding -
+   * used after the operations which change the repository structure.
+   */
+  public synchronized void invalidate( @NotNull String path )
+  {
+    ensureLoaded();
+    myInvalidated.add( normalize( path ) );
+    modified();
+  }
+
+  /**
+   * Takes the state of the file reported by "Status -U" for the current
+   * user: CHECKED_OUT, NOT_IN_PROJECT, or CHECKED_IN if the file is not
+   * checked out by the user. Only the files of the seeded folders are kept.
+   */
+  public synchronized void statusKnown( @NotNull String path, @NotNull ItemState state )
+  {
+    ensureLoaded();
+    String key = normalize( path );
+    if( !isCovered( key ) )
+      return;
+
+    Checkout checkout = myItems.get( key );
+    boolean mine = ( checkout != null && checkout.getUser().equalsIgnoreCase( getUserName() ) );
+    if( state == ItemState.NOT_IN_PROJECT )
+      myItems.remove( key );
+    else if( state == ItemState.CHECKED_OUT && !mine )
+    {
+      String folder = new File( path ).getParent();
+      myItems.put( key, new Checkout( getUserName(), formatCheckoutDate( System.currentTimeMillis() ),
+                                      folder == null ? "" : folder ) );
+    }
+    else if( state == ItemState.CHECKED_IN && ( mine || !myItems.containsKey( key ) ))
+      myItems.put( key, null );
+    else if( !myInvalidated.contains( key ) )
+      return;
+
+    myInvalidated.remove( key );
+    modified();
+  }
+
+  public void dispose()
+  {
+    synchronized( this )
+    {
+      if( mySaveRequest != null )
+        mySaveRequest.cancel( false );
+    }
+    save();
+  }
+
+  private void update( String path, @Nullable Checkout checkout )
+  {
+    ensureLoaded();
+    String key = normalize( path );
+    if( isCovered( key ) && myItems.containsKey( key ) )
+    {
+      myItems.put( key, checkout );
+      modified();
+    }
+  }
+
+  /**
+   * Must be called under the index lock.
+   */
+  private void modified()
+  {
+    myModified = true;
+    if( mySaveRequest == null )
+    {
+      mySaveRequest = JobScheduler.getScheduler().schedule(
+        () -> ApplicationManager.getApplication().executeOnPooledThread( this::save ), SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  private boolean isCovered( String key )
+  {
+    long ttl = VssConfiguration.getInstance( myProject ).REPOSITORY_INDEX_TTL * MILLIS_IN_MINUTE;
+    if( ttl <= 0 )
+      return false;
+
+    long now = System.currentTimeMillis();
+    for( String folder = key; folder != null; folder = getParent( folder ) )
+    {
+      Long seeded = mySeededFolders.get( folder );
+      if( seeded != null && now - seeded < ttl )
+        return true;
+    }
+    return false;
+  }
+
+  private boolean isInvalidated( String key )
+  {
+    if( myInvalidated.isEmpty() )
+      return false;
+
+    for( String folder = key; folder != null; folder = getParent( folder ) )
+    {
+      if( myInvalidated.contains( folder ) )
+        return true;
+    }
+    return false;
+  }
+
+  @Nullable
+  private static String getParent( String key )
+  {
+    int index = key.lastIndexOf( '/' );
+    return ( index > 0 ) ? key.substring( 0, index ) : null;
+  }
+
+  private static void removeSubtree( Set<String> keys, String folder )
+  {
+    String prefix = folder + "/";
+    for( Iterator<String> it = keys.iterator(); it.hasNext(); )
+    {
+      String key = it.next();
+      if( key.equals( folder ) || key.startsWith( prefix ) )
+        it.remove();
+    }
+  }
+
+  private static String normalize( String path )
+  {
+    return VssUtil.getCanonicalLocalPath( path ).toLowerCase();
+  }
+
+  private String getUserName()
+  {
+    return VssConfiguration.getInstance( myProject ).getSSUserName();
+  }
+
+  private File getIndexFile()
+  {
+    return new File( PathManager.getSystemPath() + File.separator + INDEX_FOLDER, myProject.getLocationHash() );
+  }
+
+  //---------------------------------------------------------------------------
+  //  Persistence: the whole index is read on the first access and written
+  //  a few seconds after it is changed and on project close. The file is
+  //  written from a copy, so the index is not locked while it is written.
+  //---------------------------------------------------------------------------
+  private void ensureLoaded()
+  {
+    if( myLoaded )
+      return;
+    myLoaded = true;
+
+    File file = getIndexFile();
+    if( !file.exists() )
+      return;
+
+    try( DataInputStream in = new DataInputStream( new GZIPInputStream( new BufferedInputStream( new FileInputStream( file )))))
+    {
+      if( in.readInt() != FORMAT_VERSION )
+        return;
+
+      for( int count = in.readInt(); count > 0; count-- )
+        mySeededFolders.put( in.readUTF(), in.readLong() );
+
+      for( int count = in.readInt(); count > 0; count-- )
+      {
+        String key = in.readUTF();
+        Checkout checkout = null;
+        if( in.readBoolean() )
+          checkout = new Checkout( in.readUTF(), in.readUTF(), in.readUTF() );
+        myItems.put( key, checkout );
+      }
+
+      for( int count = in.readInt(); count > 0; count-- )
+        myInvalidated.add( in.readUTF() );
+    }
+    catch( IOException e )
+    {
+      LOG.info( "Repository index is not loaded: " + e.getMessage() );
+      myItems.clear();
+      mySeededFolders.clear();
+      myInvalidated.clear();
+    }
+  }
+
+  private void save()
+  {
+    synchronized( mySaveLock )
+    {
+      Map<String, Long> seededFolders;
+      Map<String, Checkout> items;
+      List<String> invalidated;
+      synchronized( this )
+      {
+        mySaveRequest = null;
+        if( !myModified )
+          return;
+        myModified = false;
+
+        seededFolders = new HashMap<>( mySeededFolders );
+        items = new TreeMap<>( myItems );
+        invalidated = new ArrayList<>( myInvalidated );
+      }
+      write( seededFolders, items, invalidated );
+    }
+  }
+
+  private void write( Map<String, Long> seededFolders, Map<String, Checkout> items, List<String> invalidated )
+  {
+    File file = getIndexFile();
+    FileUtil.createParentDirs( file );
+    try( DataOutputStream out = new DataOutputStream( new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( file )))))
+    {
+      out.writeInt( FORMAT_VERSION );
+
+      out.writeInt( seededFolders.size() );
+      for( Map.Entry<String, Long> entry : seededFolders.entrySet() )
+      {
+        out.writeUTF( entry.getKey() );
+        out.writeLong( entry.getValue() );
+      }
+
+      out.writeInt( items.size() );
+      for( Map.Entry<String, Checkout> entry : items.entrySet() )
+      {
+        out.writeUTF( entry.getKey() );
+        Checkout checkout = entry.getValue();
+        out.writeBoolean( checkout != null );
+        if( checkout != null )
+        {
+          out.writeUTF( checkout.getUser() );
+          out.writeUTF( checkout.getDate() );
+          out.writeUTF( checkout.getFolder() );
+        }
+      }
+
+      out.writeInt( invalidated.size() );
+      for( String key : invalidated )
+        out.writeUTF( key );
+    }
+    catch( IOException e )
+    {
+      LOG.info( "Repository index is not saved: " + e.getMessage() );
+      FileUtil.delete( file );
+    }
+  }
+}
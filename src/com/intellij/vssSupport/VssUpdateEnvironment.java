@@ -13,6 +13,7 @@ import com.intellij.openapi.vcs.update.*;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.commands.GetFileCommand;
 import com.intellij.vssSupport.commands.SynchronizeCommand;
+import com.intellij.vssSupport.commands.VssCommandAbstract;
 import com.intellij.vssSupport.ui.GetDirDialog;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -21,6 +22,8 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class VssUpdateEnvironment implements UpdateEnvironment
 {
@@ -49,10 +52,34 @@ public class VssUpdateEnvironment implements UpdateEnvironment
       //  files. Since in "Version Control" window it is allowable (so far) to
       //  issue "Update File" command on the individual file, we need to issue
       //  "Get" command instead.
+      //  Folders are synchronized simultaneously as far as the database
+      //  allows, their results are collected in the order of the roots.
+      List<FilePath> folders = new ArrayList<>();
+      List<CompletableFuture<SynchronizeCommand>> results = new ArrayList<>();
       for( FilePath root : roots )
       {
-        processPath( root, errors, updatedFiles );
+        if( root.isDirectory() )
+        {
+          try
+          {
+            SynchronizeCommand cmd = new SynchronizeCommand( project, root.getVirtualFile(), new ArrayList<>() );
+            results.add( VssCommandAbstract.executeAsync( cmd, Function.identity() ));
+            folders.add( root );
+          }
+          catch( Throwable e )
+          {
+            showRootError( root );
+          }
+        }
+        else
+        {
+          GetFileCommand cmd = new GetFileCommand( project, root.getPath(), errors );
+          cmd.execute();
+        }
       }
+
+      for( int i = 0; i < folders.size(); i++ )
+        processFolder( folders.get( i ), results.get( i ), errors, updatedFiles );
     }
 
     return new UpdateSession(){
@@ -63,37 +90,35 @@ public class VssUpdateEnvironment implements UpdateEnvironment
     };
   }
 
-  private void processPath( final FilePath root, List<VcsException> errors, UpdatedFiles updatedFiles )
+  private void processFolder( final FilePath root, CompletableFuture<SynchronizeCommand> result,
+                              List<VcsException> errors, UpdatedFiles updatedFiles )
   {
-    if( root.isDirectory() )
+    try
     {
-      try
-      {
-        final VirtualFile rootFile = root.getVirtualFile();
-        SynchronizeCommand cmd = new SynchronizeCommand( project, rootFile, errors );
-        cmd.execute();
+      SynchronizeCommand cmd = result.join();
+      errors.addAll( cmd.getErrors() );
 
-        fillGroup( updatedFiles, FileGroup.CREATED_ID, cmd.getFilesAdded() );
-        fillGroup( updatedFiles, FileGroup.UPDATED_ID, cmd.getFilesChanged() );
-        fillGroup( updatedFiles, FileGroup.SKIPPED_ID, cmd.getFilesSkipped() );
+      fillGroup( updatedFiles, FileGroup.CREATED_ID, cmd.getFilesAdded() );
+      fillGroup( updatedFiles, FileGroup.UPDATED_ID, cmd.getFilesChanged() );
+      fillGroup( updatedFiles, FileGroup.SKIPPED_ID, cmd.getFilesSkipped() );
 
-        //  Make files in the folder refresh immediately after the "Get" operation
-        //  is finished. Otherwise synch can be made synchronously far later.
-        rootFile.refresh( true, rootFile.isDirectory() );
-      }
-      catch( Throwable e )
-      {
-        VcsException exc = new VcsException( "Can not process content root " + root.getPath() );
-        AbstractVcsHelper.getInstance(project).showError( exc, TAB_NAME );
-      }
+      //  Make files in the folder refresh immediately after the "Get" operation
+      //  is finished. Otherwise synch can be made synchronously far later.
+      final VirtualFile rootFile = root.getVirtualFile();
+      rootFile.refresh( true, rootFile.isDirectory() );
     }
-    else
+    catch( Throwable e )
     {
-      GetFileCommand cmd = new GetFileCommand( project, root.getPath(), errors );
-      cmd.execute();
+      showRootError( root );
     }
   }
 
+  private void showRootError( FilePath root )
+  {
+    VcsException exc = new VcsException( "Can not process content root " + root.getPath() );
+    AbstractVcsHelper.getInstance(project).showError( exc, TAB_NAME );
+  }
+
   private boolean showOptions( final FilePath[] roots )
   {
     final boolean[] cancelled = new boolean[ 1 ]; cancelled[ 0 ] = false;
@@ -42,8 +42,10 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @State(name = "VssVcs", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
 public class VssVcs extends AbstractVcs implements PersistentStateComponent<Element> {
@@ -68,6 +70,7 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
   private final VssUpdateEnvironment updateEnvironment;
   private final VssChangeProvider changeProvider;
   private final VssFileHistoryProvider historyProvider;
+  private final VssCommittedChangesProvider committedChangesProvider;
   private final EditFileProvider editFileProvider;
   private VirtualFileListener listener;
   private LocalFileOperationsHandler removalHandler;
@@ -96,6 +99,7 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     updateEnvironment = new VssUpdateEnvironment(project);
     changeProvider = new VssChangeProvider(project, this);
     historyProvider = new VssFileHistoryProvider(project);
+    committedChangesProvider = new VssCommittedChangesProvider(project);
     editFileProvider = new VssEditFileProvider(project);
 
     removedFiles = new HashSet<>();
@@ -176,6 +180,11 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     return historyProvider;
   }
 
+  @Override
+  public CommittedChangesProvider getCommittedChangesProvider() {
+    return committedChangesProvider;
+  }
+
   @Override
   public EditFileProvider getEditFileProvider() {
     return editFileProvider;
@@ -223,6 +232,8 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     for (VcsDirectoryMapping pair : list) {
       savedProjectPaths.add(pair.getVcs());
     }
+
+    VssContentPrefetcher.getInstance(myProject).activate();
   }
 
   @Override
@@ -232,6 +243,7 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     LocalFileSystem.getInstance().unregisterAuxiliaryFileOperationsHandler(removalHandler);
 
     ContentRevisionFactory.detachListeners();
+    VssContentPrefetcher.getInstance(myProject).deactivate();
   }
 
   private static boolean hasMappedFolder(String path, List<VcsDirectoryMapping> mappings) {
@@ -249,6 +261,24 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     new CheckinFileCommand(myProject, file, errors, suppressWarns).execute();
   }
 
+  /**
+   * Check in the files of one folder with as few ss.exe runs as possible,
+   * on a pooled thread.
+   * @return the future of the errors of the checkin.
+   */
+  public CompletableFuture<List<VcsException>> checkinFiles(List<VirtualFile> files, boolean suppressWarns) {
+    return new CheckinFilesCommand(myProject, files, new ArrayList<>(), suppressWarns).executeAsync();
+  }
+
+  /**
+   * Check in the folder subtree recursively on a pooled thread; the files
+   * must be exactly the files checked out under it.
+   * @return the future of the errors of the checkin.
+   */
+  public CompletableFuture<List<VcsException>> checkinFolder(VirtualFile folder, List<VirtualFile> files, boolean suppressWarns) {
+    return new CheckinFilesCommand(myProject, folder, files, new ArrayList<>(), suppressWarns).executeAsync();
+  }
+
   public void renameAndCheckInFile(String path, String newName, List<VcsException> errors) {
     File file = new File(path);
     File newFile = new File(file.getParentFile(), newName);
@@ -268,29 +298,22 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
 
   public void moveRenameAndCheckInFile(String path, String newParentPath, String newName,
                                        List<VcsException> errors) {
-    File oldFile = new File(path);
-    File newParent = new File(newParentPath);
-    File newFile = new File(newParent, newName);
-
-    boolean isRenamed = !oldFile.getName().equals(newName);
+    moveAndCheckInFiles(Collections.singletonList(path),
+                        Collections.singletonList(new File(newParentPath, newName).getPath()), errors);
+  }
 
-    try {
-      FileUtil.copy(newFile, oldFile);
-      VirtualFile newVFile = VcsUtil.getVirtualFile(newFile);
-      VirtualFile oldVFile = LocalFileSystem.getInstance().refreshAndFindFileByPath(oldFile.getPath());
-
-      new CheckinFileCommand(myProject, oldVFile, errors).execute();
-      new ShareFileCommand(myProject, oldFile, newFile, errors).execute();
-      new DeleteFileOrDirectoryCommand(myProject, oldFile.getAbsolutePath(), errors).execute();
-      if (isRenamed) {
-        new RenameFileCommand(myProject, newVFile, oldFile.getName(), errors).execute();
-      }
-      oldFile.delete();
-      newFile.setReadOnly();
-    }
-    catch (IOException e) {
-      errors.add(new VcsException(e.getMessage()));
+  /**
+   * Move the files of one folder into another folder, renaming them if
+   * their names differ. No local copies are made.
+   */
+  public void moveAndCheckInFiles(List<String> oldPaths, List<String> newPaths, List<VcsException> errors) {
+    List<File> oldFiles = new ArrayList<>();
+    List<File> newFiles = new ArrayList<>();
+    for (int i = 0; i < oldPaths.size(); i++) {
+      oldFiles.add(new File(oldPaths.get(i)));
+      newFiles.add(new File(newPaths.get(i)));
     }
+    new MoveFilesCommand(myProject, oldFiles, newFiles, errors).execute();
   }
 
   public void addFile(VirtualFile file, List<VcsException> errors) {
@@ -298,6 +321,17 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     cmd.execute();
   }
 
+  public void addFiles(List<VirtualFile> files, List<VcsException> errors) {
+    new AddFilesCommand(myProject, files, errors).execute();
+  }
+
+  /**
+   * Add the new folder with its whole subtree by one recursive command.
+   */
+  public void addFolderTree(VirtualFile folder, List<VcsException> errors) {
+    new AddFolderTreeCommand(myProject, folder, errors).execute();
+  }
+
   public void addFolder(VirtualFile folder, List<VcsException> errors) {
     CreateFolderCommand cmd = new CreateFolderCommand(myProject, folder, errors);
     cmd.execute();
@@ -308,6 +342,10 @@ public class VssVcs extends AbstractVcs implements PersistentStateComponent<Elem
     cmd.execute();
   }
 
+  public void removeFiles(List<String> paths, List<VcsException> errors) {
+    new DeleteFilesCommand(myProject, paths, errors).execute();
+  }
+
   public boolean getLatestVersion(String path, boolean makeWritable, List<VcsException> errors) {
     GetFileCommand cmd = new GetFileCommand(getProject(), path, makeWritable, errors);
     cmd.execute();
@@ -0,0 +1,228 @@
+package com.intellij.vssSupport;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.ByteBackedContentRevision;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.util.ArrayUtil;
+import com.intellij.vssSupport.commands.GetFileCommand;
+import com.intellij.vssSupport.commands.VssCommandAbstract;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Content of the given version of a file, e.g. for the changes in the
+ * repository log. Version 0 stands for the version which is not known from
+ * the history record; its content is not available.
+ */
+public class VssVersionContentRevision implements ByteBackedContentRevision
+{
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.VssVersionContentRevision");
+
+  @NonNls private static final String SCRATCH_PREFIX = "vss_version";
+
+  private final Project myProject;
+  private final FilePath myPath;
+  private final int myVersion;
+  private final boolean myWithPrevious;
+
+  public VssVersionContentRevision( @NotNull Project project, @NotNull FilePath path, int version )
+  {
+    this( project, path, version, false );
+  }
+
+  /**
+   * @param withPrevious the previous version will be asked for as well (e.g.
+   *                     by the diff), get it together with this one.
+   */
+  public VssVersionContentRevision( @NotNull Project project, @NotNull FilePath path, int version, boolean withPrevious )
+  {
+    myProject = project;
+    myPath = path;
+    myVersion = version;
+    myWithPrevious = withPrevious;
+  }
+
+  @Nullable
+  public String getContent()
+  {
+    byte[] content = getContentAsBytes();
+    return content == null ? null : new String( content );
+  }
+
+  @Nullable
+  @Override
+  public byte[] getContentAsBytes()
+  {
+    if( myVersion <= 0 )
+      return null;
+    return myWithPrevious ? loadWithPrevious( myProject, myPath, myVersion ) : loadContent( myProject, myPath, myVersion );
+  }
+
+  @NotNull
+  public FilePath getFile()  {  return myPath;  }
+
+  @NotNull
+  public VcsRevisionNumber getRevisionNumber()
+  {
+    return myVersion > 0 ? new VcsRevisionNumber.Int( myVersion ) : VcsRevisionNumber.NULL;
+  }
+
+  /**
+   * Versions never change, so they are taken from the content store if
+   * possible and put there after they are got.
+   */
+  public static byte[] loadContent( @NotNull Project project, @NotNull FilePath path, int version )
+  {
+    return loadContents( project, path, Collections.singletonList( version ) ).get( version );
+  }
+
+  /**
+   * Load the version together with the previous one, if the latter can be
+   * kept in the content store until it is asked for.
+   */
+  public static byte[] loadWithPrevious( @NotNull Project project, @NotNull FilePath path, int version )
+  {
+    if( version <= 1 || !VssContentStore.getInstance( project ).isEnabled() )
+      return loadContent( project, path, version );
+    return loadContents( project, path, Arrays.asList( version, version - 1 ) ).get( version );
+  }
+
+  /**
+   * Load several versions of the file at once. Versions missing in the content
+   * store are got concurrently, each into its own scratch folder, as far as
+   * the limit of ss.exe processes allows.
+   * @return version -> content; the content is empty if the version can not be got.
+   */
+  @NotNull
+  public static Map<Integer, byte[]> loadContents( @NotNull Project project, @NotNull FilePath path,
+                                                   @NotNull Collection<Integer> versions )
+  {
+    Map<Integer, byte[]> contents = new HashMap<>();
+    String vssPath = VssUtil.getVssPath( path, project );
+    VssContentStore store = VssContentStore.getInstance( project );
+
+    List<Integer> missing = new ArrayList<>();
+    for( Integer version : new LinkedHashSet<>( versions ) )
+    {
+      byte[] content = ( vssPath == null ) ? null : store.get( vssPath, VssContentStore.getVersionRevision( version ) );
+      if( content != null )
+        contents.put( version, content );
+      else
+        missing.add( version );
+    }
+
+    if( missing.size() == 1 )
+    {
+      contents.put( missing.get( 0 ), getVersion( project, path, vssPath, missing.get( 0 ) ) );
+    }
+    else
+    if( missing.size() > 1 )
+    {
+      //  The loads share the executor of asynchronous commands and keep the
+      //  priority of this thread; ss.exe processes are limited there anyway.
+      List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+      for( Integer version : missing )
+        futures.add( getVersionAsync( project, path, vssPath, version ) );
+
+      for( int i = 0; i < missing.size(); i++ )
+      {
+        byte[] content = ArrayUtil.EMPTY_BYTE_ARRAY;
+        try
+        {
+          content = futures.get( i ).get();
+        }
+        catch( InterruptedException e )
+        {
+          Thread.currentThread().interrupt();
+        }
+        catch( ExecutionException e )
+        {
+          LOG.error( e.getCause() );
+        }
+        contents.put( missing.get( i ), content );
+      }
+    }
+    return contents;
+  }
+
+  private static byte[] getVersion( Project project, FilePath path, @Nullable String vssPath, int version )
+  {
+    //  A private folder per request: the file is got under its own name, so
+    //  concurrent loads of the same file would overwrite each other in a
+    //  shared one.
+    File scratch = createScratch();
+    if( scratch == null )
+      return ArrayUtil.EMPTY_BYTE_ARRAY;
+
+    try
+    {
+      GetFileCommand cmd = createCommand( project, path, version, scratch );
+      cmd.execute();
+      return readVersion( project, path, vssPath, version, scratch, cmd.getErrors() );
+    }
+    finally
+    {
+      FileUtil.delete( scratch );
+    }
+  }
+
+  private static CompletableFuture<byte[]> getVersionAsync( Project project, FilePath path, @Nullable String vssPath, int version )
+  {
+    final File scratch = createScratch();
+    if( scratch == null )
+      return CompletableFuture.completedFuture( ArrayUtil.EMPTY_BYTE_ARRAY );
+
+    GetFileCommand cmd = createCommand( project, path, version, scratch );
+    return VssCommandAbstract.executeAsync( cmd, c -> readVersion( project, path, vssPath, version, scratch, c.getErrors() ) )
+                             .whenComplete( ( content, e ) -> FileUtil.delete( scratch ) );
+  }
+
+  @Nullable
+  private static File createScratch()
+  {
+    try
+    {
+      return FileUtil.createTempDirectory( SCRATCH_PREFIX, null );
+    }
+    catch( IOException e )
+    {
+      LOG.error( e.getMessage() );
+      return null;
+    }
+  }
+
+  private static GetFileCommand createCommand( Project project, FilePath path, int version, File scratch )
+  {
+    GetFileCommand cmd = new GetFileCommand( project, path.getPath(), Integer.toString( version ), new ArrayList<>() );
+    cmd.setOutputPath( scratch.getPath() );
+    return cmd;
+  }
+
+  private static byte[] readVersion( Project project, FilePath path, @Nullable String vssPath, int version, File scratch,
+                                     List<VcsException> errors )
+  {
+    try
+    {
+      byte[] content = FileUtil.loadFileBytes( new File( scratch, path.getName() ) );
+      if( vssPath != null && errors.isEmpty() )
+        VssContentStore.getInstance( project ).put( vssPath, VssContentStore.getVersionRevision( version ), content );
+      return content;
+    }
+    catch( IOException e )
+    {
+      LOG.error( e.getMessage() );
+      return ArrayUtil.EMPTY_BYTE_ARRAY;
+    }
+  }
+}
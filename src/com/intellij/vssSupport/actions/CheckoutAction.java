@@ -2,6 +2,8 @@ package com.intellij.vssSupport.actions;
 
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vcs.FileStatus;
@@ -18,7 +20,7 @@ import com.intellij.vssSupport.VssBundle;
 import com.intellij.vssSupport.VssUtil;
 import com.intellij.vssSupport.VssVcs;
 import com.intellij.vssSupport.commands.CheckoutDirCommand;
-import com.intellij.vssSupport.commands.CheckoutFileCommand;
+import com.intellij.vssSupport.commands.CheckoutFilesCommand;
 import com.intellij.vssSupport.commands.VssCheckoutAbstractCommand;
 import com.intellij.vssSupport.ui.CheckoutDirDialog;
 import com.intellij.vssSupport.ui.CheckoutFilesDialog;
@@ -91,8 +93,14 @@ public class CheckoutAction extends VssAction
         }
       }
 
+      //  Checkouts run in the background, the dispatch thread must not wait
+      //  for a process slot. The documents are saved here since it can be
+      //  done in the dispatch thread only.
       isActionProduces = true;
-      performActionOnFiles( files, project, updatedFiles, errors );
+      FileDocumentManager.getInstance().saveAllDocuments();
+      ProgressManager.getInstance().runProcessWithProgressSynchronously(
+        () -> performActionOnFiles( files, project, updatedFiles, errors ), VssBundle.message( "progress.title.check.out" ),
+        true, project );
     }
     finally
     {
@@ -123,14 +131,24 @@ public class CheckoutAction extends VssAction
   private static void performActionOnFiles( VirtualFile[] files, Project project,
                                             UpdatedFiles updatedFiles, List<VcsException> errors )
   {
+    //  Folders are checked out recursively one by one, files - by one
+    //  command per folder.
+    List<VirtualFile> plainFiles = new ArrayList<>();
     for( VirtualFile file : files )
     {
-      VssCheckoutAbstractCommand cmd;
       if( file.isDirectory() )
-        cmd = new CheckoutDirCommand( project, file, errors );
+      {
+        VssCheckoutAbstractCommand cmd = new CheckoutDirCommand( project, file, errors );
+        cmd.execute();
+        storeResult( cmd, updatedFiles );
+      }
       else
-        cmd = new CheckoutFileCommand( project, file, errors );
-      
+        plainFiles.add( file );
+    }
+
+    if( !plainFiles.isEmpty() )
+    {
+      VssCheckoutAbstractCommand cmd = new CheckoutFilesCommand( project, plainFiles, errors );
       cmd.execute();
       storeResult( cmd, updatedFiles );
     }
@@ -10,6 +10,8 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.VssBundle;
 import com.intellij.vssSupport.VssUtil;
 import com.intellij.vssSupport.commands.DiffFileCommand;
+import com.intellij.vssSupport.commands.VSSExecUtil;
+import com.intellij.vssSupport.commands.VssCommandPriority;
 
 import java.util.ArrayList;
 
@@ -24,7 +26,7 @@ public class DiffAction extends VssAction
     VirtualFile[] files = VssUtil.getVirtualFiles( e );
     VirtualFile   vFile = files[ 0 ];
     ArrayList<VcsException> errors = new ArrayList<>();
-    (new DiffFileCommand(project, vFile, errors)).execute();
+    VSSExecUtil.runWithPriority( VssCommandPriority.INTERACTIVE, () -> (new DiffFileCommand(project, vFile, errors)).execute() );
     
     if( !errors.isEmpty() )
       Messages.showErrorDialog(errors.get(0).getLocalizedMessage(), VssBundle.message("message.title.could.not.start.process"));
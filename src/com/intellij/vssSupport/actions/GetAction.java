@@ -2,6 +2,7 @@ package com.intellij.vssSupport.actions;
 
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vcs.FileStatus;
@@ -78,7 +79,11 @@ public class GetAction extends VssAction
       }
       else
       {
-        (new GetFilesCommand( project, files, errors )).execute();
+        //  Questions are asked here, the files are got in the background.
+        final GetFilesCommand cmd = new GetFilesCommand( project, files, errors );
+        if( cmd.askQuestions() )
+          ProgressManager.getInstance().runProcessWithProgressSynchronously( cmd::execute, VssBundle.message( "progress.title.get.files" ),
+                                                                             true, project );
       }
     }
     finally
@@ -3,6 +3,7 @@ package com.intellij.vssSupport.actions;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vcs.FileStatus;
@@ -86,7 +87,11 @@ public class UndocheckoutAction extends VssAction
       }
       else
       {
-        (new UndocheckoutFilesCommand( project, files, errors ) ).execute();
+        //  Questions are asked here, the checkouts are undone in the background.
+        final UndocheckoutFilesCommand cmd = new UndocheckoutFilesCommand( project, files, errors );
+        if( cmd.askQuestions() )
+          ProgressManager.getInstance().runProcessWithProgressSynchronously( cmd::execute, VssBundle.message( "progress.title.undo.check.out" ),
+                                                                             true, project );
       }
     }
     finally
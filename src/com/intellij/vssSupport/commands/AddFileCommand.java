@@ -34,7 +34,7 @@ public class AddFileCommand extends VssCommandAbstract
   {
     String workingPath = file.getParent().getPath().replace('/', File.separatorChar);
 
-    runCP( file.getParent(), workingPath );
-    runProcess( myConfig.getAddOptions().getOptions( file ), workingPath );
+    runInCurrentProject( file.getParent(), myConfig.getAddOptions().getOptions( file ), workingPath );
+    invalidateIndex( file.getPath() );
   }
 }
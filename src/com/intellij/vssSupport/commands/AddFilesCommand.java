@@ -0,0 +1,53 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds several files of one folder: one "cp" into the folder's project and
+ * then as few "Add" processes as possible.
+ */
+public class AddFilesCommand extends VssCommandAbstract
+{
+  private final List<VirtualFile> myFiles;
+
+  public AddFilesCommand( @NotNull Project project, List<VirtualFile> files, List<VcsException> errors )
+  {
+    super( project, errors );
+    myFiles = files;
+  }
+
+  public void execute()
+  {
+    if( myFiles.size() == 1 )
+    {
+      new AddFileCommand( myProject, myFiles.get( 0 ), myErrors ).execute();
+      return;
+    }
+
+    final VirtualFile folder = myFiles.get( 0 ).getParent();
+    final String workingPath = folder.getPath().replace( '/', File.separatorChar );
+    final List<String> names = new ArrayList<>();
+    for( VirtualFile file : myFiles )
+      names.add( file.getName() );
+
+    final MultiFileListener listener = new MultiFileListener( myErrors, names );
+    VSSExecUtil.runInCurrentProject( myConfig.getSSDIR(), () -> {
+      if( runCP( folder, workingPath ) )
+        runBatched( myConfig.getAddOptions().getOptions(), names, workingPath, listener );
+    });
+
+    listener.reportCommonError();
+    for( int i = 0; i < myFiles.size(); i++ )
+    {
+      listener.reportFileError( i, myFiles.get( i ) );
+      invalidateIndex( myFiles.get( i ).getPath() );
+    }
+  }
+}
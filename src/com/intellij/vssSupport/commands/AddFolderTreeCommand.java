@@ -0,0 +1,37 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Adds a new folder with everything under it by one recursive "Add". The
+ * caller must make sure that every item of the subtree is to be added.
+ */
+public class AddFolderTreeCommand extends VssCommandAbstract
+{
+  @NonNls private static final String _R_OPTION = "-R";
+
+  private final VirtualFile myFolder;
+
+  public AddFolderTreeCommand( @NotNull Project project, VirtualFile folder, List<VcsException> errors )
+  {
+    super( project, errors );
+    myFolder = folder;
+  }
+
+  public void execute()
+  {
+    String workingPath = myFolder.getParent().getPath().replace( '/', File.separatorChar );
+    List<String> options = myConfig.getAddOptions().getOptions( myFolder );
+    options.add( _R_OPTION );
+
+    runInCurrentProject( myFolder.getParent(), options, workingPath );
+    invalidateIndex( myFolder.getPath() );
+  }
+}
@@ -1,13 +1,14 @@
 package com.intellij.vssSupport.commands;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.CheckinOptions;
 import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssContentStore;
 import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 
@@ -21,6 +22,15 @@ import java.util.List;
  */
 public class CheckinFileCommand extends VssCommandAbstract
 {
+  @NonNls private static final String NOT_FROM_CURRENT_MESSAGE = "not from the current folder";
+  @NonNls private static final String DELETED_MESSAGE = "has been deleted";
+  @NonNls private static final String ALREADY_CHECKED_OUT_MESSAGE = "is already checked out, continue?";
+  @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
+  @NonNls private static final String CHECKED_OUT_MESSAGE = "currently checked out";
+  @NonNls static final String PROPERLY_MERGED_QUESTION = "properly merged?";
+  @NonNls private static final String NO_CONFLICTS_MESSAGE = "with no conflicts";
+  @NonNls private static final String CONFLICTS_MESSAGE = "there are conflicts";
+
   private final VirtualFile myFile;
   private CheckinOptions myOptions;
   private boolean suppressWarnOnOtherFolder;
@@ -47,19 +57,36 @@ public class CheckinFileCommand extends VssCommandAbstract
     runProcess( options, workingPath, new CheckinListener( myErrors ) );
   }
 
+  /**
+   * @return true if the output of "Checkin" for the file tells that it is
+   *         not checked in as expected.
+   */
+  static boolean isWarningOutput( String output, boolean suppressWarnOnOtherFolder, boolean keepCheckedOut )
+  {
+    return output.contains( NOT_EXISTING_MESSAGE ) || output.contains( CONFLICTS_MESSAGE ) ||
+           output.contains( NO_CONFLICTS_MESSAGE ) || output.contains( DELETED_MESSAGE ) ||
+           ( output.contains( NOT_FROM_CURRENT_MESSAGE ) && !suppressWarnOnOtherFolder ) ||
+           output.contains( CHECKED_OUT_MESSAGE ) ||
+           ( output.contains( ALREADY_CHECKED_OUT_MESSAGE ) && keepCheckedOut );
+  }
+
+  static void onCheckedIn( Project project, VirtualFile file, boolean keepCheckedOut )
+  {
+    VssRepositoryIndex index = VssRepositoryIndex.getInstance( project );
+    if( keepCheckedOut )
+      index.checkedOut( file.getPath() );
+    else
+      index.checkedIn( file.getPath() );
+
+    String vssPath = VssUtil.getVssPath( file, project );
+    if( vssPath != null )
+      VssContentStore.getInstance( project ).invalidateBase( vssPath );
+  }
+
   private class CheckinListener extends VssOutputCollector
   {
     @NonNls private static final String NO_ANSWER = "N\n";
     @NonNls private static final String YES_ANSWER = "Y\n";
-    @NonNls private static final String NOT_FROM_CURRENT_MESSAGE = "not from the current folder";
-    @NonNls private static final String DELETED_MESSAGE = "has been deleted";
-    @NonNls private static final String ALREADY_CHECKED_OUT_MESSAGE = "is already checked out, continue?";
-    @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
-    @NonNls private static final String CHECKED_OUT_MESSAGE = "currently checked out";
-
-    @NonNls private static final String PROPERLY_MERGED_QUESTION = "properly merged?";
-    @NonNls private static final String NO_CONFLICTS_MESSAGE = "with no conflicts";
-    @NonNls private static final String CONFLICTS_MESSAGE = "there are conflicts";
 
     public CheckinListener( List<VcsException> errors ) {  super(errors);   }
 
@@ -67,10 +94,7 @@ public class CheckinFileCommand extends VssCommandAbstract
     {
       int  exitCode = getExitCode();
 
-      if( isNotExistingMessage(output) || isConflictsMessage(output) ||
-          isNoConflictMessage(output) || isHasBeenDeletedMessage(output) ||
-          ( isNotFromCurrentFolderMessage(output) && !suppressWarnOnOtherFolder ) ||
-          isNotCurrentlyCheckedOutMessage(output) || isAlreadyCheckedOutMessage(output) ||
+      if( isWarningOutput( output, suppressWarnOnOtherFolder, myOptions.KEEP_CHECKED_OUT ) ||
           VssUtil.EXIT_CODE_WARNING == exitCode )
       {
         addWarning(output);
@@ -82,6 +106,11 @@ public class CheckinFileCommand extends VssCommandAbstract
       else
       if( processQuestion(output) ){
       }
+      else
+      if( VssUtil.EXIT_CODE_SUCCESS == exitCode )
+      {
+        onCheckedIn( myProject, myFile, myOptions.KEEP_CHECKED_OUT );
+      }
     }
 
     private void addWarning(final String message)
@@ -91,54 +120,28 @@ public class CheckinFileCommand extends VssCommandAbstract
       myErrors.add( e );
     }
 
-    private boolean isNotFromCurrentFolderMessage(String errorOutput){
-      return errorOutput.indexOf(NOT_FROM_CURRENT_MESSAGE) != -1;
-    }
-
-    private boolean isHasBeenDeletedMessage(String errorOutput) {
-      return errorOutput.indexOf(DELETED_MESSAGE) != -1;
-    }
-
-    private boolean isAlreadyCheckedOutMessage(String errorOutput) {
-      return errorOutput.indexOf(ALREADY_CHECKED_OUT_MESSAGE) != -1 && myOptions.KEEP_CHECKED_OUT;
-    }
-
-    private boolean isNotExistingMessage(String errorOutput) {
-      return errorOutput.indexOf(NOT_EXISTING_MESSAGE) != -1;
-    }
-
-    private boolean isNotCurrentlyCheckedOutMessage(String errorOutput) {
-      return errorOutput.indexOf(CHECKED_OUT_MESSAGE) != -1;
-    }
-
     private boolean isProperlyMergedRequest(String errorOutput) {
       return errorOutput.indexOf(PROPERLY_MERGED_QUESTION) != -1;
     }
 
-    private boolean isNoConflictMessage(String errorOutput) {
-      return errorOutput.indexOf(NO_CONFLICTS_MESSAGE) != -1;
-    }
-
-    private boolean isConflictsMessage(String errorOutput) {
-      return errorOutput.indexOf(CONFLICTS_MESSAGE) != -1;
-    }
-
     private void onProperlyMerged()
     {
-      boolean fileHasBeenProperlyMerged = fileHasBeenProperlyMerged();
-
-      if (fileHasBeenProperlyMerged)
-      {
-        myOptions.defaultAnswer = Boolean.TRUE;
-//        runProcess( myOptions.getVssConfiguration(), myOptions.getOptions( myFile ), myFile, simpleListener( myErrors ));
-        execute();
-      }
-      else
-      {
-        myOptions.defaultAnswer = null;
-        final boolean redoAutomaticMerge = redoAutomaticMerge();
-        execute();
-      }
+      afterRun( () -> {
+        boolean fileHasBeenProperlyMerged = fileHasBeenProperlyMerged();
+
+        if (fileHasBeenProperlyMerged)
+        {
+          myOptions.defaultAnswer = Boolean.TRUE;
+//          runProcess( myOptions.getVssConfiguration(), myOptions.getOptions( myFile ), myFile, simpleListener( myErrors ));
+          execute();
+        }
+        else
+        {
+          myOptions.defaultAnswer = null;
+          final boolean redoAutomaticMerge = redoAutomaticMerge();
+          execute();
+        }
+      });
     }
 
     private class MergeUserInput implements VSSExecUtil.UserInput
@@ -188,10 +191,7 @@ public class CheckinFileCommand extends VssCommandAbstract
     
     private boolean showDialog( final Project project, final String message, final String title, final Icon icon )
     {
-      final int[] status = new int[ 1 ];
-      Runnable runnable = () -> status[ 0 ] = Messages.showYesNoDialog(project, message, title, icon );
-      ApplicationManager.getApplication().invokeAndWait( runnable );
-      return status[ 0 ] == Messages.YES;
+      return askOnDispatchThread( () -> Messages.showYesNoDialog(project, message, title, icon ) == Messages.YES );
     }
   }
 }
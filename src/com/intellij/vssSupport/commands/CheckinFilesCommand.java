@@ -0,0 +1,127 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vssSupport.CheckinOptions;
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks in several files of one folder with as few "Checkin" processes as
+ * possible, or all files of a folder subtree with one "Checkin -R". The files
+ * which need the user's decision on merge are checked in one by one afterwards.
+ */
+public class CheckinFilesCommand extends VssCommandAbstract
+{
+  @NonNls private static final String _R_OPTION = "-R";
+
+  private final List<VirtualFile> myFiles;
+  private final VirtualFile myRecursiveFolder;
+  private final boolean mySuppressWarns;
+
+  public CheckinFilesCommand( @NotNull Project project, List<VirtualFile> files, List<VcsException> errors,
+                              boolean suppressWarns )
+  {
+    this( project, null, files, errors, suppressWarns );
+  }
+
+  /**
+   * @param recursiveFolder the folder to be checked in recursively; the files
+   *                        must be exactly the files checked out under it.
+   */
+  public CheckinFilesCommand( @NotNull Project project, @Nullable VirtualFile recursiveFolder, List<VirtualFile> files,
+                              List<VcsException> errors, boolean suppressWarns )
+  {
+    super( project, errors );
+    myRecursiveFolder = recursiveFolder;
+    myFiles = files;
+    mySuppressWarns = suppressWarns;
+  }
+
+  public void execute()
+  {
+    String folderVssPath = ( myRecursiveFolder != null ) ? VssUtil.getVssPath( myRecursiveFolder, myProject ) : null;
+    if( myRecursiveFolder != null && folderVssPath == null )
+    {
+      Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
+      for( VirtualFile file : myFiles )
+        groups.computeIfAbsent( file.getParent(), parent -> new ArrayList<>() ).add( file );
+      for( List<VirtualFile> group : groups.values() )
+        new CheckinFilesCommand( myProject, group, myErrors, mySuppressWarns ).execute();
+      return;
+    }
+
+    List<VirtualFile> single = new ArrayList<>();
+    List<VirtualFile> files = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> vssPaths = new ArrayList<>();
+    for( VirtualFile file : myFiles )
+    {
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( vssPath == null || ( myFiles.size() == 1 && myRecursiveFolder == null ))
+        single.add( file );
+      else
+      {
+        files.add( file );
+        names.add( file.getName() );
+        vssPaths.add( vssPath );
+      }
+    }
+
+    if( !files.isEmpty() )
+    {
+      CheckinOptions options = myConfig.getCheckinOptions();
+      MultiFileListener listener = new MultiFileListener( myErrors, names );
+      int errors = myErrors.size();
+      if( folderVssPath != null )
+      {
+        List<String> cmdOptions = appendIOption( options.getOptions() );
+        cmdOptions.add( 1, folderVssPath );
+        cmdOptions.add( _R_OPTION );
+        runProcess( cmdOptions, myRecursiveFolder.getPath().replace( '/', File.separatorChar ), listener );
+      }
+      else
+      {
+        String workingPath = files.get( 0 ).getParent().getPath().replace( '/', File.separatorChar );
+        runBatched( appendIOption( options.getOptions() ), vssPaths, workingPath, listener );
+      }
+
+      listener.reportCommonError();
+
+      //  Files are taken as checked in only if the run has gone through:
+      //  a failure with the common output only or a stopped run leaves
+      //  their state unknown.
+      boolean runFailed = myErrors.size() > errors;
+      for( int i = 0; i < files.size(); i++ )
+      {
+        VirtualFile file = files.get( i );
+        String output = listener.getOutput( i );
+        if( output != null && output.contains( CheckinFileCommand.PROPERLY_MERGED_QUESTION ) )
+          single.add( file );
+        else
+        if( output != null && CheckinFileCommand.isWarningOutput( output, mySuppressWarns, options.KEEP_CHECKED_OUT ) )
+        {
+          VcsException e = new VcsException( output ).setIsWarning( true );
+          e.setVirtualFile( file );
+          myErrors.add( e );
+        }
+        else
+        if( !listener.reportFileError( i, file ) && !runFailed &&
+            listener.getFileExitCode( i ) == VssUtil.EXIT_CODE_SUCCESS )
+          CheckinFileCommand.onCheckedIn( myProject, file, options.KEEP_CHECKED_OUT );
+      }
+    }
+
+    for( VirtualFile file : single )
+      new CheckinFileCommand( myProject, file, myErrors, mySuppressWarns ).execute();
+  }
+}
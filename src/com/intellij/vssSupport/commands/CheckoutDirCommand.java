@@ -4,7 +4,6 @@
  */
 package com.intellij.vssSupport.commands;
 
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.LineTokenizer;
 import com.intellij.openapi.vcs.VcsException;
@@ -41,7 +40,6 @@ public class CheckoutDirCommand extends VssCheckoutAbstractCommand
     List<String> options = baseOptions.getOptions( myDir );
     String workingPath = myDir.getPath().replace('/', File.separatorChar);
 
-    FileDocumentManager.getInstance().saveAllDocuments();
     runProcess( options, workingPath, new CheckoutListener( myErrors ) );
 
     //  Make "RO" attributes refresh immediately after the undo operation
@@ -1,12 +1,9 @@
 package com.intellij.vssSupport.commands;
 
-import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.vssSupport.VssBundle;
 import com.intellij.vssSupport.VssOutputCollector;
-import com.intellij.vssSupport.VssUtil;
 
 import java.io.File;
 import java.util.List;
@@ -37,7 +34,6 @@ public class CheckoutFileCommand extends VssCheckoutAbstractCommand
    */
   public void execute()
   {
-    FileDocumentManager.getInstance().saveAllDocuments();
     List<String> options = myConfig.getCheckoutOptions().getOptions( myFile );
     String workingPath = myFile.getParent().getPath().replace('/', File.separatorChar);
 
@@ -57,46 +53,7 @@ public class CheckoutFileCommand extends VssCheckoutAbstractCommand
      */
     public void everythingFinishedImpl( final String output )
     {
-      int exitCode = getExitCode();
-
-      if( output.indexOf( HAVE_FILE_MESSAGE ) != -1 )
-      {
-        checkedAlready.add( myFile.getPath() );
-      }
-      else if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
-      {
-        notexistingFiles.add( myFile.getPath() );
-      }
-      else if( output.indexOf( DELETED_MESSAGE ) != -1 )
-      {
-        deletedFiles.add( myFile.getPath() );
-      }
-      else if( output.indexOf( CHECKED_OUT_BY_ANOTHER_USER_MESSAGE ) != -1 )
-      {
-        checkedByOther.add( myFile.getPath() );
-      }
-      else if( VssUtil.EXIT_CODE_SUCCESS == exitCode || VssUtil.EXIT_CODE_WARNING == exitCode )
-      {
-        successFiles.add( myFile.getPath() );
-      }
-      else
-      {
-        VssUtil.showErrorOutput( output, myProject );
-      }
-
-      if( VssUtil.EXIT_CODE_SUCCESS != exitCode && VssUtil.EXIT_CODE_WARNING != exitCode )
-      {
-        //  IDEADEV-11892. While impossible to keep track of the files which were
-        //  checked (via native ss client) into another working folder, we need
-        //  to give the user a hint.
-        String out = output;
-        if( output.indexOf( HAVE_FILE_MESSAGE ) != -1 )
-          out += "\n" + VssBundle.message( "message.text.hint" );
-        
-        VcsException e = new VcsException( out );
-        e.setVirtualFile( myFile );
-        myErrors.add( e );
-      }
+      storeResult( myFile, output, getExitCode(), true );
     }
   }
 
@@ -0,0 +1,81 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks out several files with one "Checkout" process per folder. The
+ * results are collected into the same groups as by {@code CheckoutFileCommand}.
+ */
+public class CheckoutFilesCommand extends VssCheckoutAbstractCommand
+{
+  private final List<VirtualFile> myFiles;
+
+  public CheckoutFilesCommand( @NotNull Project project, List<VirtualFile> files, List<VcsException> errors )
+  {
+    super( project, errors );
+    myFiles = files;
+  }
+
+  public void execute()
+  {
+    Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
+    for( VirtualFile file : myFiles )
+      groups.computeIfAbsent( file.getParent(), parent -> new ArrayList<>() ).add( file );
+
+    for( List<VirtualFile> group : groups.values() )
+    {
+      if( group.size() == 1 )
+      {
+        CheckoutFileCommand cmd = new CheckoutFileCommand( myProject, group.get( 0 ), myErrors );
+        cmd.execute();
+        storeResults( cmd );
+      }
+      else
+        checkoutGroup( group );
+    }
+  }
+
+  private void checkoutGroup( List<VirtualFile> files )
+  {
+    List<VirtualFile> checkedFiles = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> vssPaths = new ArrayList<>();
+    for( VirtualFile file : files )
+    {
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( vssPath != null )
+      {
+        checkedFiles.add( file );
+        names.add( file.getName() );
+        vssPaths.add( vssPath );
+      }
+    }
+    if( checkedFiles.isEmpty() )
+      return;
+
+    String workingPath = checkedFiles.get( 0 ).getParent().getPath().replace( '/', File.separatorChar );
+    MultiFileListener listener = new MultiFileListener( myErrors, names );
+    runBatched( myConfig.getCheckoutOptions().getOptions(), vssPaths, workingPath, listener );
+
+    //  A file without any message of its own gets the common output, so that
+    //  the failure of the whole command is reported for every file.
+    for( int i = 0; i < checkedFiles.size(); i++ )
+    {
+      String output = listener.getOutput( i );
+      int exitCode = listener.getFileExitCode( i );
+      if( output == null )
+        output = ( exitCode == VssUtil.EXIT_CODE_FAILURE ) ? listener.getCommonOutput() : "";
+      storeResult( checkedFiles.get( i ), output, exitCode, false );
+    }
+  }
+}
@@ -28,7 +28,7 @@ public class CreateFolderCommand extends VssCommandAbstract
     String workingPath = folder.getParent().getPath();
     List<String> options = formOptions( CREATE_COMMAND, VssUtil.getVssPath( folder, myProject ), _I__OPTION );
 
-    runCP( folder.getParent(), workingPath );
-    runProcess( options, workingPath );
+    runInCurrentProject( folder.getParent(), options, workingPath );
+    invalidateIndex( folder.getPath() );
   }
 }
@@ -29,5 +29,6 @@ public class DeleteFileOrDirectoryCommand extends VssCommandAbstract
     List<String> options = formOptions( DELETE_COMMAND, VssUtil.getVssPath( new File( path ), myProject), _I_Y_OPTION );
 
     runProcess( options, workingPath );
+    invalidateIndex( path );
   }
 }
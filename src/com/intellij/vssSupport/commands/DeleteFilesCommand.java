@@ -0,0 +1,66 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes several files or folders of one parent folder with as few "Delete"
+ * processes as possible.
+ */
+public class DeleteFilesCommand extends VssCommandAbstract
+{
+  @NonNls private static final String DELETE_COMMAND = "Delete";
+
+  private final List<String> myPaths;
+
+  public DeleteFilesCommand( @NotNull Project project, List<String> paths, List<VcsException> errors )
+  {
+    super( project, errors );
+    myPaths = paths;
+  }
+
+  public void execute()
+  {
+    if( myPaths.size() == 1 )
+    {
+      new DeleteFileOrDirectoryCommand( myProject, myPaths.get( 0 ), myErrors ).execute();
+      return;
+    }
+
+    //  Items out of the repository can not be deleted from it anyway.
+    List<String> paths = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> vssPaths = new ArrayList<>();
+    for( String path : myPaths )
+    {
+      File file = new File( path );
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( vssPath != null )
+      {
+        paths.add( path );
+        names.add( file.getName() );
+        vssPaths.add( vssPath );
+      }
+    }
+    if( paths.isEmpty() )
+      return;
+
+    String workingPath = new File( paths.get( 0 ) ).getParentFile().getPath();
+    MultiFileListener listener = new MultiFileListener( myErrors, names );
+    runBatched( formOptions( DELETE_COMMAND, _I_Y_OPTION ), vssPaths, workingPath, listener );
+
+    listener.reportCommonError();
+    for( int i = 0; i < paths.size(); i++ )
+    {
+      listener.reportFileError( i, null );
+      invalidateIndex( paths.get( i ) );
+    }
+  }
+}
@@ -9,9 +9,9 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.VcsException;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssContentStore;
 import com.intellij.vssSupport.VssOutputCollector;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
@@ -33,6 +33,8 @@ public class DiffFileCommand extends VssCommandAbstract
 
   private final VirtualFile myFile;
   private File myTmpFile;
+  private String myVssPath;
+  private String myRevision;
 
   public DiffFileCommand( Project project, VirtualFile vFile, List<VcsException> errors )
   {
@@ -47,25 +49,41 @@ public class DiffFileCommand extends VssCommandAbstract
     // The implementation of Diff command consists from two parts:
     // 1. Get the latest repository version into the temporary folder;
     // 2. Performs difference of two local versions.
+    // The first step is skipped if the base revision of the checked out file
+    // is already in the content cache.
+    myVssPath = VssUtil.getVssPath( myFile, myProject );
+    myRevision = VssContentStore.getBaseRevision( myProject, myFile.getPath() );
+    if( myVssPath != null && myRevision != null )
+    {
+      byte[] content = VssContentStore.getInstance( myProject ).get( myVssPath, myRevision );
+      if( content != null )
+      {
+        showDiff( content );
+        return;
+      }
+    }
 
+    //  The file is got into a folder of its own: other Gets may run at the
+    //  same time and get files of the same name.
+    File tmpDir = null;
     try
     {
-      // The name of temporary copy is the name of temporary directory concatenated
-      // with the name of file.
-      File tmpFile = FileUtil.createTempFile(TMP_FILE_NAME, "." + myFile.getExtension());
-      tmpFile.deleteOnExit();
-      File tmpDir = tmpFile.getParentFile();
-      myTmpFile = new File(tmpDir, myFile.getName());
-      myTmpFile.deleteOnExit();
+      tmpDir = FileUtil.createTempDirectory( TMP_FILE_NAME, null );
+      myTmpFile = new File( tmpDir, myFile.getName() );
 
       String workingPath = myFile.getParent().getPath().replace('/', File.separatorChar);
-      List<String> options = formOptions( GET_COMMAND, VssUtil.getVssPath( myFile, myProject ),
+      List<String> options = formOptions( GET_COMMAND, myVssPath,
                                           _GL_OPTION + tmpDir.getCanonicalPath(), _GWR_OPTION );
       runProcess( options, workingPath, new FileDiffListener( myErrors ) );
     }
     catch( Exception exc ) {
       myErrors.add( new VcsException( exc ) );
     }
+    finally
+    {
+      if( tmpDir != null )
+        FileUtil.delete( tmpDir );
+    }
   }
 
   /**
@@ -98,23 +116,9 @@ public class DiffFileCommand extends VssCommandAbstract
         }
         try
         {
-          String title = VssBundle.message("dialog.title.diff.for.file", myFile.getPresentableUrl());
-
-          String title1 = VssBundle.message("diff.content.title.repository");
-          String title2 = VssBundle.message("diff.content.title.local");
-
-          final LocalFileSystem lfs = LocalFileSystem.getInstance();
-          VirtualFile tmpFile = lfs.findFileByIoFile(myTmpFile);
-          if (tmpFile == null) {
-            tmpFile = lfs.refreshAndFindFileByIoFile(myTmpFile);
-          }
-          if (tmpFile == null) throw new IOException("File not found" + tmpFile);
-
-          DiffContent vssContent = DiffContentFactory.getInstance().create(myProject, tmpFile);
-          DiffContent currentContent = DiffContentFactory.getInstance().create(myProject, myFile);
-
-          DiffRequest request = new SimpleDiffRequest(title, vssContent, currentContent, title1, title2);
-          DiffManager.getInstance().showDiff(myProject, request);
+          byte[] content = FileUtil.loadFileBytes( myTmpFile );
+          VssContentStore.getInstance( myProject ).put( myVssPath, myRevision, content );
+          showDiff( content );
         }
         catch (IOException e) {
           myErrors.add( new VcsException(e.getLocalizedMessage()) );
@@ -122,4 +126,24 @@ public class DiffFileCommand extends VssCommandAbstract
       }
     }
   }
+
+  private void showDiff( byte[] repositoryContent )
+  {
+    try
+    {
+      String title = VssBundle.message("dialog.title.diff.for.file", myFile.getPresentableUrl());
+
+      String title1 = VssBundle.message("diff.content.title.repository");
+      String title2 = VssBundle.message("diff.content.title.local");
+
+      DiffContent vssContent = DiffContentFactory.getInstance().createFromBytes(myProject, repositoryContent, myFile);
+      DiffContent currentContent = DiffContentFactory.getInstance().create(myProject, myFile);
+
+      DiffRequest request = new SimpleDiffRequest(title, vssContent, currentContent, title1, title2);
+      DiffManager.getInstance().showDiff(myProject, request);
+    }
+    catch (IOException e) {
+      myErrors.add( new VcsException(e.getLocalizedMessage()) );
+    }
+  }
 }
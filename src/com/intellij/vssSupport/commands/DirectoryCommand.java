@@ -16,28 +16,39 @@
 
 package com.intellij.vssSupport.commands;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.encoding.EncodingProjectManager;
 import com.intellij.vcsUtil.VcsUtil;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
+import com.intellij.vssSupport.database.VssDatabaseReader;
 import org.jetbrains.annotations.NonNls;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
 
 public class DirectoryCommand extends VssCommandAbstract
 {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vssSupport.commands.DirectoryCommand");
+
   @NonNls private static final String DIR_COMMAND = "Dir";
   @NonNls private static final String RECURSIVE_OPTION = "-R";
   @NonNls private static final String EXTENDED_FORMAT_OPTION = "-E";
 
   private final String localRootPath;
+  private final String localPath;
   private final String vssProjectPath;
   private final HashSet<String> filesInProject = new HashSet<>();
   private final HashSet<String> filesCheckedOut = new HashSet<>();
+  private final HashMap<String, VssRepositoryIndex.Checkout> checkouts = new HashMap<>();
 
   public DirectoryCommand( Project project, String path, List<VcsException> errors )
   {
@@ -53,17 +64,71 @@ public class DirectoryCommand extends VssCommandAbstract
       throw new IllegalArgumentException( "DIRECTORY command can be started only for a valid content root" );
 
     localRootPath = contentRoot.getPath();
+    localPath = path;
     vssProjectPath = VssUtil.getVssPath( aux, myProject );
   }
 
   public boolean isInProject( String path ) {  return filesInProject.contains( path );  }
   public boolean isCheckedOut( String path ){  return filesCheckedOut.contains( path ); }
 
+  /**
+   * Store the result of the command as the repository state of the folder
+   * subtree given in the constructor.
+   */
+  public void storeTo( VssRepositoryIndex index )
+  {
+    index.seed( localPath, filesInProject, checkouts );
+  }
+
   public void execute()
   {
+    if( myConfig.USE_NATIVE_READER && readDatabase() )
+      return;
+
     DirectoryCommandListener listener = new DirectoryCommandListener( myProject, localRootPath,
-                                                                      filesInProject, filesCheckedOut, myErrors );
+                                                                      filesInProject, filesCheckedOut, checkouts, myErrors );
     List<String> options = formOptions( DIR_COMMAND, RECURSIVE_OPTION, EXTENDED_FORMAT_OPTION, vssProjectPath );
     runProcess( options, localRootPath, listener );
   }
+
+  /**
+   * Collect the same information as "Dir -R -E" does, but from the database
+   * files directly.
+   * @return false if the database could not be read, the caller should run
+   *         ss.exe then.
+   */
+  private boolean readDatabase()
+  {
+    if( vssProjectPath == null )
+      return false;
+
+    final String root = VssUtil.getCanonicalLocalPath( localPath ).toLowerCase();
+    final String userName = myConfig.getSSUserName();
+    try
+    {
+      VssDatabaseReader reader = new VssDatabaseReader( new File( myConfig.SRCSAFEINI_PATH ),
+                                                        EncodingProjectManager.getInstance( myProject ).getDefaultCharset() );
+      reader.walkProject( vssProjectPath, ( relativePath, checkout ) -> {
+        String fileName = root + "/" + relativePath.toLowerCase();
+        filesInProject.add( fileName );
+        if( checkout != null )
+        {
+          if( checkout.getUser().equalsIgnoreCase( userName ) )
+            filesCheckedOut.add( fileName );
+          checkouts.put( fileName, new VssRepositoryIndex.Checkout( checkout.getUser(),
+                                                                    VssRepositoryIndex.formatCheckoutDate( checkout.getDate() ),
+                                                                    checkout.getWorkingFolder() ));
+        }
+      });
+      return true;
+    }
+    catch( IOException e )
+    {
+      LOG.info( "Can not read the database, falling back to ss.exe: " + e.getMessage() );
+      filesInProject.clear();
+      filesCheckedOut.clear();
+      checkouts.clear();
+      return false;
+    }
+  }
 }
@@ -1,37 +1,55 @@
 package com.intellij.vssSupport.commands;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.text.LineTokenizer;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.VssBundle;
-import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssLineOutputCollector;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /**
  * Use this listener to catch messages from "Dir" VSS command.
  */
-public class DirectoryCommandListener extends VssOutputCollector
+public class DirectoryCommandListener extends VssLineOutputCollector
 {
   @NonNls private static final String TOTAL_SIG = " items(s)";
   @NonNls private static final String NO_ITEMS_FOUND_SIG = "No items found under";
   @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
 
+  //  Checkout date and time which separate the user name from the working
+  //  folder, e.g. " 2-18-07 12:42p ".
+  private static final Pattern CHECKOUT_DATE_PATTERN =
+    Pattern.compile( "\\s(\\d{1,2}[-/.]\\d{1,2}[-/.]\\d{2,4}\\s+\\d{1,2}:\\d{2}[ap]?)(\\s+|$)" );
+
   private final Project project;
   private final String startFolder;
   private final HashSet<String> filesInProject;
   private final HashSet<String> filesCheckedOut;
+  private final Map<String, VssRepositoryIndex.Checkout> checkouts;
+
+  private final String userName;
+
+  private String localPath;
+  private String pendingProjectLine;
+  private boolean notExisting;
+
+  //  Checked out file whose working folder may continue on the next line.
+  private String lastCheckedOutFile;
 
   public DirectoryCommandListener( Project project, String startFolder,
                                    HashSet<String> projectFiles, HashSet<String> checkedOut,
+                                   Map<String, VssRepositoryIndex.Checkout> checkoutRecords,
                                    List<VcsException> errors )
   {
     super(errors);
@@ -39,64 +57,93 @@ public class DirectoryCommandListener extends VssOutputCollector
     this.startFolder = startFolder;
     filesInProject = projectFiles;
     filesCheckedOut = checkedOut;
+    checkouts = checkoutRecords;
+    userName = VssConfiguration.getInstance( project ).getSSUserName().toLowerCase();
+    localPath = startFolder;
   }
 
-  public void everythingFinishedImpl( final String output )
+  protected void processLine( final String line )
   {
-    if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
+    if( notExisting )
+      return;
+
+    if( line.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
     {
-      myErrors.add( new VcsException( VssBundle.message( "message.text.path.is.not.existing.filename.or.project", startFolder )) );
+      notExisting = true;
       return;
     }
 
-    String localPath = startFolder;
-
-    String[] lines = LineTokenizer.tokenize( output, false );
-    int offset = 0;
-    while( offset < lines.length )
+    //  First process lines that denote VSS project path like
+    //  --- cut ---
+    //  !$/vsstest/SRC/Dir5:
+    //  --- end cut ---
+    //  or (in the case of spanning to the next line:
+    //  --- cut ---
+    //  !$/vsstest/SRC/Dir5/SomeVeryLongPath/
+    //  !withContinuation:
+    //  --- end cut ---
+    //  The first line of the wrapped format can be distinguished only by
+    //  the next one, so keep it until the next line comes.
+    if( pendingProjectLine != null )
     {
-      String line = lines[ offset ];
-      if( line.length() > 0 )
+      String firstPart = pendingProjectLine;
+      pendingProjectLine = null;
+      if( !StringUtil.startsWithChar( line, '$' ) && StringUtil.endsWithChar( line, ':' ) )
       {
-        //  First process lines that denote VSS project path like
-        //  --- cut ---
-        //  !$/vsstest/SRC/Dir5:
-        //  --- end cut ---
-        //  or (in the case of spanning to the next line:
-        //  --- cut ---
-        //  !$/vsstest/SRC/Dir5/SomeVeryLongPath/
-        //  !withContinuation:
-        //  --- end cut ---
-
-        LineType lineType = whatSubProjectLine( lines, offset );
-        if( lineType != LineType.NO_PROJECT )
-        {
-          localPath = constructLocalFromSubproject( lines, offset );
-          localPath = VssUtil.getLocalPath( localPath, project );
+        setProjectPath( firstPart + line );
+        return;
+      }
+    }
 
-          offset += (lineType == LineType.SIMPLE_FORMAT) ? 0 : 1;
-        }
+    String checkedOutFile = lastCheckedOutFile;
+    lastCheckedOutFile = null;
+
+    if( line.length() > 0 )
+    {
+      if( line.charAt( 0 ) == '$' )
+      {
+        if( StringUtil.endsWithChar( line, ':' ) )
+          setProjectPath( line );
         else
         {
           //  If the line starts with '$' and does not end with ':' then it
-          //  denotes subfolder under the given VSS [sub]project (see above).
+          //  denotes subfolder under the given VSS [sub]project (see above)
+          //  or the first part of the wrapped project line.
           //  --- cut ---
           //    $/vsstest/SRC/Dir5:
           // ==>$foo
           //  --- cut ---
-          if( !( line.charAt( 0 ) == '$' && (line.charAt(line.length() - 1) != ':') ) &&
-              //  Skip lines with no useful information.
-              line.indexOf( TOTAL_SIG ) == -1 &&
-              line.indexOf( NO_ITEMS_FOUND_SIG ) == -1 )
-          {
-            extractFileAndCheckoutInfo( localPath, line );
-          }
+          pendingProjectLine = line;
         }
       }
-      offset++;
+      else
+      //  Long working folder of the checked out file is wrapped at the blank.
+      if( checkedOutFile != null && !isFileLine( line ) && line.indexOf( '\\' ) != -1 )
+      {
+        appendWorkingFolder( checkedOutFile, line );
+        lastCheckedOutFile = checkedOutFile;
+      }
+      else
+      //  Skip lines with no useful information.
+      if( line.indexOf( TOTAL_SIG ) == -1 && line.indexOf( NO_ITEMS_FOUND_SIG ) == -1 )
+      {
+        extractFileAndCheckoutInfo( localPath, line );
+      }
     }
   }
 
+  protected void processFinished()
+  {
+    if( notExisting )
+      myErrors.add( new VcsException( VssBundle.message( "message.text.path.is.not.existing.filename.or.project", startFolder )) );
+  }
+
+  private void setProjectPath( final String line )
+  {
+    localPath = line.substring( 0, line.length() - 1 );
+    localPath = VssUtil.getLocalPath( localPath, project );
+  }
+
   /**
    * Parse output of the "Dir" command in the extended format which also
    * shows the checkout information independent of the current user information.
@@ -128,7 +175,6 @@ public class DirectoryCommandListener extends VssOutputCollector
   private void extractFileAndCheckoutInfo( String lastFolderName, String line )
   {
     String fileName = null;
-    String userName = VssConfiguration.getInstance( project ).USER_NAME.toLowerCase();
 
     //  If the user name is specified (in the configuration), try to find it in
     //  the input line. If present, then the file belongs to the checkout list
@@ -147,11 +193,12 @@ public class DirectoryCommandListener extends VssOutputCollector
         if( fileIsCut )
           fileName = completeFileName( fileName );
 
+        fileName = VssUtil.getCanonicalLocalPath( fileName ).toLowerCase();
         if( StringUtil.isNotEmpty( userName ) && hasLoginName( line, userName ) )
         {
-          fileName = VssUtil.getCanonicalLocalPath( fileName ).toLowerCase();
           filesCheckedOut.add( fileName );
         }
+        addCheckoutRecord( fileName, line.substring( 20 ) );
       }
     }
     else if( line.indexOf( '\\' ) == -1 )
@@ -166,6 +213,47 @@ public class DirectoryCommandListener extends VssOutputCollector
     }
   }
 
+  private static boolean isFileLine( String line )
+  {
+    return line.length() > 20 && line.charAt( 19 ) == ' ' && line.substring( 0, 19 ).indexOf( '\\' ) == -1;
+  }
+
+  /**
+   * Parse the checkout part of the line, e.g.
+   * "Lloix2         2-18-07  1:55p  D:\PROJECTS\VSSDEV2\SRC\Dir5"
+   */
+  private void addCheckoutRecord( String fileName, String checkoutInfo )
+  {
+    String user, date = "", folder = "";
+    Matcher matcher = CHECKOUT_DATE_PATTERN.matcher( checkoutInfo );
+    if( matcher.find() )
+    {
+      user = checkoutInfo.substring( 0, matcher.start() ).trim();
+      date = VssRepositoryIndex.parseCheckoutDate( matcher.group( 1 ) );
+      folder = checkoutInfo.substring( matcher.end() ).trim();
+    }
+    else
+    {
+      user = checkoutInfo.trim();
+      int blank = user.indexOf( ' ' );
+      if( blank != -1 )
+        user = user.substring( 0, blank );
+    }
+
+    checkouts.put( fileName, new VssRepositoryIndex.Checkout( user, date, folder ));
+    lastCheckedOutFile = fileName;
+  }
+
+  private void appendWorkingFolder( String fileName, String continuation )
+  {
+    VssRepositoryIndex.Checkout checkout = checkouts.get( fileName );
+    if( checkout != null )
+    {
+      String folder = checkout.getFolder() + " " + continuation.trim();
+      checkouts.put( fileName, new VssRepositoryIndex.Checkout( checkout.getUser(), checkout.getDate(), folder ));
+    }
+  }
+
   private static boolean hasLoginName( String line, String login )
   {
     return StringUtil.startsWithConcatenation(line.substring(20).toLowerCase(), login, " ");
@@ -0,0 +1,112 @@
+package com.intellij.vssSupport.commands;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Splits the output of a command issued for several files of one folder into
+ * the parts which concern every file. ss.exe mentions the file by its name or
+ * path in the first line of every message, the following lines without a name
+ * continue the message. Lines before the first mentioned file are common.
+ */
+public class FileOutputSplitter
+{
+  private final String[] myNames;
+  private final StringBuilder[] myOutputs;
+  private final StringBuilder myCommonOutput = new StringBuilder();
+  private StringBuilder myCurrent = myCommonOutput;
+
+  /**
+   * @param names the names of the files; they are unique within a folder.
+   */
+  public FileOutputSplitter( List<String> names )
+  {
+    myNames = new String[ names.size() ];
+    myOutputs = new StringBuilder[ names.size() ];
+    for( int i = 0; i < myNames.length; i++ )
+      myNames[ i ] = names.get( i ).toLowerCase();
+  }
+
+  public void addLine( String line )
+  {
+    int index = findFile( line );
+    if( index != -1 )
+    {
+      if( myOutputs[ index ] == null )
+        myOutputs[ index ] = new StringBuilder();
+      myCurrent = myOutputs[ index ];
+    }
+    if( myCurrent.length() > 0 )
+      myCurrent.append( '\n' );
+    myCurrent.append( line );
+  }
+
+  /**
+   * @return the messages concerning the file, or null if the output has
+   *         nothing but (possibly) the name of the file.
+   */
+  @Nullable
+  public String getOutput( int index )
+  {
+    StringBuilder output = myOutputs[ index ];
+    if( output == null )
+      return null;
+
+    //  Some commands echo the name or the path of every file they process.
+    String text = output.toString().trim();
+    String lower = text.toLowerCase();
+    String name = myNames[ index ];
+    if( lower.indexOf( '\n' ) == -1 && lower.endsWith( name ) )
+    {
+      int start = lower.length() - name.length();
+      if( start == 0 || lower.charAt( start - 1 ) == '/' || lower.charAt( start - 1 ) == '\\' )
+        return null;
+    }
+    return text;
+  }
+
+  public String getCommonOutput()
+  {
+    return myCommonOutput.toString().trim();
+  }
+
+  /**
+   * @return the index of the file with the longest name mentioned in the line.
+   */
+  private int findFile( String line )
+  {
+    String lower = line.toLowerCase();
+    int found = -1;
+    for( int i = 0; i < myNames.length; i++ )
+    {
+      if( ( found == -1 || myNames[ i ].length() > myNames[ found ].length() ) && contains( lower, myNames[ i ] ) )
+        found = i;
+    }
+    return found;
+  }
+
+  /**
+   * The name must be a whole word: "a.java" is not found in "aa.java" or in
+   * "a.java.bak", but is found in "$/Project/a.java." or "D:\Project\a.java".
+   */
+  private static boolean contains( String line, String name )
+  {
+    for( int index = line.indexOf( name ); index != -1; index = line.indexOf( name, index + 1 ) )
+    {
+      int end = index + name.length();
+      boolean startOk = index == 0 || ( !isNameChar( line.charAt( index - 1 ) ) && line.charAt( index - 1 ) != '.' );
+      boolean endOk = end == line.length() ||
+                      ( !isNameChar( line.charAt( end ) ) &&
+                        !( line.charAt( end ) == '.' && end + 1 < line.length() && isNameChar( line.charAt( end + 1 ) ) ));
+      if( startOk && endOk )
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean isNameChar( char c )
+  {
+    return Character.isLetterOrDigit( c ) || c == '_' || c == '-' || c == '$';
+  }
+}
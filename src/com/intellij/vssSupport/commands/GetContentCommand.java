@@ -0,0 +1,81 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Fetches the latest repository versions of several files into a private
+ * scratch folder with as few "Get" processes as possible. All the files must
+ * have different names, e.g. belong to the same VSS project.
+ * Call <code>dispose</code> after the contents are taken.
+ */
+public class GetContentCommand extends VssCommandAbstract
+{
+  @NonNls private static final String GET_COMMAND = "Get";
+  @NonNls private static final String _GL_OPTION = "-GL";
+  @NonNls private static final String _GWR_OPTION = "-GWR";
+  @NonNls private static final String SCRATCH_PREFIX = "vss_get";
+
+  private final List<String> myVssPaths;
+  private final String myWorkingPath;
+  private File myScratchFolder;
+
+  public GetContentCommand( @NotNull Project project, List<String> vssPaths, String workingPath,
+                            List<VcsException> errors )
+  {
+    super( project, errors );
+    myVssPaths = vssPaths;
+    myWorkingPath = workingPath;
+  }
+
+  public void execute()
+  {
+    try
+    {
+      myScratchFolder = FileUtil.createTempDirectory( SCRATCH_PREFIX, null );
+    }
+    catch( IOException e )
+    {
+      myErrors.add( new VcsException( e ) );
+      return;
+    }
+
+    List<String> options = formOptions( GET_COMMAND, _GL_OPTION + myScratchFolder.getPath(), _GWR_OPTION, _I__OPTION );
+    runBatched( options, myVssPaths, myWorkingPath );
+  }
+
+  /**
+   * @return the content of the file got by the command, or null if ss.exe
+   *         failed to get it.
+   */
+  @Nullable
+  public byte[] getContent( String vssPath )
+  {
+    if( myScratchFolder == null )
+      return null;
+
+    File file = new File( myScratchFolder, vssPath.substring( vssPath.lastIndexOf( '/' ) + 1 ) );
+    try
+    {
+      return file.isFile() ? FileUtil.loadFileBytes( file ) : null;
+    }
+    catch( IOException e )
+    {
+      return null;
+    }
+  }
+
+  public void dispose()
+  {
+    if( myScratchFolder != null )
+      FileUtil.delete( myScratchFolder );
+  }
+}
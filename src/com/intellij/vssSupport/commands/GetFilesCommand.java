@@ -6,14 +6,15 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.GetOptions;
 import com.intellij.vssSupport.VssBundle;
-import com.intellij.vssSupport.VssOutputCollector;
 import com.intellij.vssSupport.VssUtil;
 import com.intellij.vssSupport.ui.ConfirmMultipleDialog;
-import org.jetbrains.annotations.NonNls;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Vladimir Kondratyev
@@ -22,14 +23,12 @@ import java.util.List;
 public class GetFilesCommand extends VssCommandAbstract
 {
   private final VirtualFile[] myFiles;
-  private GetOptions myBaseOptions;
 
   /**
-   * List of {@code java.io.File} objects. It doesn't contains directories.
+   * Decisions of the user on the writable files: replace them or not. Null
+   * until the questions are asked.
    */
-  private final ArrayList<File> myFilesToBeGot;
-  private boolean myReplaceAllWritable;
-  private boolean myDoNotReplaceAllWritable;
+  private Map<VirtualFile, Boolean> myReplaceWritable;
 
   /**
    * Creates new {@code GetFilesCommand} instance.
@@ -42,122 +41,134 @@ public class GetFilesCommand extends VssCommandAbstract
   {
     super( project, errors );
     myFiles = files;
-    myFilesToBeGot = new ArrayList<>(myFiles.length);
   }
 
   /**
-   * Gets the files specified in the constructor.
+   * Saves the documents and asks the user about every writable file which
+   * would be replaced, so that the files are got without stopping. Must be
+   * called in the dispatch thread before <code>execute</code>, which calls
+   * it itself otherwise.
+   * @return false if the user has cancelled the command.
    */
-  public void execute()
+  public boolean askQuestions()
   {
     FileDocumentManager.getInstance().saveAllDocuments();
-    myBaseOptions = myConfig.getGetOptions();
 
-    collectFiles( 0 );
-  }
+    myReplaceWritable = new HashMap<>();
+    if( myConfig.getGetOptions().REPLACE_WRITABLE != GetOptions.OPTION_ASK )
+      return true;
 
-  /**
-   * Collect all files and projecs from myFiles[idx].
-   * Stores collected files in the myFilesToBeGot list. When all files are collected then
-   * it invokes get(0) function
-   */
-  private void collectFiles(int idx)
-  {
-    if( idx >= myFiles.length ){
-      get(0);
-      return;
-    }
+    // User is free to replace or skip writable files. It means
+    // that command's options can be different for each file.
+    Boolean answerForAll = null;
+    for( VirtualFile file : myFiles )
+    {
+      File ioFile = getIOFile( file );
+      if( !ioFile.exists() || !ioFile.canWrite() )
+        continue;
 
-    VirtualFile file = myFiles[ idx ];
-    myFilesToBeGot.add( new File( file.getPath().replace('/',File.separatorChar ) ));
-    collectFiles( idx + 1 );
+      if( answerForAll != null )
+      {
+        myReplaceWritable.put( file, answerForAll );
+        continue;
+      }
+
+      ConfirmMultipleDialog dialog = new ConfirmMultipleDialog(
+        VssBundle.message("dialog.title.confirm.replace"),
+        VssBundle.message("dialog.label.file.is.writable.confirm.replace", ioFile.getAbsolutePath()),
+        myProject);
+      dialog.show();
+      int exitCode = dialog.getExitCode();
+      if( ConfirmMultipleDialog.CANCEL_OPTION == exitCode )
+        return false;
+
+      boolean replace = ( ConfirmMultipleDialog.YES_EXIT_CODE == exitCode || ConfirmMultipleDialog.YES_ALL_EXIT_CODE == exitCode );
+      if( ConfirmMultipleDialog.YES_ALL_EXIT_CODE == exitCode || ConfirmMultipleDialog.NO_ALL_EXIT_CODE == exitCode )
+        answerForAll = replace;
+      myReplaceWritable.put( file, replace );
+    }
+    return true;
   }
 
   /**
-   * Checkes out the file with the specified index.
-   * If index is out of range then does nothing.
+   * Gets the files specified in the constructor, with one "Get" process per
+   * folder and the way to treat writable files.
    */
-  private void get( int idx )
+  public void execute()
   {
-    if( idx >= myFilesToBeGot.size() )
-    {
-      for( VirtualFile file : myFiles )
-        file.refresh( true, true );
-      
+    if( myReplaceWritable == null && !askOnDispatchThread( this::askQuestions ) )
       return;
-    }
 
-    File file = getFileToBeGot( idx );
+    GetOptions baseOptions = myConfig.getGetOptions();
+    GetOptions replaceOptions = baseOptions.getCopy();
+    replaceOptions.REPLACE_WRITABLE = GetOptions.OPTION_REPLACE;
+    GetOptions skipOptions = baseOptions.getCopy();
+    skipOptions.REPLACE_WRITABLE = GetOptions.OPTION_SKIP;
 
-    // Test whether file is writable.
-    // User is free to replace or skip writable files. It means
-    // that command's options can be different for each file.
-
-    GetOptions options = myBaseOptions;
-    if( file.exists() && file.canWrite() && GetOptions.OPTION_ASK == options.REPLACE_WRITABLE )
+    List<VirtualFile> plain = new ArrayList<>();
+    List<VirtualFile> replaced = new ArrayList<>();
+    List<VirtualFile> skipped = new ArrayList<>();
+    for( VirtualFile file : myFiles )
     {
-      options = myBaseOptions.getCopy();
-      if( myReplaceAllWritable ){
-        options.REPLACE_WRITABLE = GetOptions.OPTION_REPLACE;
-      }else if( myDoNotReplaceAllWritable ){
-        options.REPLACE_WRITABLE = GetOptions.OPTION_SKIP;
-      }else{
-        ConfirmMultipleDialog dialog = new ConfirmMultipleDialog(
-          VssBundle.message("dialog.title.confirm.replace"),
-          VssBundle.message("dialog.label.file.is.writable.confirm.replace", file.getAbsolutePath()),
-          myProject);
-        dialog.show();
-        int exitCode = dialog.getExitCode();
-        if(ConfirmMultipleDialog.YES_EXIT_CODE == exitCode){
-          options.REPLACE_WRITABLE = GetOptions.OPTION_REPLACE;
-        }else if(ConfirmMultipleDialog.YES_ALL_EXIT_CODE == exitCode){
-          myReplaceAllWritable = true;
-          options.REPLACE_WRITABLE = GetOptions.OPTION_REPLACE;
-        }else if(ConfirmMultipleDialog.NO_EXIT_CODE==exitCode){
-          options.REPLACE_WRITABLE = GetOptions.OPTION_SKIP;
-        }else if(ConfirmMultipleDialog.NO_ALL_EXIT_CODE==exitCode){
-          myDoNotReplaceAllWritable = true;
-          options.REPLACE_WRITABLE = GetOptions.OPTION_SKIP;
-        }else if(ConfirmMultipleDialog.CANCEL_OPTION==exitCode){
-          return;
-        }
-      }
+      Boolean replace = myReplaceWritable.get( file );
+      if( replace == null )
+        plain.add( file );
+      else
+        ( replace ? replaced : skipped ).add( file );
     }
 
-    GetListener checkoutListener = new GetListener( idx, myErrors );
-    runProcess( options.getOptions( file ), file.getParentFile().getAbsolutePath(), checkoutListener );
-  }
+    get( plain, baseOptions );
+    get( replaced, replaceOptions );
+    get( skipped, skipOptions );
 
-  private File getFileToBeGot(int idx){
-    return myFilesToBeGot.get(idx);
+    for( VirtualFile file : myFiles )
+      file.refresh( true, true );
   }
 
-  private class GetListener extends VssOutputCollector
+  private void get( List<VirtualFile> files, GetOptions options )
   {
-    private final int myIdx;
-    @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
-    @NonNls private static final String DELETED_MESSAGE = "has been deleted";
+    Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
+    for( VirtualFile file : files )
+      groups.computeIfAbsent( file.getParent(), parent -> new ArrayList<>() ).add( file );
 
-    public GetListener(int idx, List<VcsException> errors)
-    {
-      super(errors);
-      myIdx = idx;
-    }
+    for( List<VirtualFile> group : groups.values() )
+      getGroup( group, options );
+  }
 
-    public void everythingFinishedImpl( final String output )
+  private void getGroup( List<VirtualFile> files, GetOptions options )
+  {
+    List<VirtualFile> gotFiles = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> vssPaths = new ArrayList<>();
+    for( VirtualFile file : files )
     {
-      int exitCode = getExitCode();
-
-      if( output.indexOf(NOT_EXISTING_MESSAGE) != -1  || output.indexOf(DELETED_MESSAGE) != -1 ||
-          exitCode != VssUtil.EXIT_CODE_SUCCESS )
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( vssPath != null )
       {
-        myErrors.add( new VcsException( output ));
+        gotFiles.add( file );
+        names.add( file.getName() );
+        vssPaths.add( vssPath );
       }
       else
-        VssUtil.showStatusMessage( myProject, VssBundle.message("message.text.file.successfully.received", getFileToBeGot( myIdx )));
+        myErrors.add( new VcsException( VssBundle.message("message.text.path.is.not.existing.filename.or.project", file.getPath() ) ));
+    }
+    if( gotFiles.isEmpty() )
+      return;
+
+    String workingPath = getIOFile( gotFiles.get( 0 ) ).getParent();
+    MultiFileListener listener = new MultiFileListener( myErrors, names );
+    runBatched( options.getOptions(), vssPaths, workingPath, listener );
 
-      // Get the next file.
-      get( myIdx + 1 );
+    listener.reportCommonError();
+    for( int i = 0; i < gotFiles.size(); i++ )
+    {
+      if( !listener.reportFileError( i, gotFiles.get( i )) && listener.getFileExitCode( i ) == VssUtil.EXIT_CODE_SUCCESS )
+        VssUtil.showStatusMessage( myProject, VssBundle.message("message.text.file.successfully.received", getIOFile( gotFiles.get( i ))));
     }
   }
+
+  private static File getIOFile( VirtualFile file )
+  {
+    return new File( file.getPath().replace( '/', File.separatorChar ));
+  }
 }
@@ -1,12 +1,12 @@
 package com.intellij.vssSupport.commands;
 
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.text.LineTokenizer;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vcsUtil.VcsUtil;
 import com.intellij.vssSupport.VssBundle;
-import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssLineOutputCollector;
 import com.intellij.vssSupport.VssUtil;
 import com.intellij.vssSupport.VssVcs;
 import org.jetbrains.annotations.NonNls;
@@ -21,7 +21,7 @@ import java.util.List;
  * User: lloix
  * Date: Apr 19, 2007
 */
-public class GetProjectListener extends VssOutputCollector
+public class GetProjectListener extends VssLineOutputCollector
 {
   @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
   @NonNls private static final String NO_ITEMS_FOUND = "No items found under";
@@ -41,6 +41,11 @@ public class GetProjectListener extends VssOutputCollector
   public ArrayList<String> filesAdded;
   public ArrayList<String> filesSkipped;
 
+  private String localPath = "";
+  private String pendingProjectLine;
+  private boolean notExisting;
+  private boolean noItemsFound;
+
   public GetProjectListener(Project project, VirtualFile pathToProcess, List<VcsException> errors)
   {
     super( errors );
@@ -52,13 +57,56 @@ public class GetProjectListener extends VssOutputCollector
     filesSkipped = new ArrayList<>();
   }
 
-  public void everythingFinishedImpl( final String output )
+  protected void processLine( final String line )
   {
-    if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
-      myErrors.add( new VcsException(VssBundle.message( "message.text.path.is.not.existing.filename.or.project", path )));
+    if( line.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
+      notExisting = true;
+    if( line.indexOf( NO_ITEMS_FOUND ) != -1 )
+      noItemsFound = true;
+
+    //  The first line of the wrapped project path can be distinguished only
+    //  by the next one, so keep it until the next line comes.
+    if( pendingProjectLine != null )
+    {
+      String firstPart = pendingProjectLine;
+      pendingProjectLine = null;
+      if( !StringUtil.startsWithChar( line, '$' ) && StringUtil.endsWithChar( line, ':' ) )
+      {
+        setProjectPath( firstPart + line );
+        return;
+      }
+      processFileLine( firstPart );
+    }
+
+    if( StringUtil.startsWithChar( line, '$' ) )
+    {
+      if( StringUtil.endsWithChar( line, ':' ) )
+        setProjectPath( line );
+      else
+        pendingProjectLine = line;
+    }
     else
-    if( output.indexOf( NO_ITEMS_FOUND ) == -1 ) //  just skip the rest.
-      parseOutput( output );
+      processFileLine( line );
+  }
+
+  protected void processFinished()
+  {
+    if( pendingProjectLine != null )
+    {
+      processFileLine( pendingProjectLine );
+      pendingProjectLine = null;
+    }
+
+    //  Nothing was done if the path is wrong or there is nothing to get,
+    //  just skip the rest.
+    if( notExisting || noItemsFound )
+    {
+      filesChanged.clear();
+      filesAdded.clear();
+      filesSkipped.clear();
+    }
+    if( notExisting )
+      myErrors.add( new VcsException(VssBundle.message( "message.text.path.is.not.existing.filename.or.project", path )));
   }
 
   /**
@@ -74,33 +122,17 @@ public class GetProjectListener extends VssOutputCollector
       Getting $/vsstest/src/DIR2/ClassUnderDir5Again.java
       Getting $/vsstest/src/DIR2/ClassInNonFolderIn.java
    */
-  private void parseOutput( String errorOutput )
+  private void processFileLine( final String line )
   {
-    String[] lines = LineTokenizer.tokenize( errorOutput, false );
-
-    int offset = 0;
-    String localPath = "";
-    while( offset < lines.length )
-    {
-      LineType lineType = whatSubProjectLine( lines, offset );
-      if( lineType != LineType.NO_PROJECT )
-      {
-        localPath = constructLocalFromSubproject( lines, offset );
-        localPath = VssUtil.getLocalPath( localPath, project );
+    //  Files which are 2005-formatted are simply skipped.
+    if( !isStringVss2005Formatted( line ) && line.trim().length() > 0 )
+      analyzeLine( line, localPath );
+  }
 
-        offset += (lineType == LineType.SIMPLE_FORMAT) ? 1 : 2;
-      }
-      else
-      {
-        //  Files which are 2005-formatted are simply skipped.
-        if( !isStringVss2005Formatted( lines[ offset ] ) )
-        {
-          if( lines[ offset ].trim().length() > 0 )
-              analyzeLine( lines[ offset ], localPath );
-        }
-        offset++;
-      }
-    }
+  private void setProjectPath( final String line )
+  {
+    localPath = line.substring( 0, line.length() - 1 );
+    localPath = VssUtil.getLocalPath( localPath, project );
   }
 
   private void analyzeLine( String line, String localProjectPath )
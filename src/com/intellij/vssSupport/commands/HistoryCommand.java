@@ -4,7 +4,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vcsUtil.VcsUtil;
-import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssLineOutputCollector;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 
@@ -14,9 +14,13 @@ import java.util.List;
 public class HistoryCommand extends VssCommandAbstract
 {
   @NonNls private static final String HISTORY_COMMAND = "History";
+  @NonNls private static final String _COUNT_OPTION = "-#";
+  @NonNls private static final String _R_OPTION = "-R";
 
   public ArrayList<HistoryParser.SubmissionData> changes;
   private final String path;
+  private int maxEntries;
+  private boolean recursive;
 
   public HistoryCommand( Project project, String path, List<VcsException> errors )
   {
@@ -24,6 +28,22 @@ public class HistoryCommand extends VssCommandAbstract
     this.path = path;
   }
 
+  /**
+   * Ask only for the given number of the latest history records.
+   */
+  public void setMaxEntries( int count )
+  {
+    maxEntries = count;
+  }
+
+  /**
+   * Ask for the history of the whole folder subtree.
+   */
+  public void setRecursive( boolean recursive )
+  {
+    this.recursive = recursive;
+  }
+
   public void execute()
   {
     //  Protect ourselves from calling History on the deleted files (since
@@ -32,23 +52,34 @@ public class HistoryCommand extends VssCommandAbstract
     VirtualFile vFile = VcsUtil.getVirtualFile( pathNorm );
     if( vFile != null )
     {
-      String vssPath = VssUtil.getVssPath( pathNorm, false, myProject );
+      String vssPath = VssUtil.getVssPath( pathNorm, recursive, myProject );
 
       List<String> options = formOptions( HISTORY_COMMAND, vssPath, _I_Y_OPTION );
+      if( recursive )
+        options.add( _R_OPTION );
+      if( maxEntries > 0 )
+        options.add( _COUNT_OPTION + maxEntries );
       runProcess( options, null, new VssHistoryListener( myErrors ) );
     }
   }
 
-  public class VssHistoryListener extends VssOutputCollector
+  public class VssHistoryListener extends VssLineOutputCollector
   {
+    private final HistoryParser parser = new HistoryParser();
+
     public VssHistoryListener( List<VcsException> errors ) {  super( errors );  }
 
-    public void everythingFinishedImpl( final String output )
+    protected void processLine( final String line )
+    {
+      parser.parseLine( line );
+    }
+
+    protected void processFinished()
     {
       if( VssUtil.EXIT_CODE_SUCCESS == getExitCode() )
-        changes = HistoryParser.parse( output );
+        changes = parser.finish();
       else
-        myErrors.add( new VcsException( output ) );
+        myErrors.add( new VcsException( getOutputHead() ) );
     }
   }
 }
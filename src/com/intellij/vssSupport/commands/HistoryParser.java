@@ -1,10 +1,12 @@
 package com.intellij.vssSupport.commands;
 
 import com.intellij.openapi.util.text.LineTokenizer;
+import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class HistoryParser
 {
@@ -29,7 +31,9 @@ public class HistoryParser
   @NonNls private static final String LABEL_COMMENT_SIG = "Label comment: ";
   @NonNls private static final String LABEL_SIG = "Label: ";
 
-  private HistoryParser() {}
+  private final ArrayList<SubmissionData> changes = new ArrayList<>();
+  private final ArrayList<String> sectionLines = new ArrayList<>();
+  private int order = 0;
 
   public static class SubmissionData
   {
@@ -40,15 +44,115 @@ public class HistoryParser
     public String comment;
     public String label;
     public int    order;
+
+    //  Available in the output of the recursive "History" only: the name of
+    //  the item, its project for "Checked in" records and the name of the
+    //  child item for the project records like "file4.java added".
+    public String item;
+    public String folder;
+    public String target;
+
+    /**
+     * @return the string identifying the history record, so that the same
+     *         record got by different "History" runs can be recognized.
+     */
+    public String getId()
+    {
+      return version + "|" + action + "|" + submitter + "|" + changeDate + "|" + label + "|" +
+             item + "|" + folder + "|" + target;
+    }
   }
 
   public static ArrayList<SubmissionData> parse( final String content )
   {
-    ArrayList<SubmissionData> changes = new ArrayList<>();
-    String[] lines = LineTokenizer.tokenize( content, false );
-    int      order = 0;
+    HistoryParser parser = new HistoryParser();
+    for( String line : LineTokenizer.tokenize( content, false ) )
+      parser.parseLine( line );
+
+    return parser.finish();
+  }
+
+  /**
+   * Append the records got by "History -#N" to the history known before.
+   * @param cached   the whole history known before, newest records first.
+   * @param latest   the latest records of the item, newest first.
+   * @param complete true if <code>latest</code> is the whole history of the item.
+   * @return the merged history, or null if the latest records do not reach the
+   *         newest known one and more records must be asked for.
+   */
+  @Nullable
+  public static ArrayList<SubmissionData> merge( final List<SubmissionData> cached, final List<SubmissionData> latest,
+                                                 boolean complete )
+  {
+    //  The item may have been deleted and added again or its versions were
+    //  purged - the new history replaces the old one completely.
+    if( complete || cached.isEmpty() )
+      return complete ? new ArrayList<>( latest ) : null;
+
+    String newestId = cached.get( 0 ).getId();
+    int overlap = -1;
+    for( int i = 0; i < latest.size() && overlap == -1; i++ )
+    {
+      if( latest.get( i ).getId().equals( newestId ) )
+        overlap = i;
+    }
+    if( overlap == -1 )
+      return null;
+
+    //  Keep the order of the known records, so that the records already shown
+    //  remain valid; the new ones continue the sequence downwards.
+    ArrayList<SubmissionData> merged = new ArrayList<>( overlap + cached.size() );
+    int firstOrder = cached.get( 0 ).order - overlap;
+    for( int i = 0; i < overlap; i++ )
+    {
+      SubmissionData change = latest.get( i );
+      change.order = firstOrder + i;
+      merged.add( change );
+    }
+    merged.addAll( cached );
+    return merged;
+  }
+
+  /**
+   * Incremental parsing: lines are accumulated until the next section header,
+   * then the completed section is parsed. Every section header contains the
+   * FILE_SECTION_SIG signature.
+   */
+  public void parseLine( final String line )
+  {
+    if( line.indexOf( FILE_SECTION_SIG ) != -1 )
+    {
+      parseSection( line );
+      sectionLines.clear();
+    }
+    sectionLines.add( line );
+  }
+
+  public ArrayList<SubmissionData> finish()
+  {
+    parseSection( null );
+    sectionLines.clear();
+
+    //  Changes for "Labeled" operation are given without version id (since
+    //  they do not the version given on the previous checkin operation).
+    //  Assign version ids for these operations in the backward order.
+    updateEarlierChanges( changes );
+    return changes;
+  }
+
+  /**
+   * Parse the accumulated section. The header of the next section (if any) is
+   * appended to the lines so that bounds checks see the continuation of the
+   * output exactly as if all the lines were parsed at once.
+   */
+  private void parseSection( @Nullable final String nextHeader )
+  {
+    int sectionLength = sectionLines.size();
+    if( nextHeader != null )
+      sectionLines.add( nextHeader );
+    String[] lines = ArrayUtil.toStringArray( sectionLines );
 
-    for( int i = 0; i < lines.length; i++ )
+    for( int i = 0; i < sectionLength; i++ )
     {
       //  For folder-wide operations support only labelling
       
@@ -116,22 +220,49 @@ public class HistoryParser
         {
           SubmissionData change = new SubmissionData(); 
           change.order = order++;
+          change.item = parseItemName( lines[ i ] );
           change.submitter = parseActor( lines[ i + 2 ] );
           change.version = lines[ i + 1 ].substring( VERSION_SIG.length() );
           change.changeDate = parseDateTime( lines[ i + 2 ] );
           change.action = parseAction( lines[ i + 3 ] );
+          change.folder = parseFolder( lines[ i + 3 ] );
+          change.target = parseTarget( lines[ i + 3 ] );
           change.comment = parseComment( lines, i + 4 );
 
           changes.add( change );
         }
       }
     }
+  }
 
-    //  Changes for "Labeled" operation are given without version id (since
-    //  they do not the version given on the previous checkin operation).
-    //  Assign version ids for these operations in the backward order.
-    updateEarlierChanges( changes );
-    return changes;
+  private static String parseItemName( String line )
+  {
+    line = line.trim();
+    if( line.startsWith( FILE_SECTION_SIG ) && line.endsWith( FILE_SECTION_SIG ) &&
+        line.length() > 2 * FILE_SECTION_SIG.length() )
+      line = line.substring( FILE_SECTION_SIG.length(), line.length() - FILE_SECTION_SIG.length() ).trim();
+    return line;
+  }
+
+  @Nullable
+  private static String parseFolder( String line )
+  {
+    return line.startsWith( CHECKED_IN_SIG ) ? line.substring( CHECKED_IN_SIG.length() ).trim() : null;
+  }
+
+  /**
+   * @return the name of the child item for the records like "file4.java added"
+   *         given for a project.
+   */
+  @Nullable
+  private static String parseTarget( String line )
+  {
+    for( String sig : new String[] { FILE_ADDED_SIG, FILE_DELETED_SIG, FILE_PURGED_SIG, FILE_RECOVERED_SIG, FILE_DESTROYED_SIG } )
+    {
+      if( line.endsWith( sig ) && line.length() > sig.length() )
+        return line.substring( 0, line.length() - sig.length() ).trim();
+    }
+    return null;
   }
 
   private static String parseActor( String line )
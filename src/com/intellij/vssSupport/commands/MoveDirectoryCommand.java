@@ -30,5 +30,7 @@ public class MoveDirectoryCommand extends VssCommandAbstract
     List<String> options = formOptions( MOVE_COMMAND, VssUtil.getVssPath( myOldPath, myProject ),
                                         VssUtil.getVssPath( myNewPath.getParentFile(), myProject ), _I__OPTION );
     runProcess( options, null );
+    invalidateIndex( myOldPath.getPath() );
+    invalidateIndex( myNewPath.getPath() );
   }
 }
@@ -0,0 +1,140 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsUtil;
+import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves (and possibly renames) several files of one folder into another
+ * folder without copying them locally. The checkout of the old items is
+ * undone keeping the local files, the items are shared into the new project
+ * and deleted from the old one, renamed there, checked out without getting
+ * and checked in from the new location. Every step is one ss.exe run for all
+ * the files except renames, which ss.exe does one by one, in one shell
+ * session if this is enabled.
+ */
+public class MoveFilesCommand extends VssCommandAbstract
+{
+  @NonNls private static final String UNDOCHECKOUT_COMMAND = "Undocheckout";
+  @NonNls private static final String SHARE_COMMAND = "Share";
+  @NonNls private static final String DELETE_COMMAND = "Delete";
+  @NonNls private static final String RENAME_COMMAND = "Rename";
+  @NonNls private static final String CHECKOUT_COMMAND = "Checkout";
+  @NonNls private static final String _G__OPTION = "-G-";
+  @NonNls private static final String _C__OPTION = "-C-";
+
+  private final List<File> myOldFiles;
+  private final List<File> myNewFiles;
+
+  /**
+   * @param oldFiles the former locations, all in one folder.
+   * @param newFiles the new locations in the same order, all in one folder.
+   */
+  public MoveFilesCommand( @NotNull Project project, List<File> oldFiles, List<File> newFiles,
+                           List<VcsException> errors )
+  {
+    super( project, errors );
+    myOldFiles = oldFiles;
+    myNewFiles = newFiles;
+  }
+
+  public void execute()
+  {
+    final List<File> oldFiles = new ArrayList<>();
+    final List<File> newFiles = new ArrayList<>();
+    final List<String> oldNames = new ArrayList<>();
+    final List<String> oldPaths = new ArrayList<>();
+    for( int i = 0; i < myOldFiles.size(); i++ )
+    {
+      String vssPath = VssUtil.getVssPath( myOldFiles.get( i ), myProject );
+      if( vssPath == null )
+      {
+        myErrors.add( new VcsException( VssBundle.message( "message.text.path.is.not.existing.filename.or.project",
+                                                           myOldFiles.get( i ).getPath() )));
+        continue;
+      }
+      oldFiles.add( myOldFiles.get( i ) );
+      newFiles.add( myNewFiles.get( i ) );
+      oldNames.add( myOldFiles.get( i ).getName() );
+      oldPaths.add( vssPath );
+    }
+    if( oldFiles.isEmpty() )
+      return;
+
+    final String workingPath = newFiles.get( 0 ).getParent();
+
+    //  The old items may be not checked out at all, errors of this step
+    //  do not matter.
+    runBatched( formOptions( UNDOCHECKOUT_COMMAND, _G__OPTION, _I_Y_OPTION ), oldPaths, workingPath,
+                new MultiFileListener( new ArrayList<>(), oldNames ) );
+
+    //  Only the items which are shared successfully are deleted and renamed.
+    //  The old items are deleted before the renames: a shared item is renamed
+    //  in every project sharing it.
+    final MultiFileListener shareListener = new MultiFileListener( myErrors, oldNames );
+    final List<File> sharedOld = new ArrayList<>();
+    final List<File> sharedNew = new ArrayList<>();
+    VSSExecUtil.runInCurrentProject( myConfig.getSSDIR(), () -> {
+      if( !runCP( workingPath, workingPath ) )
+        return;
+      runBatched( formOptions( SHARE_COMMAND, _G__OPTION, _I_Y_OPTION ), oldPaths, workingPath, shareListener );
+
+      List<String> sharedPaths = new ArrayList<>();
+      List<List<String>> renames = new ArrayList<>();
+      for( int i = 0; i < oldFiles.size(); i++ )
+      {
+        if( shareListener.getFileExitCode( i ) == VssUtil.EXIT_CODE_FAILURE )
+          continue;
+        sharedOld.add( oldFiles.get( i ) );
+        sharedNew.add( newFiles.get( i ) );
+        sharedPaths.add( oldPaths.get( i ) );
+
+        String newName = newFiles.get( i ).getName();
+        if( !oldNames.get( i ).equals( newName ) )
+          renames.add( formOptions( RENAME_COMMAND, oldNames.get( i ), newName, _I__OPTION ));
+      }
+      if( sharedPaths.isEmpty() )
+        return;
+
+      runBatched( formOptions( DELETE_COMMAND, _I_Y_OPTION ), sharedPaths, workingPath );
+      runSequence( renames, workingPath );
+    });
+    shareListener.reportCommonError();
+    for( int i = 0; i < oldFiles.size(); i++ )
+      shareListener.reportFileError( i, null );
+
+    if( sharedOld.isEmpty() )
+      return;
+
+    List<String> newPaths = new ArrayList<>();
+    List<VirtualFile> newVFiles = new ArrayList<>();
+    for( File file : sharedNew )
+    {
+      newPaths.add( VssUtil.getVssPath( file, myProject ));
+      VirtualFile vFile = VcsUtil.getVirtualFile( file );
+      if( vFile != null )
+        newVFiles.add( vFile );
+    }
+    runBatched( formOptions( CHECKOUT_COMMAND, _G__OPTION, _C__OPTION, _I_Y_OPTION ), newPaths, workingPath );
+
+    //  Warnings about the other folder of the checkout are not interesting
+    //  here, the user has just moved the files.
+    if( !newVFiles.isEmpty() )
+      new CheckinFilesCommand( myProject, newVFiles, myErrors, true ).execute();
+
+    for( int i = 0; i < sharedOld.size(); i++ )
+    {
+      invalidateIndex( sharedOld.get( i ).getPath() );
+      invalidateIndex( sharedNew.get( i ).getPath() );
+    }
+  }
+}
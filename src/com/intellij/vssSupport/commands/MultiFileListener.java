@@ -0,0 +1,102 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vssSupport.VssLineOutputCollector;
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Listener for a command issued for several files of one folder, possibly in
+ * several ss.exe runs. The output is split between the files, the worst exit
+ * code of all runs is kept; a run which was stopped counts as failed.
+ */
+class MultiFileListener extends VssLineOutputCollector
+{
+  private final FileOutputSplitter mySplitter;
+  private int myWorstExitCode = VssUtil.EXIT_CODE_SUCCESS;
+
+  MultiFileListener( List<VcsException> errors, List<String> names )
+  {
+    super( errors );
+    mySplitter = new FileOutputSplitter( names );
+  }
+
+  protected void processLine( final String line )
+  {
+    mySplitter.addLine( line );
+  }
+
+  protected void processFinished()
+  {
+    if( getExitCode() == VssUtil.EXIT_CODE_FAILURE || myWorstExitCode == VssUtil.EXIT_CODE_SUCCESS )
+      myWorstExitCode = getExitCode();
+  }
+
+  boolean isSucceeded()
+  {
+    return myWorstExitCode == VssUtil.EXIT_CODE_SUCCESS && !hasCriticalFailure();
+  }
+
+  @Nullable
+  String getOutput( int index )
+  {
+    return mySplitter.getOutput( index );
+  }
+
+  String getCommonOutput()
+  {
+    return mySplitter.getCommonOutput();
+  }
+
+  /**
+   * @return the exit code concerning the file: a file without any messages
+   *         is taken as processed unless the command failed as a whole.
+   */
+  int getFileExitCode( int index )
+  {
+    if( hasCriticalFailure() )
+      return VssUtil.EXIT_CODE_FAILURE;
+    if( getOutput( index ) != null )
+      return myWorstExitCode;
+    if( myWorstExitCode == VssUtil.EXIT_CODE_FAILURE && getCommonOutput().length() > 0 )
+      return VssUtil.EXIT_CODE_FAILURE;
+    return VssUtil.EXIT_CODE_SUCCESS;
+  }
+
+  /**
+   * Report the messages of the file as its error; a failed command without
+   * any message for the file is taken as succeeded for it.
+   * @return true if an error was reported.
+   */
+  boolean reportFileError( int index, @Nullable VirtualFile file )
+  {
+    String output = getOutput( index );
+    if( output == null || isSucceeded() )
+      return false;
+
+    VcsException e = new VcsException( output );
+    e.setIsWarning( myWorstExitCode == VssUtil.EXIT_CODE_WARNING );
+    if( file != null )
+      e.setVirtualFile( file );
+    myErrors.add( e );
+    return true;
+  }
+
+  /**
+   * Report the output which does not concern any particular file if the
+   * command failed.
+   */
+  void reportCommonError()
+  {
+    String output = getCommonOutput();
+    if( !isSucceeded() && output.length() > 0 )
+    {
+      VcsException e = new VcsException( output );
+      e.setIsWarning( myWorstExitCode == VssUtil.EXIT_CODE_WARNING );
+      myErrors.add( e );
+    }
+  }
+}
@@ -15,6 +15,9 @@ public class PropertiesCommand extends VssCommandAbstract
   @NonNls private static final String PROPS_COMMAND = "Properties";
   @NonNls private static final String NO_RECURSIVE_SWITCH = "-R-";
 
+  //  New files of one folder ask about the same parent folder at once.
+  private static final VssSingleFlight<Result> ourFlights = new VssSingleFlight<>();
+
   private final String vssPath;
   private final String tmpPath;
   private boolean isValidRepositoryObject;
@@ -34,13 +37,36 @@ public class PropertiesCommand extends VssCommandAbstract
     //  input path lies outside the Vss project store.
     if( vssPath != null )
     {
-      List<String> options = formOptions( PROPS_COMMAND, NO_RECURSIVE_SWITCH, vssPath );
-      runProcess( options, tmpPath, new VssPropsListener( myErrors ) );
+      final List<String> options = formOptions( PROPS_COMMAND, NO_RECURSIVE_SWITCH, vssPath );
+      //  Every caller joining the run gets its errors too.
+      final boolean[] isOwnRun = new boolean[ 1 ];
+      Result result = ourFlights.run( VssSingleFlight.key( myConfig.getSSDIR(), options ), () -> {
+        isOwnRun[ 0 ] = true;
+        int errorsCount = myErrors.size();
+        VssPropsListener listener = new VssPropsListener( myErrors );
+        runProcess( options, tmpPath, listener );
+        return new Result( listener.isValid, new ArrayList<>( myErrors.subList( errorsCount, myErrors.size() )));
+      });
+      isValidRepositoryObject = result.isValid;
+      if( !isOwnRun[ 0 ] )
+        myErrors.addAll( result.errors );
     }
   }
 
   public boolean isValidRepositoryObject() {  return isValidRepositoryObject;  }
 
+  private static final class Result
+  {
+    private final boolean isValid;
+    private final List<VcsException> errors;
+
+    private Result( boolean isValid, List<VcsException> errors )
+    {
+      this.isValid = isValid;
+      this.errors = errors;
+    }
+  }
+
   /**
    * Use this listener to catch messages from "Properties" VSS command.
    */
@@ -49,13 +75,15 @@ public class PropertiesCommand extends VssCommandAbstract
     @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
     @NonNls private static final String VSS_PROJECT_DELETED = "has been deleted";
 
+    private boolean isValid = true;
+
     public VssPropsListener( List<VcsException> errors ) {  super( errors );  }
 
     public void everythingFinishedImpl( final String output )
     {
       if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 ||
           output.indexOf( VSS_PROJECT_DELETED ) != -1 )
-        isValidRepositoryObject = false;
+        isValid = false;
     }
   }
 }
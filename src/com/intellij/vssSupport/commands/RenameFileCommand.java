@@ -28,9 +28,9 @@ public class RenameFileCommand extends VssCommandAbstract
   {
     String workingPath = file.getParent().getPath();
 
-    runCP( file.getParent(), workingPath );
-    
     List<String> options = formOptions( RENAME_COMMAND, myOldName, file.getName(), _I__OPTION );
-    runProcess( options, workingPath );
+    runInCurrentProject( file.getParent(), options, workingPath );
+    invalidateIndex( workingPath + "/" + myOldName );
+    invalidateIndex( file.getPath() );
   }
 }
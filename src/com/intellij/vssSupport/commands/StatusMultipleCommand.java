@@ -4,14 +4,16 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.LineTokenizer;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.VcsException;
+import com.intellij.vssSupport.VssLineOutputCollector;
 import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 
 public class StatusMultipleCommand extends VssCommandAbstract
@@ -22,8 +24,6 @@ public class StatusMultipleCommand extends VssCommandAbstract
   @NonNls private static final String DELETED_MESSAGE = "has been deleted";
   @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
 
-  private static final int  CMDLINE_MAX_LENGTH = 500;
-
   private final List<String> files;
 
   private HashSet<String> deletedFiles;
@@ -38,36 +38,68 @@ public class StatusMultipleCommand extends VssCommandAbstract
 
   public void execute()
   {
-    VssOutputCollector listener = (files.size() == 1) ? new SingleStatusListener( myErrors ) :
-                                                        new MultipleStatusListener( myErrors );
     deletedFiles = new HashSet<>();
     nonexistingFiles = new HashSet<>();
     checkoutFiles = new HashSet<>();
 
-    int currIndex = 0;
-    int cmdLineLen;
-    LinkedList<String> options = new LinkedList<>();
-    while( currIndex < files.size() )
+    List<String> queried = new ArrayList<>( files.size() );
+    List<String> vssPaths = new ArrayList<>( files.size() );
+    for( String file : files )
     {
-      cmdLineLen = STATUS_COMMAND.length() + CURRENT_USER_OPTION.length();
-
-      options.clear();
-      options.add( STATUS_COMMAND );
-      if( myConfig.USER_NAME.length() > 0 )
-      {
-        options.add( myConfig.getYOption() );
-        cmdLineLen += myConfig.getYOption().length();
-      }
-      options.add( CURRENT_USER_OPTION );
-      
-      while( currIndex < files.size() && cmdLineLen < CMDLINE_MAX_LENGTH )
+      String vssPath = VssUtil.getVssPath( file, false, myProject );
+      //  A path out of the configured VSS roots can not be in the repository,
+      //  it is reported as ss.exe would do it. An error here would leave
+      //  the state of all the other files unknown.
+      if( vssPath == null )
       {
-        String vssPath = VssUtil.getVssPath( files.get( currIndex++ ), false, myProject );
-        options.add( vssPath );
-        cmdLineLen += vssPath.length() + 1;
+        VSSExecUtil.LOG.info( "Path is not under VSS root: " + file );
+        nonexistingFiles.add( file.toLowerCase() );
+        continue;
       }
-      
-      runProcess( options, null, listener );
+      queried.add( file );
+      vssPaths.add( vssPath );
+    }
+    if( vssPaths.isEmpty() )
+      return;
+
+    int errors = myErrors.size();
+    boolean failed;
+    if( queried.size() == 1 )
+    {
+      int explained = nonexistingFiles.size();
+      VssOutputCollector listener = new SingleStatusListener( myErrors, queried.get( 0 ) );
+      runBatched( formOptions( STATUS_COMMAND, CURRENT_USER_OPTION ), vssPaths, null, listener );
+
+      //  A failure not explained by missing or deleted files leaves the state
+      //  of the other files unknown.
+      failed = listener.getExitCode() == VssUtil.EXIT_CODE_FAILURE &&
+               nonexistingFiles.size() == explained && deletedFiles.isEmpty();
+    }
+    else
+    {
+      MultipleStatusListener listener = new MultipleStatusListener( myErrors );
+      runBatched( formOptions( STATUS_COMMAND, CURRENT_USER_OPTION ), vssPaths, null, listener );
+      failed = listener.isFailed();
+    }
+    if( myErrors.size() == errors && !failed )
+      updateIndex();
+  }
+
+  /**
+   * The fresh state of the files is kept in the repository index, so that
+   * the next refreshes need not ask for it again.
+   */
+  private void updateIndex()
+  {
+    VssRepositoryIndex index = VssRepositoryIndex.getInstance( myProject );
+    for( String file : files )
+    {
+      if( isCheckedout( file ) )
+        index.statusKnown( file, VssRepositoryIndex.ItemState.CHECKED_OUT );
+      else if( isNonexist( file ) )
+        index.statusKnown( file, VssRepositoryIndex.ItemState.NOT_IN_PROJECT );
+      else if( !isDeleted( file ) )
+        index.statusKnown( file, VssRepositoryIndex.ItemState.CHECKED_IN );
     }
   }
 
@@ -83,108 +115,142 @@ public class StatusMultipleCommand extends VssCommandAbstract
     return checkoutFiles.contains( file.toLowerCase() );
   }
 
-  private class MultipleStatusListener extends VssOutputCollector
+  private class MultipleStatusListener extends VssLineOutputCollector
   {
+    private String lastVssFolder;
+    private String pendingFolderLine;
+
+    //  Missing and deleted files found before the current batch, and whether
+    //  any batch failed for another reason.
+    private int myExplained;
+    private boolean myFailed;
+
     public MultipleStatusListener( List<VcsException> errors )
     {
       super( errors );
+      myExplained = deletedFiles.size() + nonexistingFiles.size();
     }
 
-    public void everythingFinishedImpl( final String output )
+    /**
+     * @return true if any of the batches failed not because of missing or
+     *         deleted files, so the state of its files is unknown.
+     */
+    boolean isFailed()
     {
-      String lastVssFolder = null;
-      String[] lines = LineTokenizer.tokenize( output, false );
-      VSSExecUtil.LOG.info( "--- MultipleStatus --- " );
-      VSSExecUtil.LOG.info( "\n" + output );
-      VSSExecUtil.LOG.info( "--- MultipleStatus end --- " );
+      return myFailed || hasCriticalFailure();
+    }
+
+    protected void processLine( final String line )
+    {
+      if( VSSExecUtil.LOG.isDebugEnabled() )
+        VSSExecUtil.LOG.debug( "MultipleStatus: " + line );
+
+      // $/longpathupdateproblem/src/com/idea/mytest/ratherLongPackageName/firstSubPacka
+      // ge/secondSubpackage/TestNameToTestVSS:
+      // Rttt.java           Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
+      // Projects\p2_renamed_project\src\com\idea\mytest\ratherLongPackageName\firstSubP
+      // ackage\secondSubpackage\TestNameToTestVSS
 
-      for (int i = 0; i < lines.length; i++)
+      // $/longpathupdateproblem/src/first/second/third/forth/fifth/sixth/seventh/eith/n
+      // inth/tenth/ratherLongPackage/isntitlongenough/pp1:
+      // T2.java             Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
+      // Projects\p2_renamed_project\src\first\second\third\forth\fifth\sixth\seventh\ei
+      // th\ninth\tenth\ratherLongPackage\isntitlongenough\pp1
+      // T3.java             Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
+      // Projects\p2_renamed_project\src\first\second\third\forth\fifth\sixth\seventh\ei
+      // th\ninth\tenth\ratherLongPackage\isntitlongenough\pp1
+
+      //  The first part of the wrapped folder line can be recognized only by
+      //  the next line, so it is kept until the next line comes.
+      if( pendingFolderLine != null )
       {
-        String line = lines[ i ];
-
-        // $/longpathupdateproblem/src/com/idea/mytest/ratherLongPackageName/firstSubPacka
-        // ge/secondSubpackage/TestNameToTestVSS:
-        // Rttt.java           Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
-        // Projects\p2_renamed_project\src\com\idea\mytest\ratherLongPackageName\firstSubP
-        // ackage\secondSubpackage\TestNameToTestVSS
-
-        // $/longpathupdateproblem/src/first/second/third/forth/fifth/sixth/seventh/eith/n
-        // inth/tenth/ratherLongPackage/isntitlongenough/pp1:
-        // T2.java             Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
-        // Projects\p2_renamed_project\src\first\second\third\forth\fifth\sixth\seventh\ei
-        // th\ninth\tenth\ratherLongPackage\isntitlongenough\pp1
-        // T3.java             Lloix         Exc   4-23-07  4:18p  D:\Projects\Test
-        // Projects\p2_renamed_project\src\first\second\third\forth\fifth\sixth\seventh\ei
-        // th\ninth\tenth\ratherLongPackage\isntitlongenough\pp1
-         if( line.startsWith( "$" ) )
+        String firstPart = pendingFolderLine;
+        pendingFolderLine = null;
+        if( !line.startsWith( "$" ) && StringUtil.endsWithChar( line, ':' ) )
         {
-          int index_1 = line.indexOf(DELETED_MESSAGE);
-          int index_2 = line.indexOf(NOT_EXISTING_MESSAGE);
-
-          if (index_1 != -1) {
-            String file = line.substring(0, index_1).trim();
-            file = VssUtil.getLocalPath(file, myProject);
-            file = VssUtil.getCanonicalLocalPath(file);
-            deletedFiles.add(file.toLowerCase());
-          }
-          else
-          if (index_2 != -1)
-          {
-            String file = line.substring(0, index_2).trim();
-            file = VssUtil.getLocalPath(file, myProject);
-            file = VssUtil.getCanonicalLocalPath(file);
-            nonexistingFiles.add(file.toLowerCase());
-          }
-          else
-          if( StringUtil.endsWithChar(line, ':'))
+          lastVssFolder = firstPart + line.substring( 0, line.length() - 1 );
+          return;
+        }
+      }
+
+      if( line.startsWith( "$" ) )
+      {
+        int index_1 = line.indexOf(DELETED_MESSAGE);
+        int index_2 = line.indexOf(NOT_EXISTING_MESSAGE);
+
+        if (index_1 != -1) {
+          String file = line.substring(0, index_1).trim();
+          file = VssUtil.getLocalPath(file, myProject);
+          file = VssUtil.getCanonicalLocalPath(file);
+          deletedFiles.add(file.toLowerCase());
+        }
+        else
+        if (index_2 != -1)
+        {
+          String file = line.substring(0, index_2).trim();
+          file = VssUtil.getLocalPath(file, myProject);
+          file = VssUtil.getCanonicalLocalPath(file);
+          nonexistingFiles.add(file.toLowerCase());
+        }
+        else
+        if( StringUtil.endsWithChar(line, ':'))
+        {
+          lastVssFolder = line.substring(0, line.length() - 1);
+        }
+        else
+        {
+          pendingFolderLine = line;
+        }
+      }
+      else
+      {
+        if( /*lastVssFolder != null &&*/ line.length() > 20 && line.charAt(19) == ' ')
+        {
+          String file = line.substring(0, 19).trim();
+          boolean mayBeTruncated = line.charAt(18) != ' ';
+
+          //  MegaShit!!!
+          //  Sometimes (e.g. when the name of a user is large enough, like
+          //  Alexander.Chernikov) the information on checked out file is given
+          //  WITHOUT the preceeding vss subproject path. In such case, just
+          //  guess on the file given the list of files that we gave to the Status
+          //  command as input.
+          if( lastVssFolder == null )
           {
-            lastVssFolder = line.substring(0, line.length() - 1);
+            file = guessOnFilePath( file, mayBeTruncated );
           }
           else
-          if( i < lines.length - 1 && !lines[ i + 1 ].startsWith( "$" ) &&
-              StringUtil.endsWithChar( lines[ i + 1 ], ':' ) )
           {
-            lastVssFolder = line + lines[ i + 1 ].substring( 0, lines[ i + 1 ].length() - 1 );
-            i++;
+            if( mayBeTruncated )
+              file = guessOnFileName( file );
+
+            file = lastVssFolder + "/" + file;
+            file = VssUtil.getLocalPath( file, myProject );
           }
-        }
-        else
-        {
-          if( /*lastVssFolder != null &&*/ line.length() > 20 && line.charAt(19) == ' ')
+
+          //  If the VSS->local path conversion failed, simply do noting
+          if( file != null )
           {
-            String file = line.substring(0, 19).trim();
-            boolean mayBeTruncated = line.charAt(18) != ' ';
-
-            //  MegaShit!!!
-            //  Sometimes (e.g. when the name of a user is large enough, like
-            //  Alexander.Chernikov) the information on checked out file is given
-            //  WITHOUT the preceeding vss subproject path. In such case, just
-            //  guess on the file given the list of files that we gave to the Status
-            //  command as input.
-            if( lastVssFolder == null )
-            {
-              file = guessOnFilePath( file, mayBeTruncated );
-            }
-            else
-            {
-              if( mayBeTruncated )
-                file = guessOnFileName( file );
-
-              file = lastVssFolder + "/" + file;
-              file = VssUtil.getLocalPath( file, myProject );
-            }
-
-            //  If the VSS->local path conversion failed, simply do noting
-            if( file != null )
-            {
-              file = VssUtil.getCanonicalLocalPath( file );
-              checkoutFiles.add( file.toLowerCase() );
-            }
+            file = VssUtil.getCanonicalLocalPath( file );
+            checkoutFiles.add( file.toLowerCase() );
           }
         }
       }
     }
 
+    //  The same listener serves all the batches, keep the failure of this
+    //  one and reset the state for the next one.
+    protected void processFinished()
+    {
+      int explained = deletedFiles.size() + nonexistingFiles.size();
+      if( getExitCode() == VssUtil.EXIT_CODE_FAILURE && explained == myExplained )
+        myFailed = true;
+      myExplained = explained;
+
+      lastVssFolder = null;
+      pendingFolderLine = null;
+    }
+
     private String guessOnFileName( final String file )
     {
       String normalizedName = file.toLowerCase();
@@ -228,14 +294,17 @@ public class StatusMultipleCommand extends VssCommandAbstract
     @NonNls private static final String NOFILES_SIG = "No checked out files found";
     @NonNls private static final String NOFILES_BY_USER_SIG = "No files found checked out by";
 
-    public SingleStatusListener( List<VcsException> errors )
+    private final String myFile;
+
+    public SingleStatusListener( List<VcsException> errors, String file )
     {
       super( errors );
+      myFile = file;
     }
 
     public void everythingFinishedImpl(final String output)
     {
-      String file = files.get( 0 ).toLowerCase();
+      String file = myFile.toLowerCase();
       if( output.indexOf( DELETED_MESSAGE ) != -1 )
       {
         deletedFiles.add( file );
@@ -1,18 +1,25 @@
 package com.intellij.vssSupport.commands;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vssSupport.UndocheckoutOptions;
 import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssContentStore;
 import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
 import com.intellij.vssSupport.ui.ConfirmMultipleDialog;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Vladimir Kondratyev
@@ -20,8 +27,20 @@ import java.util.List;
  */
 public class UndocheckoutFilesCommand extends VssCommandAbstract
 {
+  @NonNls private static final String CHECKED_OUT_MESSAGE = "currently checked out";
+  @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
+  @NonNls private static final String DELETED_MESSAGE = "has been deleted";
+  @NonNls private static final String NOT_FROM_CURRENT_MESSAGE = "not from the current folder";
+  @NonNls private static final String UNDO_CHECKOUT_CONF_MESSAGE = "Undo check out and lose changes?(Y/N)N";
+
   private final VirtualFile[] myFiles;
-  private boolean needToAsk = false;
+
+  //  Changed files the user has been asked about before the run, and those
+  //  of them whose local copy is to be replaced or left. The others stay
+  //  checked out. Null until the questions are asked.
+  private List<VirtualFile> myAsked;
+  private List<VirtualFile> myToReplace;
+  private List<VirtualFile> myToLeave;
 
   public UndocheckoutFilesCommand( Project project, VirtualFile[] files, List<VcsException> errors )
   {
@@ -29,89 +48,316 @@ public class UndocheckoutFilesCommand extends VssCommandAbstract
     myFiles = files;
   }
 
-  @SuppressWarnings({"AssignmentToForLoopParameter"})
+  /**
+   * Asks the user about every file known to be changed whether its local
+   * copy is to be replaced, so that the checkouts are undone without stopping. Must be
+   * called in the dispatch thread before <code>execute</code>, which calls it
+   * itself otherwise.
+   * @return false if the user has cancelled the command.
+   */
+  public boolean askQuestions()
+  {
+    myAsked = new ArrayList<>();
+    myToReplace = new ArrayList<>();
+    myToLeave = new ArrayList<>();
+    if( myConfig.getUndocheckoutOptions().REPLACE_LOCAL_COPY != UndocheckoutOptions.OPTION_ASK )
+      return true;
+
+    //  ss.exe asks only about the files which differ from the checked out
+    //  version. Files whose base content is not in the store are compared
+    //  with the repository in the background before the run.
+    for( VirtualFile file : myFiles )
+    {
+      if( Boolean.TRUE.equals( isChanged( file )))
+        myAsked.add( file );
+    }
+    return askReplace( myAsked, myToReplace, myToLeave );
+  }
+
+  /**
+   * @return whether the file differs from its base revision, or null if the
+   *         base revision is not in the content store.
+   */
+  @Nullable
+  private Boolean isChanged( VirtualFile file )
+  {
+    String vssPath = VssUtil.getVssPath( file, myProject );
+    String revision = VssContentStore.getBaseRevision( myProject, file.getPath() );
+    byte[] base = ( vssPath == null ) ? null : VssContentStore.getInstance( myProject ).get( vssPath, revision );
+    if( base == null )
+      return null;
+
+    return differs( file, base );
+  }
+
+  @Nullable
+  private static Boolean differs( VirtualFile file, byte[] base )
+  {
+    try
+    {
+      return !Arrays.equals( base, file.contentsToByteArray() );
+    }
+    catch( IOException e )
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Compares the files not known to the content store with their repository
+   * version and asks about the changed ones, so that all the questions are
+   * answered before any checkout is undone.
+   * @return false if the user has cancelled the command.
+   */
+  private boolean askAboutOthers()
+  {
+    if( myConfig.getUndocheckoutOptions().REPLACE_LOCAL_COPY != UndocheckoutOptions.OPTION_ASK )
+      return true;
+
+    //  VSS project path -> files to compare, every group is got by one command.
+    Map<String, List<VirtualFile>> groups = new LinkedHashMap<>();
+    for( VirtualFile file : myFiles )
+    {
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( myAsked.contains( file ) || isChanged( file ) != null || vssPath == null )
+        continue;
+
+      String vssFolder = vssPath.substring( 0, vssPath.lastIndexOf( '/' ) + 1 );
+      groups.computeIfAbsent( vssFolder, folder -> new ArrayList<>() ).add( file );
+    }
+
+    final List<VirtualFile> changed = new ArrayList<>();
+    for( List<VirtualFile> group : groups.values() )
+      collectChanged( group, changed );
+    if( changed.isEmpty() )
+      return true;
+
+    myAsked.addAll( changed );
+    return askOnDispatchThread( () -> askReplace( changed, myToReplace, myToLeave ) );
+  }
+
+  /**
+   * Gets the repository versions of the files of one VSS project and collects
+   * those differing from them. A file which can not be compared is taken as
+   * changed, so that the user is asked about it as well.
+   */
+  private void collectChanged( List<VirtualFile> files, List<VirtualFile> changed )
+  {
+    List<String> vssPaths = new ArrayList<>();
+    for( VirtualFile file : files )
+      vssPaths.add( VssUtil.getVssPath( file, myProject ) );
+
+    //  Failures of "Get" are not errors of the command, the files are simply
+    //  asked about.
+    List<VcsException> errors = new ArrayList<>();
+    String workingPath = files.get( 0 ).getParent().getPath().replace( '/', File.separatorChar );
+    GetContentCommand cmd = new GetContentCommand( myProject, vssPaths, workingPath, errors );
+    try
+    {
+      cmd.execute();
+      for( int i = 0; i < files.size(); i++ )
+      {
+        VirtualFile file = files.get( i );
+        byte[] base = cmd.getContent( vssPaths.get( i ) );
+        if( base == null || !Boolean.FALSE.equals( differs( file, base )))
+          changed.add( file );
+      }
+    }
+    finally
+    {
+      cmd.dispose();
+    }
+  }
+
   public void execute()
   {
+    if( myToReplace == null && !askOnDispatchThread( this::askQuestions ) )
+      return;
+    if( !askAboutOthers() )
+      return;
+
     final UndocheckoutOptions baseOptions = myConfig.getUndocheckoutOptions();
     int savedActionType = baseOptions.REPLACE_LOCAL_COPY;
-    boolean replaceInstance = false;
-
-    UndocheckoutListenerNew listener = new UndocheckoutListenerNew( myErrors );
-    for( int i = 0; i < myFiles.length; i++ )
+    try
     {
-      List<String> options = baseOptions.getOptions( myFiles[ i ] );
-      String workingPath = myFiles[ i ].getParent().getPath().replace( '/', File.separatorChar );
-      listener.setFileName( myFiles[ i ].getPath() );
+      List<VirtualFile> rest = new ArrayList<>( Arrays.asList( myFiles ));
+      rest.removeAll( myAsked );
 
       // If options specify "ask before replace", Undocheckout runs with -I-N option.
-      // This causes replacement of unchanged file but the confirmation is requested
-      // for changed files. Analyze output and repeat with proper "Yes" or "No" answer.
-      needToAsk = false;
+      // This causes replacement of unchanged files but the confirmation is requested
+      // for changed files. The changed files are answered in advance; a file which
+      // ss.exe still finds changed is asked about after the run and undone once more
+      // with proper "Yes" or "No" answer.
+      final List<VirtualFile> toAsk = new ArrayList<>();
+      undoCheckout( rest, toAsk );
 
-      runProcess( options, workingPath, listener );
+      final List<VirtualFile> toReplace = new ArrayList<>( myToReplace );
+      final List<VirtualFile> toLeave = new ArrayList<>( myToLeave );
+      if( !toAsk.isEmpty() )
+        askOnDispatchThread( () -> askReplace( toAsk, toReplace, toLeave ) );
 
-      //  Return the option value back - we need to ask again for the next file 
-      if( replaceInstance ){
-        baseOptions.REPLACE_LOCAL_COPY = savedActionType;
-        replaceInstance = false;
-      }
+      baseOptions.REPLACE_LOCAL_COPY = UndocheckoutOptions.OPTION_REPLACE;
+      undoCheckout( toReplace, null );
+      baseOptions.REPLACE_LOCAL_COPY = UndocheckoutOptions.OPTION_LEAVE;
+      undoCheckout( toLeave, null );
+    }
+    finally
+    {
+      baseOptions.REPLACE_LOCAL_COPY = savedActionType;
+    }
+
+    for( VirtualFile file : myFiles )
+      file.refresh( true, true );
+  }
 
-      if( needToAsk )
+  /**
+   * Asks about each of the files whether to replace its local copy.
+   * @return false if the user has cancelled the command; the files asked
+   *         so far are still collected.
+   */
+  private boolean askReplace( List<VirtualFile> files, List<VirtualFile> toReplace, List<VirtualFile> toLeave )
+  {
+    int answerForAll = -1;
+    for( VirtualFile file : files )
+    {
+      int exitCode = ( answerForAll != -1 ) ? answerForAll : askOption( file.getPath() );
+      if( exitCode == ConfirmMultipleDialog.YES_EXIT_CODE || exitCode == ConfirmMultipleDialog.YES_ALL_EXIT_CODE )
+        toReplace.add( file );
+      else
+      if( exitCode == ConfirmMultipleDialog.NO_ALL_EXIT_CODE && answerForAll != -1 )
+        toLeave.add( file );
+      else
+      if( exitCode == ConfirmMultipleDialog.CANCEL_OPTION )
+        return false;
+
+      //  The file answered "No to all" stays checked out, the following
+      //  ones are undone without replacing the local copy.
+      if( exitCode == ConfirmMultipleDialog.YES_ALL_EXIT_CODE || exitCode == ConfirmMultipleDialog.NO_ALL_EXIT_CODE )
+        answerForAll = exitCode;
+      // and nothing to do in the case of ConfirmMultipleDialog.NO_EXIT_CODE
+    }
+    return true;
+  }
+
+  /**
+   * Undo checkout of the files with one command per folder.
+   * @param toAsk collects the changed files which need the user's decision.
+   */
+  private void undoCheckout( List<VirtualFile> files, @Nullable List<VirtualFile> toAsk )
+  {
+    Map<VirtualFile, List<VirtualFile>> groups = new LinkedHashMap<>();
+    for( VirtualFile file : files )
+      groups.computeIfAbsent( file.getParent(), parent -> new ArrayList<>() ).add( file );
+
+    for( List<VirtualFile> group : groups.values() )
+    {
+      if( group.size() == 1 )
+        undoCheckout( group.get( 0 ), toAsk );
+      else
+        undoCheckoutGroup( group, toAsk );
+    }
+  }
+
+  private void undoCheckout( VirtualFile file, @Nullable List<VirtualFile> toAsk )
+  {
+    List<String> options = myConfig.getUndocheckoutOptions().getOptions( file );
+    String workingPath = file.getParent().getPath().replace( '/', File.separatorChar );
+    UndocheckoutListenerNew listener = new UndocheckoutListenerNew( myErrors );
+    listener.setFileName( file.getPath() );
+
+    runProcess( options, workingPath, listener );
+
+    if( listener.needToAsk && toAsk != null )
+      toAsk.add( file );
+  }
+
+  private void undoCheckoutGroup( List<VirtualFile> files, @Nullable List<VirtualFile> toAsk )
+  {
+    List<VirtualFile> undoneFiles = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    List<String> vssPaths = new ArrayList<>();
+    for( VirtualFile file : files )
+    {
+      String vssPath = VssUtil.getVssPath( file, myProject );
+      if( vssPath != null )
       {
-        int exitCode = askOption( myFiles[ i ].getPath() );
-        if( exitCode == ConfirmMultipleDialog.YES_EXIT_CODE ){
-          replaceInstance = true;
-          baseOptions.REPLACE_LOCAL_COPY = UndocheckoutOptions.OPTION_REPLACE;
-          //  repeat for the file with the new options set
-          i--;
-        }
-        else
-        if( exitCode == ConfirmMultipleDialog.YES_ALL_EXIT_CODE  ){
-          baseOptions.REPLACE_LOCAL_COPY = UndocheckoutOptions.OPTION_REPLACE;
-          //  repeat for this file and all others with the new options set
-          i--;
-        }
-        else
-        if( exitCode == ConfirmMultipleDialog.NO_ALL_EXIT_CODE ){
-          baseOptions.REPLACE_LOCAL_COPY = UndocheckoutOptions.OPTION_LEAVE;
-        }
-        else
-        if( exitCode == ConfirmMultipleDialog.CANCEL_OPTION ){
-          break;
-        }
-        // and nothing to do in the case of ConfirmMultipleDialog.NO_EXIT_CODE
+        undoneFiles.add( file );
+        names.add( file.getName() );
+        vssPaths.add( vssPath );
       }
+      else
+        myErrors.add( new VcsException( VssBundle.message("message.text.path.is.not.existing.filename.or.project", file.getPath() ) ));
     }
-    baseOptions.REPLACE_LOCAL_COPY = savedActionType;
+    if( undoneFiles.isEmpty() )
+      return;
 
-    for( VirtualFile file : myFiles )
-      file.refresh( true, true );
+    String workingPath = undoneFiles.get( 0 ).getParent().getPath().replace( '/', File.separatorChar );
+    MultiFileListener listener = new MultiFileListener( myErrors, names );
+    runBatched( myConfig.getUndocheckoutOptions().getOptions(), vssPaths, workingPath, listener );
+
+    //  A file without any message of its own gets the common output, so that
+    //  the failure of the whole command is reported for every file.
+    for( int i = 0; i < undoneFiles.size(); i++ )
+    {
+      VirtualFile file = undoneFiles.get( i );
+      String output = listener.getOutput( i );
+      int exitCode = listener.getFileExitCode( i );
+      if( output == null )
+        output = ( exitCode == VssUtil.EXIT_CODE_FAILURE ) ? listener.getCommonOutput() : "";
+      if( processOutput( file.getPath(), output, exitCode ) && toAsk != null )
+        toAsk.add( file );
+    }
   }
 
   private int askOption( final String fileName )
   {
-    final int[] exitCode = new int[ 1 ];
-    Runnable runnable = () -> {
-      ConfirmMultipleDialog dialog = new ConfirmMultipleDialog( VssBundle.message("confirm.text.undo.check.out"),
-                                                                VssBundle.message("confirm.text.file.changed.undo", fileName ),
-                                                                myProject);
-      dialog.show();
-      exitCode[ 0 ] = dialog.getExitCode();
-    };
-
-      ApplicationManager.getApplication().invokeAndWait( runnable );
-
-    return exitCode[ 0 ];
+    ConfirmMultipleDialog dialog = new ConfirmMultipleDialog( VssBundle.message("confirm.text.undo.check.out"),
+                                                              VssBundle.message("confirm.text.file.changed.undo", fileName ),
+                                                              myProject);
+    dialog.show();
+    return dialog.getExitCode();
+  }
+
+  /**
+   * Reports the result of "Undocheckout" for the file by the messages ss.exe
+   * issued for it.
+   * @return true if the file is changed and the user must decide whether to
+   *         replace it.
+   */
+  private boolean processOutput( String fileName, String output, int exitCode )
+  {
+    if( output.indexOf( CHECKED_OUT_MESSAGE ) != -1 )
+        myErrors.add( new VcsException( VssBundle.message("message.text.file.not.checked.out", fileName ) ));
+    else 
+    if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
+      myErrors.add( new VcsException( VssBundle.message("message.text.path.is.not.existing.filename.or.project", fileName ) ));
+    else
+    if( output.indexOf( DELETED_MESSAGE )!= -1 )
+      myErrors.add( new VcsException( VssBundle.message("message.text.cannot.undo.file.deleted", fileName) ));
+    else
+    if( output.indexOf( NOT_FROM_CURRENT_MESSAGE )!= -1)
+      myErrors.add( new VcsException( VssBundle.message("message.text.cannot.undo.checked.out.not.from.current", fileName) ));
+    else
+    if( output.indexOf( UNDO_CHECKOUT_CONF_MESSAGE )!= -1)
+      return true;
+    else
+    if( VssUtil.EXIT_CODE_SUCCESS == exitCode || VssUtil.EXIT_CODE_WARNING == exitCode )
+    {
+      VssRepositoryIndex.getInstance( myProject ).checkedIn( fileName );
+      String vssPath = VssUtil.getVssPath( fileName, false, myProject );
+      if( vssPath != null )
+        VssContentStore.getInstance( myProject ).invalidateBase( vssPath );
+      VssUtil.showStatusMessage( myProject, VssBundle.message("message.text.undo.successfully", fileName ));
+    }
+    else
+      myErrors.add( new VcsException( output ));
+    return false;
   }
 
   private class UndocheckoutListenerNew extends VssOutputCollector
   {
     private String fileName;
-    @NonNls private static final String CHECKED_OUT_MESSAGE = "currently checked out";
-    @NonNls private static final String NOT_EXISTING_MESSAGE = "is not an existing";
-    @NonNls private static final String DELETED_MESSAGE = "has been deleted";
-    @NonNls private static final String NOT_FROM_CURRENT_MESSAGE = "not from the current folder";
-    @NonNls private static final String UNDO_CHECKOUT_CONF_MESSAGE = "Undo check out and lose changes?(Y/N)N";
+    private boolean needToAsk;
 
     public UndocheckoutListenerNew( List<VcsException> errors ){
       super( errors );
@@ -123,25 +369,7 @@ public class UndocheckoutFilesCommand extends VssCommandAbstract
 
     public void everythingFinishedImpl( final String output )
     {
-      if( output.indexOf( CHECKED_OUT_MESSAGE ) != -1 )
-          myErrors.add( new VcsException( VssBundle.message("message.text.file.not.checked.out", fileName ) ));
-      else 
-      if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
-        myErrors.add( new VcsException( VssBundle.message("message.text.path.is.not.existing.filename.or.project", fileName ) ));
-      else
-      if( output.indexOf( DELETED_MESSAGE )!= -1 )
-        myErrors.add( new VcsException( VssBundle.message("message.text.cannot.undo.file.deleted", fileName) ));
-      else
-      if( output.indexOf( NOT_FROM_CURRENT_MESSAGE )!= -1)
-        myErrors.add( new VcsException( VssBundle.message("message.text.cannot.undo.checked.out.not.from.current", fileName) ));
-      else
-      if( output.indexOf( UNDO_CHECKOUT_CONF_MESSAGE )!= -1)
-        needToAsk = true;
-      else
-      if( VssUtil.EXIT_CODE_SUCCESS == getExitCode() || VssUtil.EXIT_CODE_WARNING == getExitCode() )
-        VssUtil.showStatusMessage( myProject, VssBundle.message("message.text.undo.successfully", fileName ));
-      else
-        myErrors.add( new VcsException( output ));
+      needToAsk = processOutput( fileName, output, getExitCode() );
     }
   }
 }
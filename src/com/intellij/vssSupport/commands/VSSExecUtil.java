@@ -3,25 +3,40 @@ package com.intellij.vssSupport.commands;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.OSProcessUtil;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.process.InterruptibleProcess;
-import com.intellij.openapi.vcs.impl.ProcessWaiter;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.encoding.EncodingProjectManager;
 import com.intellij.util.ArrayUtil;
+import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssLineOutputCollector;
 import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * @author LloiX
@@ -32,20 +47,31 @@ public class VSSExecUtil
 
   @NonNls private final static String SYSTEMROOT_VAR = "SYSTEMROOT";
   @NonNls private final static String TEMP_VAR = "TEMP";
+  @NonNls private final static String SSDIR_VAR = "SSDIR";
   @NonNls private final static String USER_SIG_OPTION_PREFIX = " -Y";
+  @NonNls private final static String USER_OPTION = "-Y";
+  @NonNls private final static String SSUSER_VAR = "SSUSER";
+  @NonNls private final static String SSPWD_VAR = "SSPWD";
 
-  private static final int TIMEOUT_LIMIT = 40;
+  //  How often the watchdog checks the time limits of a running process and
+  //  whether the command has been cancelled.
+  private static final int WATCHDOG_PERIOD_MILLIS = 50;
   private static final int TIMEOUT_EXIT_CODE = -1000;
-  private static final int DEFAULT_ERROR_EXIT_CODE = -1;
+  private static final int INACTIVITY_EXIT_CODE = -1001;
+  private static final int CANCEL_EXIT_CODE = -1002;
+
+  @NonNls private static final String BATCH_FILE_PREFIX = "vssbatch";
+
+  private static final ThreadLocal<VssCommandPriority> ourPriority = new ThreadLocal<>();
 
   private VSSExecUtil() {}
 
   public interface UserInput {  void doInput(Writer writer);  }
 
-  public synchronized static void runProcess( @NotNull Project project,
-                                              String exePath, List<String> paremeters,
-                                              HashMap<String, String> envParams, String workingDir,
-                                              VssOutputCollector listener) throws ExecutionException
+  public static void runProcess( @NotNull Project project,
+                                 String exePath, List<String> paremeters,
+                                 HashMap<String, String> envParams, String workingDir,
+                                 VssOutputCollector listener) throws ExecutionException
   {
     String[] programParams = ArrayUtil.toStringArray(paremeters);
     addVSS2005Values( envParams );
@@ -58,54 +84,227 @@ public class VSSExecUtil
 
     LOG.info(cmdLine.getCommandLineString());
 
+    VssTimeoutPolicy policy = VssTimeoutPolicy.forCommand( paremeters, VssConfiguration.getInstance( project ));
+    runCommandLine( project, cmdLine, prepareTitleString( cmdLine.getCommandLineString() ), envParams.get( SSDIR_VAR ),
+                    listener, policy, null );
+  }
+
+  /**
+   * Runs several independent ss.exe commands one after another in one shell
+   * session, which saves the start of the session and of the process slot
+   * for every command. Every listener gets the output and the exit code of
+   * its command as if it was run by <code>runProcess</code>. If the session
+   * fails as a whole, the error goes to <code>errors</code>, and the
+   * listeners of the commands not finished by then get nothing.
+   */
+  public static void runBatch( @NotNull Project project, String exePath, List<List<String>> commands,
+                               HashMap<String, String> envParams, String workingDir,
+                               List<? extends VssOutputCollector> listeners, List<VcsException> errors ) throws ExecutionException
+  {
+    if( commands.isEmpty() )
+      return;
+    addVSS2005Values( envParams );
+
+    //  The user's name and password given by the "-Y" option are passed to
+    //  the session through its environment, the script file does not hold
+    //  them.
+    commands = withUserInEnvironment( commands, envParams );
+    VssBatchScript script = new VssBatchScript( SystemInfo.isWindows );
+    File scriptFile;
+    try
+    {
+      scriptFile = FileUtil.createTempFile( BATCH_FILE_PREFIX, script.getExtension() );
+      String text = script.build( exePath, commands );
+      FileUtil.writeToFile( scriptFile, text.getBytes( EncodingProjectManager.getInstance( project ).getDefaultCharset() ));
+    }
+    catch( IOException e )
+    {
+      throw new ExecutionException( e.getMessage() );
+    }
+
+    try
+    {
+      GeneralCommandLine cmdLine = new GeneralCommandLine( script.getShellCommand( scriptFile.getPath() ));
+      cmdLine.setWorkDirectory( workingDir );
+      cmdLine.getEnvironment().putAll( envParams );
+
+      for( List<String> command : commands )
+        LOG.info( exePath + " " + StringUtil.join( command, " " ) );
+
+      String descriptor = prepareTitleString( exePath + " " + StringUtil.join( commands.get( 0 ), " " ));
+      runCommandLine( project, cmdLine, descriptor, envParams.get( SSDIR_VAR ),
+                      new BatchListener( script, listeners, errors ),
+                      VssTimeoutPolicy.forBatch( VssConfiguration.getInstance( project )), script.getMarker() );
+    }
+    finally
+    {
+      FileUtil.delete( scriptFile );
+    }
+  }
+
+  /**
+   * @return the commands without their "-Y" options; the user name and the
+   *         password of the first one go into <code>envParams</code> as
+   *         SSUSER and SSPWD.
+   */
+  static List<List<String>> withUserInEnvironment( List<List<String>> commands, Map<String, String> envParams )
+  {
+    List<List<String>> result = new ArrayList<>();
+    for( List<String> command : commands )
+    {
+      List<String> options = new ArrayList<>();
+      for( String option : command )
+      {
+        if( !option.regionMatches( true, 0, USER_OPTION, 0, USER_OPTION.length() ) )
+          options.add( option );
+        else
+        if( !envParams.containsKey( SSUSER_VAR ) )
+        {
+          String user = option.substring( USER_OPTION.length() );
+          int comma = user.indexOf( ',' );
+          envParams.put( SSUSER_VAR, ( comma == -1 ) ? user : user.substring( 0, comma ) );
+          envParams.put( SSPWD_VAR, ( comma == -1 ) ? "" : user.substring( comma + 1 ) );
+        }
+      }
+      result.add( options );
+    }
+    return result;
+  }
+
+  private static void runCommandLine( @NotNull Project project, GeneralCommandLine cmdLine, String descriptor,
+                                      String ssDir, VssOutputCollector listener, VssTimeoutPolicy policy,
+                                      @Nullable String sectionMarker ) throws ExecutionException
+  {
     final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
     if( progress != null )
-    {
-      String descriptor = prepareTitleString( cmdLine.getCommandLineString() );
       progress.setText2( descriptor );
+
+    //-------------------------------------------------------------------------
+    //  Processes against the same database are limited by the configured
+    //  number of slots, all others run in parallel.
+    //-------------------------------------------------------------------------
+    VssProcessSlots slots = VssProcessSlots.getInstance( ssDir );
+    VssConfiguration config = VssConfiguration.getInstance( project );
+    BooleanSupplier cancelled = () -> progress != null && progress.isCanceled();
+    try
+    {
+      if( !slots.acquire( config.MAX_CONCURRENT_PROCESSES, getPriority(), project, cancelled ) )
+      {
+        listener.onCommandCriticalFail( VssBundle.message( "message.text.process.cancelled" ) );
+        return;
+      }
+    }
+    catch( InterruptedException e )
+    {
+      listener.onCommandCriticalFail( e.getMessage() );
+      return;
     }
 
-    runProcessImpl(project, listener, cmdLine);
+    try
+    {
+      runProcessImpl( project, listener, cmdLine, policy, cancelled, sectionMarker );
+    }
+    finally
+    {
+      slots.release( project );
+    }
 
     if( progress != null )
       progress.setText( "" );
   }
 
-  private static void runProcessImpl(@NotNull final Project project, VssOutputCollector listener, GeneralCommandLine cmdLine) throws ExecutionException {
+  /**
+   * Runs the given action so that all the ss.exe commands it issues from the
+   * current thread wait for a process slot with the given priority. Commands
+   * issued outside of such action get {@link VssCommandPriority#USER_BATCH}.
+   */
+  public static void runWithPriority( @NotNull VssCommandPriority priority, Runnable action )
+  {
+    VssCommandPriority previous = ourPriority.get();
+    ourPriority.set( priority );
+    try
+    {
+      action.run();
+    }
+    finally
+    {
+      if( previous == null )
+        ourPriority.remove();
+      else
+        ourPriority.set( previous );
+    }
+  }
+
+  @NotNull
+  static VssCommandPriority getPriority()
+  {
+    VssCommandPriority priority = ourPriority.get();
+    return ( priority == null ) ? VssCommandPriority.USER_BATCH : priority;
+  }
+
+  /**
+   * Runs the given action while no other command is allowed to change the
+   * current project of the database identified by <code>ssDir</code>.
+   */
+  public static void runInCurrentProject( String ssDir, Runnable action )
+  {
+    ReentrantLock lock = VssProcessSlots.getInstance( ssDir ).getCurrentProjectLock();
+    lock.lock();
+    try
+    {
+      action.run();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private static void runProcessImpl( @NotNull final Project project, VssOutputCollector listener,
+                                      GeneralCommandLine cmdLine, VssTimeoutPolicy policy,
+                                      BooleanSupplier cancelled, @Nullable String sectionMarker ) throws ExecutionException
+  {
     Process process = null;
-    VssProcess worker = null;
-    ProcessWaiter<VssStreamReader> waiter = null;
-    try {
-      int rc = DEFAULT_ERROR_EXIT_CODE;
+    try
+    {
+      process = cmdLine.createProcess();
+
+      //  Listeners which consume the output line by line get the lines of
+      //  the output stream as soon as they are read. Fatal messages found
+      //  in any of the streams stop the process at once.
+      final Process killedProcess = process;
+      final Consumer<String> lineConsumer = (listener instanceof VssLineOutputCollector) ?
+                                            ((VssLineOutputCollector)listener)::lineAvailable : null;
+      VssStreamReader outReader = new VssStreamReader( process.getInputStream(), project, lineConsumer, killedProcess::destroy,
+                                                       sectionMarker );
+      VssStreamReader errReader = new VssStreamReader( process.getErrorStream(), project, null, killedProcess::destroy,
+                                                       sectionMarker );
+      Future<?> outFuture = ApplicationManager.getApplication().executeOnPooledThread( outReader );
+      Future<?> errFuture = ApplicationManager.getApplication().executeOnPooledThread( errReader );
+
+      int rc;
       try
       {
-        process = cmdLine.createProcess();
-        worker = new VssProcess(process, project);
+        rc = waitFor( process, project, policy, cancelled, outReader, errReader );
 
-        waiter = new ProcessWaiter<VssStreamReader>() {
-          protected VssStreamReader createStreamListener(InputStream stream) {
-            return new VssStreamReader(stream, project);
-          }
-        };
-
-        rc = waiter.execute(worker, TIMEOUT_LIMIT * 1000);
-      }
-      catch( java.util.concurrent.ExecutionException e ){
-        listener.onCommandCriticalFail( e.getMessage() );
-      }
-      catch( IOException e ) {
-        listener.onCommandCriticalFail( e.getMessage() );
+        //  The readers finish as soon as the pipes are drained, unless the
+        //  process was killed and its pipes may never be closed.
+        if( rc != TIMEOUT_EXIT_CODE && rc != INACTIVITY_EXIT_CODE && rc != CANCEL_EXIT_CODE )
+        {
+          outFuture.get();
+          errFuture.get();
+        }
       }
-      catch( InterruptedException e ) {
+      catch( InterruptedException | java.util.concurrent.ExecutionException e )
+      {
+        kill( process );
         listener.onCommandCriticalFail( e.getMessage() );
-      }
-      catch (TimeoutException e) {
-        rc = TIMEOUT_EXIT_CODE;
+        return;
       }
 
       //-------------------------------------------------------------------------
       //  Process is either exits by itself with some exit code or it is aborted
-      //  by the timeout.
+      //  by the watchdog or by the user.
       //  In the former case we PRE-analyze output and error streams, trying to
       //  find most general error messages which require for the process to be
       //  aborted abnormally. In the case of normal exit we notify the
@@ -115,35 +314,115 @@ public class VSSExecUtil
       {
         listener.onCommandCriticalFail( VssBundle.message( "message.text.process.shutdown.on.timeout" ) );
         LOG.info( "++ Command Shutdown detected ++");
-      } else if (waiter.getInStreamListener().getReason() != null || waiter.getErrStreamListener().getReason() != null ) {
-        String reason = (waiter.getInStreamListener().getReason() != null) ?
-                        waiter.getInStreamListener().getReason() : waiter.getErrStreamListener().getReason();
+      }
+      else if( rc == INACTIVITY_EXIT_CODE )
+      {
+        listener.onCommandCriticalFail( VssBundle.message( "message.text.process.shutdown.on.inactivity",
+                                                           policy.getInactivityTimeout() / 1000 ) );
+        LOG.info( "++ Command Shutdown on inactivity detected ++");
+      }
+      else if( rc == CANCEL_EXIT_CODE )
+      {
+        listener.onCommandCriticalFail( VssBundle.message( "message.text.process.cancelled" ) );
+        LOG.info( "++ Command cancelled ++");
+      }
+      else if( outReader.getReason() != null || errReader.getReason() != null )
+      {
+        String reason = (outReader.getReason() != null) ? outReader.getReason() : errReader.getReason();
 
         LOG.info( "++ Critical error detected: " + reason );
-        listener.setExitCode( worker.getExitCode() );
+        listener.setExitCode( rc );
+        //  The reason is not a part of the command's output: listeners which
+        //  parse the output line by line must not take it for one more line
+        //  of ss.exe. Whole-text listeners get it as before, their error
+        //  handling relies on it.
         listener.onCommandCriticalFail( reason );
-        listener.everythingFinishedImpl( reason );
+        if( !( listener instanceof VssLineOutputCollector ))
+          listener.everythingFinishedImpl( reason );
 
         //  Hack: there is no known (so far) way to give the necessary sequence of
         //  characters to the input of the SS.EXE process to emulate "Enter" on its
         //  request to reenter the password. Thus we simply notify the parent process
         //  that it should finish.
-        worker.destroy();
+        process.destroy();
+      }
+      else if( listener instanceof VssLineOutputCollector )
+      {
+        VssLineOutputCollector lineListener = (VssLineOutputCollector)listener;
+        listener.setExitCode( rc );
+
+        //  Output stream is empty here unless it was not read in the streaming
+        //  mode. Unlike the whole text, which starts with the error stream, the
+        //  error lines come after the streamed output lines.
+        lineListener.linesAvailable( errReader.getReadString() );
+        lineListener.linesAvailable( outReader.getReadString() );
+        lineListener.outputFinished();
       }
       else
       {
-        String text = waiter.getErrStreamListener().getReadString() + waiter.getInStreamListener().getReadString();
+        String text = errReader.getReadString() + outReader.getReadString();
 
-        listener.setExitCode( worker.getExitCode() );
+        listener.setExitCode( rc );
         listener.everythingFinishedImpl( text );
       }
-    } finally {
-      if (worker != null) {
-        worker.closeProcess();
-      } else if ((worker == null) && (process != null)) {
-        InterruptibleProcess.close(process);
+    }
+    finally
+    {
+      if( process != null )
+        InterruptibleProcess.close( process );
+    }
+  }
+
+  /**
+   * Waits for the process to exit, checking the cancellation and the limits
+   * of the policy every <code>WATCHDOG_PERIOD_MILLIS</code>; the process of a
+   * closed project is killed as cancelled. The inactivity
+   * is counted from the last read from any of the streams.
+   *
+   * @return the exit code of the process, or one of the pseudo-codes
+   * <code>TIMEOUT_EXIT_CODE</code>, <code>INACTIVITY_EXIT_CODE</code> and
+   * <code>CANCEL_EXIT_CODE</code> if it has been killed.
+   */
+  private static int waitFor( Process process, Project project, VssTimeoutPolicy policy, BooleanSupplier cancelled,
+                              VssStreamReader... readers ) throws InterruptedException
+  {
+    long started = System.currentTimeMillis();
+    while( !process.waitFor( WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS ) )
+    {
+      //  Nobody waits for the result once the project is closed.
+      if( cancelled.getAsBoolean() || project.isDisposed() )
+      {
+        kill( process );
+        return CANCEL_EXIT_CODE;
+      }
+
+      long now = System.currentTimeMillis();
+      long lastActivity = started;
+      for( VssStreamReader reader : readers )
+        lastActivity = Math.max( lastActivity, reader.getLastActivity() );
+
+      if( policy.isExpired( started, now ) )
+      {
+        kill( process );
+        return TIMEOUT_EXIT_CODE;
+      }
+      if( policy.isInactive( lastActivity, now ) )
+      {
+        kill( process );
+        return INACTIVITY_EXIT_CODE;
       }
     }
+    return process.exitValue();
+  }
+
+  /**
+   * Kills the process together with the processes it has started, if any,
+   * so that none of them keeps the database busy.
+   */
+  private static void kill( Process process )
+  {
+    if( !OSProcessUtil.killProcessTree( process ) )
+      process.destroy();
   }
 
   public static void runProcessDoNotWaitForTermination( String exePath, String[] programParms,
@@ -189,21 +468,61 @@ public class VSSExecUtil
     return result;
   }
 
-  private static class VssProcess extends InterruptibleProcess
+  /**
+   * Passes the output of a batch session to the listeners of its commands.
+   */
+  private static class BatchListener extends VssLineOutputCollector implements VssBatchScript.Receiver
   {
-    @NotNull private final Project project;
-    public VssProcess( Process process, @NotNull Project project )
+    private final VssBatchScript myScript;
+    private final List<? extends VssOutputCollector> myListeners;
+
+    //  Output of the current command for a listener which takes it as a whole.
+    private final StringBuilder myText = new StringBuilder();
+
+    public BatchListener( VssBatchScript script, List<? extends VssOutputCollector> listeners, List<VcsException> errors )
+    {
+      super( errors );
+      myScript = script;
+      myListeners = listeners;
+    }
+
+    protected void processLine( final String line )
+    {
+      myScript.processLine( line, this );
+    }
+
+    protected void processFinished()
     {
-      super( process, TIMEOUT_LIMIT, TimeUnit.SECONDS );
-      this.project = project;
+      //  A non-zero exit code of the session means that the shell itself
+      //  failed, the commands report their own exit codes.
+      if( myScript.getFinishedCount() < myListeners.size() && getExitCode() != VssUtil.EXIT_CODE_SUCCESS )
+        onCommandCriticalFail( getOutputHead() );
     }
-    public void destroy()        {  super.interrupt();  }
-    public int  processTimeout() {  return TIMEOUT_EXIT_CODE;  }
 
-    @Override
-    protected int processTimeoutInEDT()
+    public void lineAvailable( int command, String line )
     {
-      return project.isDisposed() ? TIMEOUT_EXIT_CODE : super.processTimeoutInEDT();
+      if( command >= myListeners.size() )
+        return;
+
+      VssOutputCollector listener = myListeners.get( command );
+      if( listener instanceof VssLineOutputCollector )
+        ((VssLineOutputCollector)listener).lineAvailable( line );
+      else
+        myText.append( line ).append( '\n' );
+    }
+
+    public void commandFinished( int command, int exitCode )
+    {
+      if( command >= myListeners.size() )
+        return;
+
+      VssOutputCollector listener = myListeners.get( command );
+      listener.setExitCode( exitCode );
+      if( listener instanceof VssLineOutputCollector )
+        ((VssLineOutputCollector)listener).outputFinished();
+      else
+        listener.everythingFinishedImpl( myText.toString() );
+      myText.setLength( 0 );
     }
   }
 }
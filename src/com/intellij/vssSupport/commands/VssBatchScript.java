@@ -0,0 +1,164 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.vssSupport.VssUtil;
+import org.jetbrains.annotations.NonNls;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Script which runs a sequence of ss.exe commands in one shell session, and
+ * the splitting of the combined output back into the output of every command.
+ * Each command is followed by a marker line with its index and exit code; the
+ * marker contains a random token, so that it never matches a line printed by
+ * ss.exe itself.
+ * The script is a batch file for "cmd.exe" on Windows and a shell script for
+ * "sh" elsewhere, the latter is used to test with a stand-in for ss.exe.
+ */
+final class VssBatchScript
+{
+  @NonNls private static final String MARKER_PREFIX = "##vss-batch-";
+  @NonNls private static final String WINDOWS_SHELL = "cmd.exe";
+  @NonNls private static final String UNIX_SHELL = "/bin/sh";
+
+  /**
+   * Receives the output of the commands of the script in their order.
+   */
+  interface Receiver
+  {
+    void lineAvailable( int command, String line );
+
+    void commandFinished( int command, int exitCode );
+  }
+
+  private final boolean myWindows;
+  private final String myMarker;
+  private int myCurrent;
+  private boolean myPendingEmptyLine;
+
+  VssBatchScript( boolean windows )
+  {
+    myWindows = windows;
+    myMarker = MARKER_PREFIX + Long.toHexString( new Random().nextLong() & Long.MAX_VALUE );
+  }
+
+  /**
+   * @return the beginning of the marker line which follows every command.
+   */
+  @NonNls
+  String getMarker()
+  {
+    return myMarker + " ";
+  }
+
+  @NonNls
+  String getExtension()
+  {
+    return myWindows ? ".cmd" : ".sh";
+  }
+
+  /**
+   * @return the shell executable followed by its parameters.
+   */
+  @NonNls
+  List<String> getShellCommand( String scriptPath )
+  {
+    List<String> command = new ArrayList<>();
+    if( myWindows )
+    {
+      command.add( WINDOWS_SHELL );
+      command.add( "/D" );
+      command.add( "/Q" );
+      command.add( "/C" );
+    }
+    else
+      command.add( UNIX_SHELL );
+    command.add( scriptPath );
+    return command;
+  }
+
+  /**
+   * @param commands parameters of every ss.exe run.
+   */
+  @NonNls
+  String build( String exePath, List<List<String>> commands )
+  {
+    String eol = myWindows ? "\r\n" : "\n";
+    StringBuilder script = new StringBuilder();
+    if( myWindows )
+      script.append( "@echo off" ).append( eol );
+
+    for( int i = 0; i < commands.size(); i++ )
+    {
+      script.append( quote( exePath ));
+      for( String param : commands.get( i ))
+        script.append( ' ' ).append( quote( param ));
+
+      //  The error stream goes to the output, so that the lines of every
+      //  command stay before its marker. The input is empty: a question
+      //  nobody can answer must end the command, not stop the session.
+      script.append( myWindows ? " <NUL 2>&1" : " </dev/null 2>&1" ).append( eol );
+      //  An empty line goes before the marker in case the output of the
+      //  command does not end with a line separator.
+      if( myWindows )
+        script.append( "echo." ).append( eol ).append( "echo " ).append( myMarker ).append( ' ' ).append( i ).append( " %ERRORLEVEL%" );
+      else
+        script.append( "printf '\\n" ).append( myMarker ).append( ' ' ).append( i ).append( " %d\\n' $?" );
+      script.append( eol );
+    }
+    return script.toString();
+  }
+
+  /**
+   * Passes the line of the combined output to the receiver: as a line of the
+   * current command, or as the end of it. The empty line printed before the
+   * marker is dropped.
+   */
+  void processLine( String line, Receiver receiver )
+  {
+    if( line.startsWith( getMarker() ))
+    {
+      String[] values = line.substring( myMarker.length() + 1 ).trim().split( " " );
+      int command = Integer.parseInt( values[ 0 ] );
+      int exitCode = ( values.length > 1 ) ? parseExitCode( values[ 1 ] ) : VssUtil.EXIT_CODE_FAILURE;
+      receiver.commandFinished( command, exitCode );
+      myCurrent = command + 1;
+      myPendingEmptyLine = false;
+      return;
+    }
+
+    if( myPendingEmptyLine )
+      receiver.lineAvailable( myCurrent, "" );
+    myPendingEmptyLine = line.isEmpty();
+    if( !myPendingEmptyLine )
+      receiver.lineAvailable( myCurrent, line );
+  }
+
+  /**
+   * @return the number of commands which are finished so far.
+   */
+  int getFinishedCount()
+  {
+    return myCurrent;
+  }
+
+  private static int parseExitCode( String value )
+  {
+    try
+    {
+      return Integer.parseInt( value );
+    }
+    catch( NumberFormatException e )
+    {
+      return VssUtil.EXIT_CODE_FAILURE;
+    }
+  }
+
+  private String quote( String param )
+  {
+    if( myWindows )
+      return "\"" + param.replace( "%", "%%" ) + "\"";
+    return "'" + param.replace( "'", "'\\''" ) + "'";
+  }
+}
@@ -3,6 +3,10 @@ package com.intellij.vssSupport.commands;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vssSupport.VssBundle;
+import com.intellij.vssSupport.VssRepositoryIndex;
+import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 
 import java.util.HashSet;
@@ -31,4 +35,63 @@ public abstract class VssCheckoutAbstractCommand extends VssCommandAbstract
   {
     super( project, errors );
   }
+
+  /**
+   * Puts the file into one of the result groups by the messages ss.exe
+   * issued for it.
+   * @param showErrorOutput whether the unrecognized failure is shown to the
+   *                        user immediately.
+   */
+  protected void storeResult( VirtualFile file, String output, int exitCode, boolean showErrorOutput )
+  {
+    if( output.indexOf( HAVE_FILE_MESSAGE ) != -1 )
+    {
+      checkedAlready.add( file.getPath() );
+    }
+    else if( output.indexOf( NOT_EXISTING_MESSAGE ) != -1 )
+    {
+      notexistingFiles.add( file.getPath() );
+    }
+    else if( output.indexOf( DELETED_MESSAGE ) != -1 )
+    {
+      deletedFiles.add( file.getPath() );
+    }
+    else if( output.indexOf( CHECKED_OUT_BY_ANOTHER_USER_MESSAGE ) != -1 )
+    {
+      checkedByOther.add( file.getPath() );
+    }
+    else if( VssUtil.EXIT_CODE_SUCCESS == exitCode || VssUtil.EXIT_CODE_WARNING == exitCode )
+    {
+      successFiles.add( file.getPath() );
+      VssRepositoryIndex.getInstance( myProject ).checkedOut( file.getPath() );
+    }
+    else if( showErrorOutput )
+    {
+      VssUtil.showErrorOutput( output, myProject );
+    }
+
+    if( VssUtil.EXIT_CODE_SUCCESS != exitCode && VssUtil.EXIT_CODE_WARNING != exitCode )
+    {
+      //  IDEADEV-11892. While impossible to keep track of the files which were
+      //  checked (via native ss client) into another working folder, we need
+      //  to give the user a hint.
+      String out = output;
+      if( output.indexOf( HAVE_FILE_MESSAGE ) != -1 )
+        out += "\n" + VssBundle.message( "message.text.hint" );
+
+      VcsException e = new VcsException( out );
+      e.setVirtualFile( file );
+      myErrors.add( e );
+    }
+  }
+
+  protected void storeResults( VssCheckoutAbstractCommand cmd )
+  {
+    successFiles.addAll( cmd.successFiles );
+    checkedAlready.addAll( cmd.checkedAlready );
+    checkedByOther.addAll( cmd.checkedByOther );
+    writableFiles.addAll( cmd.writableFiles );
+    deletedFiles.addAll( cmd.deletedFiles );
+    notexistingFiles.addAll( cmd.notexistingFiles );
+  }
 }
@@ -33,33 +33,64 @@ package com.intellij.vssSupport.commands;
 
 import com.intellij.execution.ExecutionException;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.encoding.EncodingProjectManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcsUtil.VcsUtil;
 import com.intellij.vssSupport.Configuration.VssConfiguration;
 import com.intellij.vssSupport.VssBundle;
 import com.intellij.vssSupport.VssOutputCollector;
+import com.intellij.vssSupport.VssRepositoryIndex;
 import com.intellij.vssSupport.VssUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 public abstract class VssCommandAbstract
 {
   @NonNls private static final String QUESTION_SUBSTRING = "(Y/N)N";
+  @NonNls private static final String CP_COMMAND = "cp";
+  @NonNls private static final String USERS_TXT = "users.txt";
+  @NonNls private static final String USERS_FOLDER = "users";
+  @NonNls private static final String SS_INI = "ss.ini";
+  @NonNls private static final String PROJECT_KEY = "Project";
   
   @NonNls protected static final String _I_OPTION = "-I";
   @NonNls protected static final String _I_Y_OPTION = "-I-Y";
   @NonNls protected static final String _I__OPTION = "-I-";
 
+  //  Windows limits the whole command line to 32767 characters, leave some
+  //  room for the quotes added by the process launcher.
+  protected static final int CMDLINE_MAX_LENGTH = 30000;
+  @NonNls private static final String LIST_FILE_PREFIX = "vsslist";
+  @NonNls private static final String LIST_FILE_OPTION = "@";
+
+  //  Asynchronous commands; the number of processes against one database is
+  //  limited in VSSExecUtil anyway.
+  private static final ExecutorService ourAsyncExecutor =
+    AppExecutorUtil.createBoundedApplicationPoolExecutor( "VSS Commands", 4 );
+
   @NotNull protected final Project myProject;
   protected final VssConfiguration myConfig;
   protected final List<VcsException> myErrors;
+  private Runnable myAfterRun;
 
   protected VssCommandAbstract( @NotNull Project project )
   {
@@ -93,18 +124,103 @@ public abstract class VssCommandAbstract
     }
     catch( ExecutionException exc )
     {
-      String msg = myConfig.checkCmdPath();
-      VcsException e = new VcsException( (msg != null) ? msg : exc.getLocalizedMessage() );
-      myErrors.add( e );
+      addExecutionError( exc );
     }
+
+    Runnable afterRun = myAfterRun;
+    myAfterRun = null;
+    if( afterRun != null )
+      afterRun.run();
+  }
+
+  /**
+   * Listeners do not ask the user or re-run the command themselves: the
+   * process slot is held until they return, and the dispatch thread may be
+   * waiting for it. The action is done as soon as the process is finished.
+   */
+  protected void afterRun( Runnable action )
+  {
+    myAfterRun = action;
+  }
+
+  /**
+   * Runs independent ss.exe commands one after another, each reporting its
+   * errors as <code>runProcess</code> does. The commands share one shell
+   * session if this is enabled in the configuration.
+   */
+  protected void runSequence( List<List<String>> commands, String wrkPath )
+  {
+    if( !myConfig.USE_BATCH_SESSIONS || commands.size() < 2 )
+    {
+      for( List<String> command : commands )
+        runProcess( command, wrkPath );
+      return;
+    }
+
+    List<MinimalOutputListener> listeners = new ArrayList<>();
+    for( int i = 0; i < commands.size(); i++ )
+      listeners.add( new MinimalOutputListener( myErrors ) );
+    try
+    {
+      VSSExecUtil.runBatch( myProject, myConfig.CLIENT_PATH, commands, myConfig.getSSDIREnv(), wrkPath, listeners, myErrors );
+    }
+    catch( ExecutionException exc )
+    {
+      addExecutionError( exc );
+    }
+  }
+
+  private void addExecutionError( ExecutionException exc )
+  {
+    String msg = myConfig.checkCmdPath();
+    VcsException e = new VcsException( (msg != null) ? msg : exc.getLocalizedMessage() );
+    myErrors.add( e );
   }
 
   public abstract void execute();
 
+  /**
+   * Runs the command on a pooled thread and gives the result which
+   * <code>result</code> takes from the finished command, e.g.
+   * <code>executeAsync( cmd, DirectoryCommand::isInProject )</code>.
+   * The command keeps the priority and the progress indicator of the calling
+   * thread, so that it is cancelled together with the caller. Commands which
+   * run at the same time must not share their list of errors.
+   */
+  public static <C extends VssCommandAbstract, T> CompletableFuture<T> executeAsync( @NotNull final C command,
+                                                                                     @NotNull final Function<? super C, ? extends T> result )
+  {
+    final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
+    final VssCommandPriority priority = VSSExecUtil.getPriority();
+    return CompletableFuture.supplyAsync( () -> {
+      ProgressManager.getInstance().executeProcessUnderProgress(
+        () -> VSSExecUtil.runWithPriority( priority, command::execute ), progress );
+      return result.apply( command );
+    }, ourAsyncExecutor );
+  }
+
+  /**
+   * Runs the command on a pooled thread and gives the errors of its run.
+   */
+  public CompletableFuture<List<VcsException>> executeAsync()
+  {
+    return executeAsync( this, VssCommandAbstract::getErrors );
+  }
+
+  /**
+   * Commands which change the structure of the repository make the state of
+   * the affected items unknown until the repository index is seeded again.
+   */
+  protected void invalidateIndex( String path )
+  {
+    VssRepositoryIndex.getInstance( myProject ).invalidate( path );
+  }
+
   /**
    * Standard behavior for a ss.exe command which require some input from the user:
    * if we find a question signature (with the default answer) - ask the user exactly
-   * the same question, and in the case of positive answer restart the command with
+   * the same question once the process has finished, and in the case of positive
+   * answer restart the command with
    * the flag to set "-I-Y" option into the command line (via <myContinue> field).
    *
    * NB: Current problem - ss.exe commands are divided into two classes - those
@@ -119,26 +235,34 @@ public abstract class VssCommandAbstract
     int questionIndex = errorOutput.indexOf(QUESTION_SUBSTRING);
     if( questionIndex != -1 )
     {
-      if( !ApplicationManager.getApplication().isDispatchThread() )
-        throw new AssertionError( "Commands can be issued only in the dispatch thread" );
-
-      String request = errorOutput.substring(0, questionIndex);
-      int answer = Messages.showYesNoDialog(request, VssBundle.message("message.title.source.safe"), Messages.getQuestionIcon());
-      if( answer != Messages.YES )
-      {
-//        setExecutionState( false );
-      }
-      else
-      {
-//        myContinue = true;
-//        if( continueUponPositiveAnswer )
+      final String request = errorOutput.substring(0, questionIndex);
+      afterRun( () -> {
+        boolean answer = askOnDispatchThread(
+          () -> Messages.showYesNoDialog(request, VssBundle.message("message.title.source.safe"), Messages.getQuestionIcon()) == Messages.YES );
+        if( answer )
           execute();
-      }
+      });
       return true;
     }
     return false;
   }
 
+  /**
+   * Asks the user in the dispatch thread, waiting for the answer if called
+   * from a background thread. Commands ask their questions before the run
+   * where possible, so that the run itself goes in the background without
+   * stopping.
+   */
+  protected static boolean askOnDispatchThread( final BooleanSupplier questions )
+  {
+    if( ApplicationManager.getApplication().isDispatchThread() )
+      return questions.getAsBoolean();
+
+    final boolean[] answer = new boolean[ 1 ];
+    ApplicationManager.getApplication().invokeAndWait( () -> answer[ 0 ] = questions.getAsBoolean() );
+    return answer[ 0 ];
+  }
+
   protected static List<String> appendIOption(List<String> options){
     for (final String option : options) {
       if( option.startsWith( _I_OPTION ) ) return options;
@@ -151,19 +275,182 @@ public abstract class VssCommandAbstract
     return options;
   }
 
-  protected void runCP( VirtualFile folder, String workingFolder )
+  /**
+   * @return false if the current project could not be set, the commands
+   *         relying on it must not run then.
+   */
+  protected boolean runCP( VirtualFile folder, String workingFolder )
   {
-    List<String> cpParams = formOptions( "cp", VssUtil.getVssPath( folder, myProject ) );
-    runProcess( cpParams, workingFolder );
+    return runCPIfNeeded( VssUtil.getVssPath( folder, myProject ), workingFolder );
   }
 
-  protected void runCP( String folder, String workingFolder )
+  protected boolean runCP( String folder, String workingFolder )
   {
     folder = VcsUtil.getCanonicalLocalPath( folder );
     folder = VssUtil.getVssPath( folder, true, myProject );
-    List<String> cpParams = formOptions( "cp", folder );
-    
-    runProcess( cpParams, workingFolder );
+    return runCPIfNeeded( folder, workingFolder );
+  }
+
+  /**
+   * "cp" is skipped if the project is already current, as the user's ss.ini
+   * tells: it is shared with every other client of the database.
+   */
+  private boolean runCPIfNeeded( @Nullable String vssPath, String workingFolder )
+  {
+    if( vssPath == null )
+    {
+      myErrors.add( new VcsException( VssBundle.message( "message.text.path.is.not.under.repository", workingFolder )));
+      return false;
+    }
+    if( vssPath.equalsIgnoreCase( readCurrentProject( getUserIniFile( myConfig.getSSUserName() ))))
+      return true;
+
+    int errorsCount = myErrors.size();
+    runProcess( formOptions( CP_COMMAND, vssPath ), workingFolder );
+    return myErrors.size() == errorsCount;
+  }
+
+  /**
+   * @return the value of "Project" key of the ss.ini, or null if the file can
+   *         not be read.
+   */
+  @Nullable
+  private static String readCurrentProject( File ini )
+  {
+    try
+    {
+      for( String line : FileUtil.loadLines( ini ) )
+      {
+        line = line.trim();
+        //  Only the global settings precede the first section.
+        if( line.startsWith( "[" ) )
+          break;
+        int index = line.indexOf( '=' );
+        if( index > 0 && line.substring( 0, index ).trim().equalsIgnoreCase( PROJECT_KEY ) )
+          return line.substring( index + 1 ).trim();
+      }
+    }
+    catch( IOException e )
+    {
+      //  Unknown - "cp" is issued.
+    }
+    return null;
+  }
+
+  /**
+   * The user's ss.ini as listed in users.txt of the database, by default it
+   * is "users\<name>\ss.ini".
+   */
+  private File getUserIniFile( String user )
+  {
+    File ssDir = new File( myConfig.getSSDIR() );
+    String iniPath = USERS_FOLDER + File.separator + user + File.separator + SS_INI;
+    try
+    {
+      for( String line : FileUtil.loadLines( new File( ssDir, USERS_TXT ) ) )
+      {
+        int index = line.indexOf( '=' );
+        if( index > 0 && line.substring( 0, index ).trim().equalsIgnoreCase( user ) )
+          iniPath = line.substring( index + 1 ).trim().replace( '\\', File.separatorChar );
+      }
+    }
+    catch( IOException e )
+    {
+      //  No users.txt - the default location is used.
+    }
+    File ini = new File( iniPath );
+    return ini.isAbsolute() ? ini : new File( ssDir, iniPath );
+  }
+
+  /**
+   * Issue "cp" for the folder and then the command itself, so that no other
+   * command changes the current project of the database in between.
+   */
+  protected void runInCurrentProject( final VirtualFile folder, final List<String> options, final String workingFolder )
+  {
+    VSSExecUtil.runInCurrentProject( myConfig.getSSDIR(), () -> {
+      if( runCP( folder, workingFolder ) )
+        runProcess( options, workingFolder );
+    });
+  }
+
+  protected void runInCurrentProject( final String folder, final List<String> options, final String workingFolder )
+  {
+    VSSExecUtil.runInCurrentProject( myConfig.getSSDIR(), () -> {
+      if( runCP( folder, workingFolder ) )
+        runProcess( options, workingFolder );
+    });
+  }
+
+  /**
+   * Run the command for all the items with as few ss.exe processes as
+   * possible: the items are passed through the list file ("@file" argument)
+   * if this is enabled in the configuration, otherwise they are packed into
+   * command lines of the maximal allowed length.
+   */
+  protected void runBatched( List<String> options, List<String> items, String workingPath )
+  {
+    runBatched( options, items, workingPath, new MinimalOutputListener( myErrors ) );
+  }
+
+  protected void runBatched( List<String> options, List<String> items, String workingPath,
+                             VssOutputCollector listener )
+  {
+    if( items.isEmpty() )
+      return;
+
+    if( myConfig.USE_LIST_FILES && items.size() > 1 && runWithListFile( options, items, workingPath, listener ) )
+      return;
+
+    //  Every argument may be quoted and is separated by a blank.
+    int fixedLength = myConfig.CLIENT_PATH.length() + 3;
+    for( String option : options )
+      fixedLength += option.length() + 3;
+
+    List<String> batch = new ArrayList<>( options );
+    int length = fixedLength;
+    for( String item : items )
+    {
+      int itemLength = item.length() + 3;
+      if( batch.size() > options.size() && length + itemLength > CMDLINE_MAX_LENGTH )
+      {
+        runProcess( batch, workingPath, listener );
+        batch = new ArrayList<>( options );
+        length = fixedLength;
+      }
+      batch.add( item );
+      length += itemLength;
+    }
+    runProcess( batch, workingPath, listener );
+  }
+
+  private boolean runWithListFile( List<String> options, List<String> items, String workingPath,
+                                   VssOutputCollector listener )
+  {
+    File listFile;
+    try
+    {
+      listFile = FileUtil.createTempFile( LIST_FILE_PREFIX, ".txt" );
+      String content = StringUtil.join( items, "\r\n" );
+      FileUtil.writeToFile( listFile, content.getBytes( EncodingProjectManager.getInstance( myProject ).getDefaultCharset() ));
+    }
+    catch( IOException e )
+    {
+      VSSExecUtil.LOG.info( "Can not create the list file, passing items in the command line: " + e.getMessage() );
+      return false;
+    }
+
+    try
+    {
+      List<String> listOptions = new ArrayList<>( options );
+      listOptions.add( LIST_FILE_OPTION + listFile.getPath() );
+      runProcess( listOptions, workingPath, listener );
+    }
+    finally
+    {
+      FileUtil.delete( listFile );
+    }
+    return true;
   }
 
   protected List<String> formOptions( @NonNls String... subcmd ) {
@@ -0,0 +1,18 @@
+package com.intellij.vssSupport.commands;
+
+/**
+ * Priority class of ss.exe commands waiting for a free process slot of the
+ * database. Commands of a higher class always start first, so that a
+ * checkout on typing never waits behind a refresh of the whole project.
+ *
+ * @see VSSExecUtil#runWithPriority
+ */
+public enum VssCommandPriority
+{
+  //  The user is waiting for the result right now: checkout on edit, diff.
+  INTERACTIVE,
+  //  Actions invoked by the user on several files, commit, update.
+  USER_BATCH,
+  //  Status refresh and prefetching, nobody is waiting for them.
+  BACKGROUND
+}
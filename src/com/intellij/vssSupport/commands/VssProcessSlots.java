@@ -0,0 +1,181 @@
+package com.intellij.vssSupport.commands;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounds the number of ss.exe processes which run simultaneously against one
+ * SourceSafe database. Databases are distinguished by their SSDIR value, thus
+ * commands issued against different databases never wait for each other.
+ *
+ * @author lloix
+ */
+final class VssProcessSlots
+{
+  private static final Map<String, VssProcessSlots> ourDatabases = new HashMap<>();
+
+  //  How often a waiting command checks whether it has been cancelled.
+  private static final int CANCEL_CHECK_MILLIS = 50;
+
+  private final ReentrantLock myCurrentProjectLock = new ReentrantLock();
+  private int myRunning;
+  private final Map<Object, Integer> myRunningByOwner = new HashMap<>();
+
+  //  Slots are reentrant: a command started by a listener of another command
+  //  of the same thread, e.g. the checkin repeated after a merge, runs in
+  //  the slot of the outer one instead of waiting for it forever.
+  private final Map<Thread, Integer> myHolds = new HashMap<>();
+  private final List<Waiter> myWaiters = new ArrayList<>();
+  private long mySequence;
+
+  private VssProcessSlots() {}
+
+  @NotNull
+  static VssProcessSlots getInstance( @Nullable String ssDir )
+  {
+    String key = (ssDir == null) ? "" : ssDir.toLowerCase();
+    synchronized( ourDatabases )
+    {
+      VssProcessSlots slots = ourDatabases.get( key );
+      if( slots == null )
+      {
+        slots = new VssProcessSlots();
+        ourDatabases.put( key, slots );
+      }
+      return slots;
+    }
+  }
+
+  /**
+   * Waits until the command may start and occupies one slot. The limit is
+   * passed on every call since it may be changed in the configuration at any
+   * moment.
+   * Waiting commands start in the order of their priority class; within a
+   * class the owner with fewer running processes goes first, so that one
+   * project does not take all the slots of a database shared by several
+   * projects, and then the earlier command. Unless only one process is
+   * allowed, background commands never take the last free slot: it stays
+   * for the commands the user waits for.
+   * A thread which already holds a slot gets it again at once.
+   *
+   * @param owner the project which issues the command.
+   * @return false if the wait was given up since <code>cancelled</code>
+   * became true; no slot is occupied then.
+   */
+  synchronized boolean acquire( int limit, @NotNull VssCommandPriority priority, @NotNull Object owner,
+                                BooleanSupplier cancelled ) throws InterruptedException
+  {
+    Thread thread = Thread.currentThread();
+    Integer holds = myHolds.get( thread );
+    if( holds != null )
+    {
+      myHolds.put( thread, holds + 1 );
+      return true;
+    }
+
+    Waiter waiter = new Waiter( priority, owner, mySequence++ );
+    myWaiters.add( waiter );
+    try
+    {
+      while( !canStart( waiter, limit ) )
+      {
+        if( cancelled.getAsBoolean() )
+          return false;
+        wait( CANCEL_CHECK_MILLIS );
+      }
+    }
+    finally
+    {
+      myWaiters.remove( waiter );
+      notifyAll();
+    }
+    myRunning++;
+    myRunningByOwner.merge( owner, 1, Integer::sum );
+    myHolds.put( thread, 1 );
+    return true;
+  }
+
+  /**
+   * Must be called by the thread which has acquired the slot.
+   */
+  synchronized void release( @NotNull Object owner )
+  {
+    Thread thread = Thread.currentThread();
+    Integer holds = myHolds.get( thread );
+    if( holds != null && holds > 1 )
+    {
+      myHolds.put( thread, holds - 1 );
+      return;
+    }
+    myHolds.remove( thread );
+
+    myRunning--;
+    myRunningByOwner.computeIfPresent( owner, ( key, count ) -> ( count > 1 ) ? count - 1 : null );
+    notifyAll();
+  }
+
+  private boolean canStart( Waiter waiter, int limit )
+  {
+    int slots = Math.max( limit, 1 );
+    if( waiter.myPriority == VssCommandPriority.BACKGROUND && slots > 1 )
+      slots--;
+    if( myRunning >= slots )
+      return false;
+
+    Waiter first = waiter;
+    for( Waiter other : myWaiters )
+    {
+      if( compare( other, first ) < 0 )
+        first = other;
+    }
+    return first == waiter;
+  }
+
+  private int compare( Waiter w1, Waiter w2 )
+  {
+    int result = w1.myPriority.compareTo( w2.myPriority );
+    if( result == 0 )
+      result = Integer.compare( getRunning( w1.myOwner ), getRunning( w2.myOwner ) );
+    if( result == 0 )
+      result = Long.compare( w1.mySequence, w2.mySequence );
+    return result;
+  }
+
+  private int getRunning( Object owner )
+  {
+    Integer count = myRunningByOwner.get( owner );
+    return ( count == null ) ? 0 : count;
+  }
+
+  /**
+   * "cp" command changes the current project which is stored in the user's
+   * ss.ini file, that is - it is shared by all processes working with the
+   * database. Commands relying on the current project must hold this lock
+   * from the "cp" till their own process finishes.
+   */
+  ReentrantLock getCurrentProjectLock()
+  {
+    return myCurrentProjectLock;
+  }
+
+  private static final class Waiter
+  {
+    private final VssCommandPriority myPriority;
+    private final Object myOwner;
+    private final long mySequence;
+
+    private Waiter( VssCommandPriority priority, Object owner, long sequence )
+    {
+      myPriority = priority;
+      myOwner = owner;
+      mySequence = sequence;
+    }
+  }
+}
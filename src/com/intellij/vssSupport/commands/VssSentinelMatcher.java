@@ -0,0 +1,192 @@
+package com.intellij.vssSupport.commands;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Looks for the well-known ss.exe messages in the raw output bytes. Every byte
+ * is examined exactly once, no matter how the output is split into chunks, so
+ * the check costs nearly nothing on long healthy outputs.
+ * All sentinels are plain ASCII, which has the same encoding in all the code
+ * pages ss.exe may use for its output.
+ * The output of a batch session is divided into the sections of its commands
+ * by the marker lines; every section is examined as the output of a separate
+ * process.
+ */
+final class VssSentinelMatcher
+{
+  enum Sentinel
+  {
+    //  ss.exe asks for the user name when the password is wrong and then
+    //  waits for the input forever.
+    USERNAME( "Username:", true, true ),
+    NO_DATABASE( "No VSS database", false, true ),
+    NO_ACCESS_RIGHTS( "do not have access rights", false, true ),
+    //  Question to the user. Commands run with "-I" options print the default
+    //  answer right after it, so the question is fatal only if nothing follows.
+    QUESTION( "(Y/N)", false, false );
+
+    private final byte[] myPattern;
+    private final int[] myFailure;
+    private final boolean myAtStartOnly;
+    private final boolean myFatal;
+
+    Sentinel( @NonNls String pattern, boolean atStartOnly, boolean fatal )
+    {
+      myPattern = pattern.getBytes( StandardCharsets.US_ASCII );
+      myFailure = buildFailureFunction( myPattern );
+      myAtStartOnly = atStartOnly;
+      myFatal = fatal;
+    }
+
+    public boolean isFatal() {  return myFatal;  }
+  }
+
+  private final Sentinel[] mySentinels = Sentinel.values();
+  private final int[] myStates = new int[ mySentinels.length ];
+
+  //  Written by the reader thread only, read by the timer of a question too.
+  private volatile long myTotalBytes;
+  private long myQuestionEnd = -1;
+
+  @Nullable private final byte[] mySectionMarker;
+  @Nullable private final int[] mySectionFailure;
+  private int mySectionState;
+  private boolean myInMarkerLine;
+  private long mySectionStart;
+
+  VssSentinelMatcher()
+  {
+    this( null );
+  }
+
+  /**
+   * @param sectionMarker the beginning of the line which ends the output of
+   * a command in a batch session, or null for the output of one command.
+   */
+  VssSentinelMatcher( @Nullable String sectionMarker )
+  {
+    mySectionMarker = (sectionMarker == null) ? null : sectionMarker.getBytes( StandardCharsets.US_ASCII );
+    mySectionFailure = (mySectionMarker == null) ? null : buildFailureFunction( mySectionMarker );
+  }
+
+  /**
+   * Examine the next chunk of the output.
+   * @return the first fatal sentinel completed within the chunk, or null.
+   */
+  @Nullable
+  Sentinel feed( byte[] bytes, int offset, int length )
+  {
+    Sentinel fatal = null;
+    long total = myTotalBytes;
+    for( int i = offset; i < offset + length; i++ )
+    {
+      byte b = bytes[ i ];
+      total++;
+      if( mySectionMarker != null && isSectionMarker( b, total ) )
+        continue;
+
+      for( int k = 0; k < mySentinels.length; k++ )
+      {
+        Sentinel sentinel = mySentinels[ k ];
+        if( sentinel.myAtStartOnly && total - mySectionStart > sentinel.myPattern.length )
+          continue;
+
+        int state = myStates[ k ];
+        while( state > 0 && sentinel.myPattern[ state ] != b )
+          state = sentinel.myFailure[ state - 1 ];
+        if( sentinel.myPattern[ state ] == b )
+          state++;
+
+        if( state == sentinel.myPattern.length )
+        {
+          if( sentinel.myFatal )
+          {
+            if( fatal == null )
+              fatal = sentinel;
+          }
+          else
+            myQuestionEnd = total;
+          state = sentinel.myFailure[ state - 1 ];
+        }
+        myStates[ k ] = state;
+      }
+    }
+    myTotalBytes = total;
+    return fatal;
+  }
+
+  /**
+   * Follows the marker lines; the next section starts after the end of the
+   * marker line.
+   * @return true if the byte belongs to a marker line.
+   */
+  private boolean isSectionMarker( byte b, long total )
+  {
+    if( myInMarkerLine )
+    {
+      if( b == '\n' )
+      {
+        myInMarkerLine = false;
+        mySectionStart = total;
+        myQuestionEnd = -1;
+        Arrays.fill( myStates, 0 );
+      }
+      return true;
+    }
+
+    int state = mySectionState;
+    while( state > 0 && mySectionMarker[ state ] != b )
+      state = mySectionFailure[ state - 1 ];
+    if( mySectionMarker[ state ] == b )
+      state++;
+    if( state == mySectionMarker.length )
+    {
+      myInMarkerLine = true;
+      state = 0;
+    }
+    mySectionState = state;
+    return myInMarkerLine;
+  }
+
+  /**
+   * @return true if there is a section marker, that is - several commands
+   * are run in one session.
+   */
+  boolean hasSections()
+  {
+    return mySectionMarker != null;
+  }
+
+  /**
+   * @return true if the output read so far ends with a question, that is -
+   * ss.exe probably waits for the answer from its input.
+   */
+  boolean endsWithQuestion()
+  {
+    return myQuestionEnd == myTotalBytes;
+  }
+
+  long getTotalBytes()
+  {
+    return myTotalBytes;
+  }
+
+  private static int[] buildFailureFunction( byte[] pattern )
+  {
+    int[] failure = new int[ pattern.length ];
+    int k = 0;
+    for( int i = 1; i < pattern.length; i++ )
+    {
+      while( k > 0 && pattern[ k ] != pattern[ i ] )
+        k = failure[ k - 1 ];
+      if( pattern[ k ] == pattern[ i ] )
+        k++;
+      failure[ i ] = k;
+    }
+    return failure;
+  }
+}
@@ -0,0 +1,111 @@
+package com.intellij.vssSupport.commands;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Joins identical read-only requests which are issued at the same time: the
+ * first caller runs ss.exe, the others wait for it and get the same result.
+ * Nothing is cached after the run is finished.
+ * If the run fails with an exception (e.g. since its progress is cancelled),
+ * it is thrown to the first caller only, and the others try once more on
+ * their own.
+ */
+public final class VssSingleFlight<V>
+{
+  @NonNls private static final String USER_OPTION_PREFIX = "-Y";
+
+  private final Map<String, CompletableFuture<V>> myFlights = new HashMap<>();
+  private volatile Runnable myJoinListener;
+
+  /**
+   * @return a key which is the same for the commands with the same options
+   * against the same database. Paths and switches are case-insensitive, the
+   * password given with "-Y" is not.
+   */
+  @NotNull
+  public static String key( String ssDir, List<String> options )
+  {
+    StringBuilder key = new StringBuilder( String.valueOf( ssDir ).toLowerCase() );
+    for( String option : options )
+    {
+      boolean isUser = option.regionMatches( true, 0, USER_OPTION_PREFIX, 0, USER_OPTION_PREFIX.length() );
+      key.append( '\n' ).append( isUser ? option : option.toLowerCase() );
+    }
+    return key.toString();
+  }
+
+  /**
+   * The listener is notified whenever a caller joins the run of another one,
+   * for the tests.
+   */
+  void setJoinListener( @Nullable Runnable listener )
+  {
+    myJoinListener = listener;
+  }
+
+  public V run( @NotNull String key, @NotNull Supplier<V> request )
+  {
+    while( true )
+    {
+      CompletableFuture<V> flight;
+      boolean own = false;
+      synchronized( myFlights )
+      {
+        flight = myFlights.get( key );
+        if( flight == null )
+        {
+          flight = new CompletableFuture<>();
+          myFlights.put( key, flight );
+          own = true;
+        }
+      }
+
+      if( own )
+        return runOwn( key, flight, request );
+
+      Runnable listener = myJoinListener;
+      if( listener != null )
+        listener.run();
+
+      try
+      {
+        return flight.join();
+      }
+      catch( CompletionException e )
+      {
+        //  The run of another caller failed, make our own one.
+      }
+    }
+  }
+
+  private V runOwn( String key, CompletableFuture<V> flight, Supplier<V> request )
+  {
+    try
+    {
+      V result = request.get();
+      flight.complete( result );
+      return result;
+    }
+    catch( RuntimeException | Error e )
+    {
+      flight.completeExceptionally( e );
+      throw e;
+    }
+    finally
+    {
+      synchronized( myFlights )
+      {
+        myFlights.remove( key );
+      }
+    }
+  }
+}
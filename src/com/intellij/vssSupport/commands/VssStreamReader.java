@@ -1,81 +1,223 @@
 package com.intellij.vssSupport.commands;
 
+import com.intellij.concurrency.JobScheduler;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.impl.CancellableRunnable;
 import com.intellij.openapi.vfs.encoding.EncodingProjectManager;
 import com.intellij.vssSupport.VssBundle;
-import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Reads one of the streams of ss.exe process and decodes it incrementally.
+ * If a line consumer is given, complete lines are passed to it as soon as they
+ * are read, and nothing is accumulated. Otherwise the whole decoded text is
+ * available via <code>getReadString</code> after the stream is closed.
+ */
 public final class VssStreamReader implements CancellableRunnable
 {
-  @NonNls private static final String NO_DATABASE_MESSAGE = "No VSS database";
-  @NonNls private static final String NO_ACCESS_RIGHTS_MESSAGE = "do not have access rights";
-  @NonNls private static final String USERNAME_PREFIX = "Username:";
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  //  How long ss.exe may stay silent after a question before we decide that it
+  //  waits for the answer from its input.
+  private static final int QUESTION_TIMEOUT_MILLIS = 2000;
 
-  private final ByteArrayOutputStream myByteContents;
   private final InputStream is;
-  @NotNull private final Project myProject;
+  private final CharsetDecoder myDecoder;
+  @Nullable private final Consumer<String> myLineConsumer;
+  @Nullable private final Runnable myKiller;
+  private final VssSentinelMatcher myMatcher;
+
+  //  In the streaming mode - the current incomplete line, otherwise - the
+  //  whole text read so far.
+  private final StringBuilder myText;
+  private boolean mySkipLineFeed;
   private String myOutput;
-  private String reason;
+  private volatile String reason;
+  private volatile long myLastActivity;
 
   public VssStreamReader(final InputStream is, @NotNull Project project)
+  {
+    this( is, project, null, null );
+  }
+
+  /**
+   * @param lineConsumer if not null, the stream is read in the streaming mode.
+   * @param killer is invoked as soon as a fatal message is found in the stream.
+   */
+  public VssStreamReader(final InputStream is, @NotNull Project project,
+                         @Nullable Consumer<String> lineConsumer, @Nullable Runnable killer)
+  {
+    this( is, project, lineConsumer, killer, null );
+  }
+
+  /**
+   * @param sectionMarker the beginning of the line which ends the output of
+   * every command of a batch session, or null if the process runs one command.
+   */
+  public VssStreamReader(final InputStream is, @NotNull Project project,
+                         @Nullable Consumer<String> lineConsumer, @Nullable Runnable killer,
+                         @Nullable String sectionMarker)
   {
     this.is = is;
-    myProject = project;
-    myByteContents = new ByteArrayOutputStream();
+    myLineConsumer = lineConsumer;
+    myKiller = killer;
+    myMatcher = new VssSentinelMatcher( sectionMarker );
+    myDecoder = EncodingProjectManager.getInstance( project ).getDefaultCharset().newDecoder()
+                  .onMalformedInput( CodingErrorAction.REPLACE )
+                  .onUnmappableCharacter( CodingErrorAction.REPLACE );
+    myText = new StringBuilder();
     reason = null;
+    myLastActivity = System.currentTimeMillis();
   }
 
   public String getReason()  {  return reason;  }
 
+  /**
+   * @return the time in milliseconds when anything was read from the stream
+   * for the last time, or when the reader was created.
+   */
+  public long getLastActivity()  {  return myLastActivity;  }
+
   public void run() {
-    byte[] buffer = new byte[8 * 1024];
+    ByteBuffer bytes = ByteBuffer.allocate( BUFFER_SIZE );
+    CharBuffer chars = CharBuffer.allocate( BUFFER_SIZE );
     try {
       int read;
-      while (((read = is.read(buffer, 0, buffer.length)) != -1))
+      while (((read = is.read(bytes.array(), bytes.position(), bytes.remaining())) != -1))
       {
-        myByteContents.write(buffer, 0, read);
-        if( buffer[ read - 1 ] == '\n' )
-          checkTextAvailable();
+        myLastActivity = System.currentTimeMillis();
+        checkSentinels( bytes.array(), bytes.position(), read );
+
+        bytes.position( bytes.position() + read );
+        bytes.flip();
+        decode( bytes, chars, false );
+        bytes.compact();
       }
     }
     catch (IOException ioe) {
     }
+
+    bytes.flip();
+    decode( bytes, chars, true );
+    myDecoder.flush( chars );
+    chars.flip();
+    textAvailable( chars );
+
+    if( myLineConsumer != null && myText.length() > 0 )
+      lineAvailable();
   }
 
+  /**
+   * @return the whole decoded text of the stream. In the streaming mode all
+   * the text is already passed to the line consumer and the result is empty.
+   */
   public String getReadString()
   {
     if( myOutput == null )
     {
-      try {
-        myOutput = StringUtil.convertLineSeparators( myByteContents.toString( EncodingProjectManager.getInstance(myProject).getDefaultCharset().name() ) );
-      }
-      catch( UnsupportedEncodingException e )
+      myOutput = StringUtil.convertLineSeparators( myText.toString() );
+    }
+
+    return myOutput;
+  }
+
+  private void decode( ByteBuffer bytes, CharBuffer chars, boolean endOfInput )
+  {
+    CoderResult result;
+    do
+    {
+      result = myDecoder.decode( bytes, chars, endOfInput );
+      chars.flip();
+      textAvailable( chars );
+      chars.clear();
+    }
+    while( result.isOverflow() );
+  }
+
+  private void textAvailable( CharBuffer chars )
+  {
+    if( myLineConsumer == null )
+    {
+      myText.append( chars );
+      return;
+    }
+
+    while( chars.hasRemaining() )
+    {
+      char c = chars.get();
+      if( c == '\n' && mySkipLineFeed )
       {
+        mySkipLineFeed = false;
+        continue;
       }
+
+      mySkipLineFeed = ( c == '\r' );
+      if( c == '\n' || c == '\r' )
+        lineAvailable();
+      else
+        myText.append( c );
     }
+  }
 
-    return myOutput;
+  private void lineAvailable()
+  {
+    String line = myText.toString();
+    myText.setLength( 0 );
+    myLineConsumer.accept( line );
   }
 
-  private void checkTextAvailable()
+  private void checkSentinels( byte[] buffer, int offset, int length )
   {
-    String text = StringUtil.convertLineSeparators( myByteContents.toString() );
-    if( text.startsWith( USERNAME_PREFIX ))
-      reason = VssBundle.message("exception.text.incorrect.username.or.password");
-    else
-    if( text.indexOf( NO_DATABASE_MESSAGE ) != -1 )
-      reason = VssBundle.message("exception.text.no.database.found");
+    VssSentinelMatcher.Sentinel sentinel = myMatcher.feed( buffer, offset, length );
+    if( sentinel != null && reason == null )
+    {
+      reason = getMessage( sentinel );
+      kill();
+    }
     else
-    if( text.indexOf( NO_ACCESS_RIGHTS_MESSAGE ) != -1 )
-      reason = VssBundle.message("exception.text.no.rights.to.perform.operation");
+    //  Commands of a batch session read their input from the null device, so
+    //  a question there ends its own command and never blocks the session.
+    if( myMatcher.endsWithQuestion() && !myMatcher.hasSections() )
+    {
+      //  Give ss.exe a chance to print the default answer, otherwise it
+      //  waits for the input which we can not give.
+      final long bytesRead = myMatcher.getTotalBytes();
+      JobScheduler.getScheduler().schedule( () -> {
+        if( reason == null && myMatcher.getTotalBytes() == bytesRead )
+        {
+          reason = VssBundle.message( "exception.text.unanswered.question" );
+          kill();
+        }
+      }, QUESTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    }
+  }
+
+  private void kill()
+  {
+    if( myKiller != null )
+      myKiller.run();
+  }
+
+  private static String getMessage( VssSentinelMatcher.Sentinel sentinel )
+  {
+    switch( sentinel )
+    {
+      case USERNAME:         return VssBundle.message("exception.text.incorrect.username.or.password");
+      case NO_DATABASE:      return VssBundle.message("exception.text.no.database.found");
+      default:               return VssBundle.message("exception.text.no.rights.to.perform.operation");
+    }
   }
 
   public void cancel() {
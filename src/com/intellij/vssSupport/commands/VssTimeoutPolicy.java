@@ -0,0 +1,116 @@
+package com.intellij.vssSupport.commands;
+
+import com.intellij.vssSupport.Configuration.VssConfiguration;
+import org.jetbrains.annotations.NonNls;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time limits of one ss.exe run, chosen by the kind of the command. Quick
+ * commands only read a property or change a setting; write commands change
+ * the database and transfer files, which may take a while with no output on
+ * a slow share; listing and history commands, recursive commands and
+ * commands over several items walk a lot of the database.
+ * The inactivity limit is counted from the last output of the process, so a
+ * long run is never aborted while it reports its progress, and a process
+ * which waits for an input nobody can give is stopped.
+ * Zero means no limit.
+ */
+final class VssTimeoutPolicy
+{
+  enum Kind {  QUICK, WRITE, LONG  }
+
+  //  Commands not listed here are taken for write commands.
+  @NonNls private static final Map<String, Kind> KINDS = new HashMap<>();
+  static
+  {
+    for( @NonNls String command : new String[]{ "cp", "Properties", "Status", "Whoami", "Physical" } )
+      KINDS.put( command.toLowerCase(), Kind.QUICK );
+    for( @NonNls String command : new String[]{ "Dir", "Get", "History", "Paths", "Links" } )
+      KINDS.put( command.toLowerCase(), Kind.LONG );
+  }
+
+  @NonNls private static final String RECURSIVE_OPTION = "-R";
+  @NonNls private static final String LIST_FILE_OPTION = "@";
+
+  private final long myTimeout;
+  private final long myInactivityTimeout;
+
+  VssTimeoutPolicy( long timeoutMillis, long inactivityTimeoutMillis )
+  {
+    myTimeout = timeoutMillis;
+    myInactivityTimeout = inactivityTimeoutMillis;
+  }
+
+  static VssTimeoutPolicy forCommand( List<String> params, VssConfiguration config )
+  {
+    switch( getKind( params ) )
+    {
+      case QUICK:
+        return new VssTimeoutPolicy( config.COMMAND_TIMEOUT * 1000L, config.COMMAND_INACTIVITY_TIMEOUT * 1000L );
+      case LONG:
+        return new VssTimeoutPolicy( config.LONG_COMMAND_TIMEOUT * 1000L, config.LONG_COMMAND_INACTIVITY_TIMEOUT * 1000L );
+      default:
+        return new VssTimeoutPolicy( config.WRITE_COMMAND_TIMEOUT * 1000L, config.WRITE_COMMAND_INACTIVITY_TIMEOUT * 1000L );
+    }
+  }
+
+  /**
+   * A batch session runs several commands, it gets the long limits.
+   */
+  static VssTimeoutPolicy forBatch( VssConfiguration config )
+  {
+    return new VssTimeoutPolicy( config.LONG_COMMAND_TIMEOUT * 1000L, config.LONG_COMMAND_INACTIVITY_TIMEOUT * 1000L );
+  }
+
+  /**
+   * @return LONG if the command is a listing or history command, is
+   * recursive, or works on more than one item; otherwise the kind of the
+   * command itself.
+   */
+  static Kind getKind( List<String> params )
+  {
+    if( params.isEmpty() )
+      return Kind.WRITE;
+
+    Kind kind = KINDS.get( params.get( 0 ).toLowerCase() );
+    if( kind == Kind.LONG )
+      return kind;
+
+    int items = 0;
+    for( int i = 1; i < params.size(); i++ )
+    {
+      String param = params.get( i );
+      if( param.equalsIgnoreCase( RECURSIVE_OPTION ) || param.startsWith( LIST_FILE_OPTION ) )
+        return Kind.LONG;
+      if( !param.startsWith( "-" ) )
+        items++;
+    }
+    //  Even a quick command may print nothing for a long while when it is
+    //  given hundreds of items, e.g. "Status" for files not checked out.
+    if( items > 1 )
+      return Kind.LONG;
+    return ( kind == null ) ? Kind.WRITE : kind;
+  }
+
+  /**
+   * @return true if the process has run longer than allowed in total.
+   */
+  boolean isExpired( long started, long now )
+  {
+    return myTimeout > 0 && now - started >= myTimeout;
+  }
+
+  /**
+   * @return true if the process has printed nothing for too long.
+   */
+  boolean isInactive( long lastActivity, long now )
+  {
+    return myInactivityTimeout > 0 && now - lastActivity >= myInactivityTimeout;
+  }
+
+  long getTimeout()            {  return myTimeout;  }
+  long getInactivityTimeout()  {  return myInactivityTimeout;  }
+}
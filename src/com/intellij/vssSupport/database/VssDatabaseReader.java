@@ -0,0 +1,299 @@
+package com.intellij.vssSupport.database;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only access to the physical files of a SourceSafe database, which
+ * lets us list projects together with the checkout records without starting
+ * ss.exe. Only the structures needed for that are decoded:
+ * - item files ("data/x/xxxxxxxx") with the item header record "DH" and the
+ *   checkout records "CF";
+ * - project entry files ("data/x/xxxxxxxx.a" or ".b") with "JP" records;
+ * - "names.dat" with "SN" records for the names longer than 34 symbols.
+ * Any inconsistency is reported as <code>IOException</code>, callers are
+ * expected to fall back to ss.exe then.
+ */
+public class VssDatabaseReader
+{
+  @NonNls private static final String DATA_PATH_KEY = "Data_Path";
+  @NonNls private static final String DEFAULT_DATA_PATH = "data";
+  @NonNls private static final String NAMES_FILE = "names.dat";
+  @NonNls private static final String ROOT_PHYSICAL = "AAAAAAAA";
+  @NonNls private static final String FILE_SIGNATURE = "SourceSafe@Microsoft";
+
+  //  Item files and project entry files start with the file signature padded
+  //  to 0x20 bytes; item files have their header record at 0x34.
+  private static final int SIGNATURE_LENGTH = 0x20;
+  private static final int ITEM_HEADER_OFFSET = 0x34;
+
+  private static final int ITEM_PROJECT = 1;
+  private static final int ITEM_FILE = 2;
+  private static final int ENTRY_DELETED = 0x01;
+  private static final int NAME_KIND_LONG = 2;
+  private static final int NAME_KIND_PROJECT = 10;
+
+  //  Field positions within the records.
+  private static final int NAME_LENGTH = 40;
+  private static final int SHORT_NAME_LENGTH = 34;
+  private static final int DH_NAME = 4;
+  private static final int DH_DATA_EXT = 46;
+  private static final int DH_LAST_CHECKOUT = 108;
+  private static final int JP_ITEM_TYPE = 0;
+  private static final int JP_FLAGS = 2;
+  private static final int JP_NAME = 4;
+  private static final int JP_PHYSICAL = 46;
+  private static final int CF_USER = 0;
+  private static final int CF_DATE = 32;
+  private static final int CF_WORKING_DIR = 36;
+  private static final int CF_MACHINE = 296;
+  private static final int PATH_LENGTH = 260;
+  private static final int USER_LENGTH = 32;
+
+  /**
+   * Checkout record of a file. Only the last checkout is reported for the
+   * files checked out by several users at once.
+   */
+  public static final class Checkout
+  {
+    private final String myUser;
+    private final long myDate;
+    private final String myWorkingFolder;
+    private final String myMachine;
+
+    Checkout( String user, long date, String workingFolder, String machine )
+    {
+      myUser = user;
+      myDate = date;
+      myWorkingFolder = workingFolder;
+      myMachine = machine;
+    }
+
+    public String getUser()          {  return myUser;           }
+    public long   getDate()          {  return myDate;           }
+    public String getWorkingFolder() {  return myWorkingFolder;  }
+    public String getMachine()       {  return myMachine;        }
+  }
+
+  public interface Visitor
+  {
+    /**
+     * @param relativePath path of the file relative to the walked project,
+     *                     with '/' as the separator.
+     * @param checkout the checkout record, or null if the file is not checked out.
+     */
+    void fileFound( @NotNull String relativePath, @Nullable Checkout checkout );
+  }
+
+  private static final class Entry
+  {
+    final String name;
+    final String physical;
+    final boolean isProject;
+
+    Entry( String name, String physical, boolean isProject )
+    {
+      this.name = name;
+      this.physical = physical;
+      this.isProject = isProject;
+    }
+  }
+
+  private final File myDataFolder;
+  private final Charset myCharset;
+  private byte[] myNames;
+
+  public VssDatabaseReader( @NotNull File srcSafeIni, @NotNull Charset charset ) throws IOException
+  {
+    myDataFolder = findDataFolder( srcSafeIni );
+    myCharset = charset;
+    if( !myDataFolder.isDirectory() )
+      throw new IOException( "Database data folder does not exist: " + myDataFolder.getPath() );
+  }
+
+  /**
+   * Visits all non-deleted files of the given project and its subprojects.
+   * @param vssPath project path like "$/Project/Sub".
+   */
+  public void walkProject( @NotNull String vssPath, @NotNull Visitor visitor ) throws IOException
+  {
+    walkProject( findProject( vssPath ), "", visitor );
+  }
+
+  private void walkProject( String physical, String relativePath, Visitor visitor ) throws IOException
+  {
+    for( Entry entry : readProjectEntries( physical ) )
+    {
+      String path = relativePath.length() == 0 ? entry.name : relativePath + "/" + entry.name;
+      if( entry.isProject )
+        walkProject( entry.physical, path, visitor );
+      else
+        visitor.fileFound( path, readCheckout( entry.physical ) );
+    }
+  }
+
+  private String findProject( String vssPath ) throws IOException
+  {
+    String physical = ROOT_PHYSICAL;
+    String path = vssPath.startsWith( "$" ) ? vssPath.substring( 1 ) : vssPath;
+    for( String segment : path.split( "/" ) )
+    {
+      if( segment.length() == 0 )
+        continue;
+
+      String next = null;
+      for( Entry entry : readProjectEntries( physical ) )
+      {
+        if( entry.isProject && entry.name.equalsIgnoreCase( segment ) )
+        {
+          next = entry.physical;
+          break;
+        }
+      }
+      if( next == null )
+        throw new IOException( "Project is not found in the database: " + vssPath );
+      physical = next;
+    }
+    return physical;
+  }
+
+  private List<Entry> readProjectEntries( String physical ) throws IOException
+  {
+    VssRecord header = readItemHeader( physical );
+    String dataExt = header.readString( DH_DATA_EXT, 2, myCharset );
+    byte[] content = readFile( new File( getItemFile( physical ).getPath() + "." + dataExt ) );
+    checkFileSignature( content, physical );
+
+    List<Entry> entries = new ArrayList<>();
+    int offset = SIGNATURE_LENGTH;
+    while( offset + VssRecord.HEADER_LENGTH <= content.length )
+    {
+      VssRecord record = VssRecord.read( content, offset, null );
+      if( "JP".equals( record.getSignature() ) &&
+          (record.readShort( JP_FLAGS ) & ENTRY_DELETED) == 0 )
+      {
+        int type = record.readShort( JP_ITEM_TYPE );
+        if( type != ITEM_PROJECT && type != ITEM_FILE )
+          throw new IOException( "Unknown item type " + type + " in project " + physical );
+
+        String name = readName( record, JP_NAME, type == ITEM_PROJECT );
+        String entryPhysical = record.readString( JP_PHYSICAL, 10, myCharset ).trim();
+        entries.add( new Entry( name, entryPhysical, type == ITEM_PROJECT ) );
+      }
+      offset += VssRecord.HEADER_LENGTH + record.getLength();
+    }
+    return entries;
+  }
+
+  @Nullable
+  private Checkout readCheckout( String physical ) throws IOException
+  {
+    byte[] content = readFile( getItemFile( physical ) );
+    checkFileSignature( content, physical );
+    VssRecord header = VssRecord.read( content, ITEM_HEADER_OFFSET, "DH" );
+
+    int offset = header.readInt( DH_LAST_CHECKOUT );
+    if( offset <= 0 )
+      return null;
+
+    VssRecord record = VssRecord.read( content, offset, "CF" );
+    String user = record.readString( CF_USER, USER_LENGTH, myCharset ).trim();
+    if( user.length() == 0 )
+      return null;
+
+    long date = (record.readInt( CF_DATE ) & 0xFFFFFFFFL) * 1000L;
+    String folder = record.readString( CF_WORKING_DIR, PATH_LENGTH, myCharset );
+    String machine = record.readString( CF_MACHINE, USER_LENGTH, myCharset );
+    return new Checkout( user, date, folder, machine );
+  }
+
+  private VssRecord readItemHeader( String physical ) throws IOException
+  {
+    byte[] content = readFile( getItemFile( physical ) );
+    checkFileSignature( content, physical );
+    return VssRecord.read( content, ITEM_HEADER_OFFSET, "DH" );
+  }
+
+  /**
+   * Names are stored in 34-byte fields; the longer ones are kept in
+   * "names.dat", the field then holds the truncated name.
+   */
+  private String readName( VssRecord record, int position, boolean isProject ) throws IOException
+  {
+    String shortName = record.readString( position + 2, SHORT_NAME_LENGTH, myCharset );
+    int namesOffset = record.readInt( position + NAME_LENGTH - 4 );
+    if( namesOffset <= 0 )
+      return shortName;
+
+    if( myNames == null )
+      myNames = readFile( new File( myDataFolder, NAMES_FILE ) );
+
+    VssRecord names = VssRecord.read( myNames, namesOffset, "SN" );
+    int kinds = names.readShort( 0 );
+    int base = 4 + kinds * 4;
+    for( int i = 0; i < kinds; i++ )
+    {
+      int kind = names.readShort( 4 + i * 4 );
+      int offset = names.readShort( 6 + i * 4 );
+      if( kind == (isProject ? NAME_KIND_PROJECT : NAME_KIND_LONG) )
+        return names.readString( base + offset, names.getLength() - base - offset, myCharset );
+    }
+    return shortName;
+  }
+
+  private File getItemFile( String physical )
+  {
+    String name = physical.toLowerCase();
+    return new File( new File( myDataFolder, name.substring( 0, 1 ) ), name );
+  }
+
+  private static byte[] readFile( File file ) throws IOException
+  {
+    return Files.readAllBytes( file.toPath() );
+  }
+
+  private static void checkFileSignature( byte[] content, String physical ) throws IOException
+  {
+    if( content.length < SIGNATURE_LENGTH ||
+        !new String( content, 0, FILE_SIGNATURE.length(), "US-ASCII" ).equals( FILE_SIGNATURE ) )
+      throw new IOException( "Not a SourceSafe database file: " + physical );
+  }
+
+  /**
+   * "Data_Path" value of srcsafe.ini, relative paths are resolved against
+   * the folder of the ini file.
+   */
+  private static File findDataFolder( File srcSafeIni ) throws IOException
+  {
+    String dataPath = DEFAULT_DATA_PATH;
+    try( BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( srcSafeIni ))))
+    {
+      String line;
+      while( (line = reader.readLine()) != null )
+      {
+        int index = line.indexOf( '=' );
+        if( index != -1 && line.substring( 0, index ).trim().equalsIgnoreCase( DATA_PATH_KEY ) )
+        {
+          dataPath = line.substring( index + 1 ).trim();
+          if( dataPath.length() > 1 && dataPath.startsWith( "\"" ) && dataPath.endsWith( "\"" ) )
+            dataPath = dataPath.substring( 1, dataPath.length() - 1 );
+          break;
+        }
+      }
+    }
+
+    File dataFolder = new File( dataPath );
+    return dataFolder.isAbsolute() ? dataFolder : new File( srcSafeIni.getParentFile(), dataPath );
+  }
+}
@@ -0,0 +1,105 @@
+package com.intellij.vssSupport.database;
+
+import org.jetbrains.annotations.NonNls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One record of a SourceSafe database file. Every record starts with the
+ * 8-byte header: data length (int32), two-letter signature and the CRC of
+ * the data (CRC-32 folded into 16 bits). All numbers are little-endian,
+ * strings are zero-terminated within their fixed-size fields.
+ */
+final class VssRecord
+{
+  static final int HEADER_LENGTH = 8;
+
+  private static final int[] CRC_TABLE = buildCrcTable();
+
+  private final String mySignature;
+  private final int myOffset;
+  private final ByteBuffer myData;
+
+  private VssRecord( String signature, int offset, ByteBuffer data )
+  {
+    mySignature = signature;
+    myOffset = offset;
+    myData = data;
+  }
+
+  /**
+   * Reads the record which starts at the given offset of the file content.
+   * @param signature expected signature, or null if any record is acceptable.
+   */
+  static VssRecord read( byte[] content, int offset, @NonNls String signature ) throws IOException
+  {
+    if( offset < 0 || offset + HEADER_LENGTH > content.length )
+      throw new IOException( "Record offset is out of file bounds: " + offset );
+
+    ByteBuffer header = ByteBuffer.wrap( content, offset, HEADER_LENGTH ).order( ByteOrder.LITTLE_ENDIAN );
+    int length = header.getInt();
+    String actualSignature = new String( content, offset + 4, 2, StandardCharsets.US_ASCII );
+    int crc = header.getShort( offset + 6 ) & 0xFFFF;
+
+    int dataOffset = offset + HEADER_LENGTH;
+    if( length < 0 || dataOffset + length > content.length )
+      throw new IOException( "Record length is out of file bounds: " + actualSignature + " at " + offset );
+    if( signature != null && !signature.equals( actualSignature ) )
+      throw new IOException( "Expected " + signature + " record at " + offset + ", found " + actualSignature );
+
+    //  Some records are written with no CRC at all.
+    if( crc != 0 && crc != crc16( content, dataOffset, length ) )
+      throw new IOException( "CRC mismatch in " + actualSignature + " record at " + offset );
+
+    ByteBuffer data = ByteBuffer.wrap( content, dataOffset, length ).slice().order( ByteOrder.LITTLE_ENDIAN );
+    return new VssRecord( actualSignature, offset, data );
+  }
+
+  String getSignature()  {  return mySignature;  }
+  int    getOffset()     {  return myOffset;     }
+  int    getLength()     {  return myData.limit();  }
+
+  short readShort( int position )  {  return myData.getShort( position );  }
+  int   readInt( int position )    {  return myData.getInt( position );    }
+
+  String readString( int position, int length, Charset charset )
+  {
+    int end = position;
+    while( end < position + length && end < myData.limit() && myData.get( end ) != 0 )
+      end++;
+
+    byte[] bytes = new byte[ end - position ];
+    for( int i = 0; i < bytes.length; i++ )
+      bytes[ i ] = myData.get( position + i );
+    return new String( bytes, charset );
+  }
+
+  /**
+   * CRC-32 (reflected polynomial 0xEDB88320, zero initial and final values)
+   * with its high and low halves xor-ed together.
+   */
+  static int crc16( byte[] bytes, int offset, int length )
+  {
+    int crc = 0;
+    for( int i = offset; i < offset + length; i++ )
+      crc = CRC_TABLE[ (crc ^ bytes[ i ]) & 0xFF ] ^ (crc >>> 8);
+    return (crc ^ (crc >>> 16)) & 0xFFFF;
+  }
+
+  private static int[] buildCrcTable()
+  {
+    int[] table = new int[ 256 ];
+    for( int i = 0; i < table.length; i++ )
+    {
+      int value = i;
+      for( int bit = 0; bit < 8; bit++ )
+        value = ((value & 1) != 0) ? (value >>> 1) ^ 0xEDB88320 : (value >>> 1);
+      table[ i ] = value;
+    }
+    return table;
+  }
+}
@@ -0,0 +1,24 @@
+package com.intellij.vssSupport.ui;
+
+import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
+import com.intellij.openapi.vcs.versionBrowser.StandardVersionFilterComponent;
+
+import javax.swing.*;
+
+/**
+ * Date and user filters of the repository log; VSS has no changeset numbers
+ * to filter by.
+ */
+public class VssVersionFilterComponent extends StandardVersionFilterComponent<ChangeBrowserSettings>
+{
+  public VssVersionFilterComponent( boolean showDateFilter )
+  {
+    super( showDateFilter );
+    init( new ChangeBrowserSettings() );
+  }
+
+  public JComponent getComponent()
+  {
+    return (JComponent)getStandardPanel();
+  }
+}
@@ -0,0 +1,104 @@
+package com.intellij.vssSupport.Checkin;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class VssCommitPlanTest extends TestCase
+{
+  private static final List<String> ROOTS = Collections.singletonList( "C:/Work/Project" );
+
+  private final Map<String, Set<String>> myCheckedOut = new HashMap<>();
+
+  private Set<String> getCheckedOutFiles( String folder )
+  {
+    return myCheckedOut.get( folder.toLowerCase() );
+  }
+
+  private void checkedOut( String folder, String... files )
+  {
+    Set<String> set = new HashSet<>();
+    for( String file : files )
+      set.add( file.toLowerCase() );
+    myCheckedOut.put( folder.toLowerCase(), set );
+  }
+
+  public void testWholeSubtreeIsCheckedInRecursively()
+  {
+    List<String> checkins = Arrays.asList( "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java",
+                                           "C:/Work/Project/src/util/C.java", "C:/Work/Project/doc/Readme.txt" );
+    checkedOut( "C:/Work/Project", "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java",
+                "C:/Work/Project/src/util/C.java", "C:/Work/Project/doc/Readme.txt", "C:/Work/Project/Other.java" );
+    checkedOut( "C:/Work/Project/src", "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java",
+                "C:/Work/Project/src/util/C.java" );
+
+    VssCommitPlan plan = VssCommitPlan.build( checkins, Collections.emptyList(), Collections.emptyList(),
+                                              Collections.emptyList(), ROOTS, this::getCheckedOutFiles );
+
+    //  The project root has one more file checked out, so only "src" is
+    //  checked in recursively.
+    List<VssCommitPlan.Step> steps = plan.getCheckins();
+    assertEquals( 2, steps.size() );
+    assertTrue( steps.get( 0 ).isRecursive() );
+    assertEquals( "C:/Work/Project/src", steps.get( 0 ).getFolder() );
+    assertEquals( 3, steps.get( 0 ).getPaths().size() );
+    assertFalse( steps.get( 1 ).isRecursive() );
+    assertEquals( "C:/Work/Project/doc", steps.get( 1 ).getFolder() );
+  }
+
+  public void testRenamedOrUnknownSubtreeIsNotCollapsed()
+  {
+    List<String> checkins = Arrays.asList( "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java",
+                                           "C:/Work/Project/lib/C.java", "C:/Work/Project/lib/impl/D.java" );
+    checkedOut( "C:/Work/Project/src", "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java",
+                "C:/Work/Project/src/util/Renamed.java" );
+
+    VssCommitPlan plan = VssCommitPlan.build( checkins, Collections.emptyList(), Collections.emptyList(),
+                                              Collections.singletonList( "C:/Work/Project/src/util/Renamed.java" ),
+                                              ROOTS, this::getCheckedOutFiles );
+
+    //  "src" contains a renamed file, "lib" is not known in the index.
+    assertEquals( 4, plan.getCheckins().size() );
+    for( VssCommitPlan.Step step : plan.getCheckins() )
+      assertFalse( step.isRecursive() );
+  }
+
+  public void testStaleCheckoutsAreConfirmed()
+  {
+    List<String> checkins = Arrays.asList( "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java" );
+    checkedOut( "C:/Work/Project", "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java" );
+    checkedOut( "C:/Work/Project/src", "C:/Work/Project/src/A.java", "C:/Work/Project/src/util/B.java" );
+
+    //  One more file has been checked out outside the IDE since the index
+    //  was seeded.
+    List<String> asked = new ArrayList<>();
+    VssCommitPlan plan = VssCommitPlan.build( checkins, Collections.emptyList(), Collections.emptyList(),
+                                              Collections.emptyList(), ROOTS, this::getCheckedOutFiles,
+                                              folder -> {
+                                                asked.add( folder );
+                                                Set<String> files = new HashSet<>( getCheckedOutFiles( folder ));
+                                                files.add( "c:/work/project/src/util/other.java" );
+                                                return files;
+                                              });
+
+    assertEquals( 2, plan.getCheckins().size() );
+    for( VssCommitPlan.Step step : plan.getCheckins() )
+      assertFalse( step.isRecursive() );
+    assertEquals( Arrays.asList( "C:/Work/Project", "C:/Work/Project/src" ), asked );
+  }
+
+  public void testItemsUnderDeletedFolderAreNotDeletedSeparately()
+  {
+    List<String> deletions = Arrays.asList( "C:/Work/Project/old/A.java", "C:/Work/Project/old",
+                                            "C:/Work/Project/src/B.java", "C:/Work/Project/src/C.java" );
+    VssCommitPlan plan = VssCommitPlan.build( Collections.emptyList(), deletions,
+                                              Collections.singletonList( "C:/Work/Project/old" ),
+                                              Collections.emptyList(), ROOTS, this::getCheckedOutFiles );
+
+    List<VssCommitPlan.Step> steps = plan.getDeletions();
+    assertEquals( 2, steps.size() );
+    assertEquals( Collections.singletonList( "C:/Work/Project/old" ), steps.get( 0 ).getPaths() );
+    assertEquals( Arrays.asList( "C:/Work/Project/src/B.java", "C:/Work/Project/src/C.java" ), steps.get( 1 ).getPaths() );
+    assertEquals( 2, plan.size() );
+  }
+}
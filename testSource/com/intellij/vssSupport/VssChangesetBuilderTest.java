@@ -0,0 +1,66 @@
+package com.intellij.vssSupport;
+
+import com.intellij.vssSupport.commands.HistoryParser;
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Locale;
+
+public class VssChangesetBuilderTest extends TestCase
+{
+  private static final String HISTORY =
+    "Building list for $/VssTest...\n\n" +
+    "*****  File2.java  *****\n" + "Version 5\n" + "User: Lloix        Date: 29-05-06   Time:  6:34p\n" +
+    "Checked in $/VssTest/SRC/DIR2\n" + "Comment: Fixed the build\n" + "\n" +
+    "*****  DIR2  *****\n" + "Version 6\n" + "User: Lloix        Date: 29-05-06   Time:  6:33p\n" +
+    "File5.java added\n" + "Comment: Fixed the build\n" + "\n" +
+    "*****  file3.java  *****\n" + "Version 4\n" + "User: Ann          Date: 29-05-06   Time:  6:32p\n" +
+    "Checked in $/VssTest/SRC/DIR2\n" + "Comment: Other change\n" + "\n" +
+    "*****  File2.java  *****\n" + "Version 4\n" + "User: Lloix        Date: 29-05-06   Time:  6:31p\n" +
+    "Checked in $/VssTest/SRC/DIR2\n" + "Comment: Fixed the build\n" + "\n" +
+    "*****  SRC  *****\n" + "Version 57\n" + "User: Lloix        Date: 29-05-06   Time:  2:10p\n" +
+    "Old.java deleted\n" + "Comment: Fixed the build\n" + "\n" +
+    "*****  Old.java  *****\n" + "Version 3\n" + "User: Ann          Date: 28-05-06   Time: 11:02a\n" +
+    "Checked in $/VssTest/SRC\n" + "Comment: Tidy up\n" + "\n";
+
+  public void testGrouping()
+  {
+    List<HistoryParser.SubmissionData> history = HistoryParser.parse( HISTORY );
+    List<VssChangesetBuilder.Changeset> changesets = new VssChangesetBuilder( "$/VssTest/" ).build( history );
+
+    //  File2.java checked in twice can not be in one changeset, the deletion
+    //  is too far in time.
+    assertEquals( 5, changesets.size() );
+
+    VssChangesetBuilder.Changeset first = changesets.get( 0 );
+    assertEquals( "Lloix", first.user );
+    assertEquals( "Fixed the build", first.comment );
+    assertEquals( 2, first.changes.size() );
+    assertEquals( "$/VssTest/SRC/DIR2/File2.java", first.changes.get( 0 ).vssPath );
+    assertEquals( VssChangesetBuilder.ChangeType.MODIFIED, first.changes.get( 0 ).type );
+    assertEquals( 5, first.changes.get( 0 ).version );
+    assertEquals( "$/VssTest/SRC/DIR2/File5.java", first.changes.get( 1 ).vssPath );
+    assertEquals( VssChangesetBuilder.ChangeType.ADDED, first.changes.get( 1 ).type );
+
+    assertEquals( "Ann", changesets.get( 1 ).user );
+    assertEquals( 4, changesets.get( 2 ).changes.get( 0 ).version );
+
+    VssChangesetBuilder.Changeset deletion = changesets.get( 3 );
+    assertEquals( "$/VssTest/SRC/Old.java", deletion.changes.get( 0 ).vssPath );
+    assertEquals( VssChangesetBuilder.ChangeType.DELETED, deletion.changes.get( 0 ).type );
+    //  The deleted file had the version of its last checkin.
+    assertEquals( 3, deletion.changes.get( 0 ).version );
+  }
+
+  public void testDateFormats()
+  {
+    long european = VssChangesetBuilder.parseDate( "29-05-06 6:34p", true );
+    long american = VssChangesetBuilder.parseDate( "5/29/2006 18:34", false );
+    assertTrue( european > 0 );
+    assertEquals( european, american );
+    assertEquals( -1, VssChangesetBuilder.parseDate( "yesterday", false ) );
+
+    assertTrue( VssChangesetBuilder.isDayFirst( Locale.UK ));
+    assertFalse( VssChangesetBuilder.isDayFirst( Locale.US ));
+  }
+}
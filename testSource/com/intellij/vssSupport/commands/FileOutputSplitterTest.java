@@ -0,0 +1,35 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class FileOutputSplitterTest extends TestCase
+{
+  public void testSplitByName()
+  {
+    FileOutputSplitter splitter = new FileOutputSplitter( Arrays.asList( "a.java", "aa.java", "B.java" ) );
+    splitter.addLine( "Database is locked for a moment" );
+    splitter.addLine( "$/Project/aa.java" );
+    splitter.addLine( "D:\\Project\\a.java" );
+    splitter.addLine( "b.java has been merged with conflicts." );
+    splitter.addLine( "Please resolve them before checking in." );
+
+    //  Echoed names are not messages.
+    assertNull( splitter.getOutput( 0 ) );
+    assertNull( splitter.getOutput( 1 ) );
+    assertEquals( "b.java has been merged with conflicts.\nPlease resolve them before checking in.",
+                  splitter.getOutput( 2 ) );
+    assertEquals( "Database is locked for a moment", splitter.getCommonOutput() );
+  }
+
+  public void testNameIsWholeWord()
+  {
+    FileOutputSplitter splitter = new FileOutputSplitter( Arrays.asList( "a.java" ) );
+    splitter.addLine( "a.java.bak is not an existing filename or project" );
+    splitter.addLine( "File a.java is checked out by another user." );
+
+    assertEquals( "a.java.bak is not an existing filename or project", splitter.getCommonOutput() );
+    assertEquals( "File a.java is checked out by another user.", splitter.getOutput( 0 ) );
+  }
+}
@@ -0,0 +1,98 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the script against a shell stand-in for ss.exe, which prints its
+ * parameters and fails for the "Fail" command.
+ */
+public class VssBatchScriptTest extends TestCase
+{
+  private static final String STAND_IN =
+    "#!/bin/sh\n" +
+    "echo \"$1: $2\"\n" +
+    "if [ \"$1\" = \"Fail\" ]; then echo \"$2 is not an existing filename or project\" >&2; exit 100; fi\n" +
+    "if [ \"$1\" = \"Blank\" ]; then echo; fi\n" +
+    "if [ \"$1\" = \"Partial\" ]; then printf 'no line separator'; fi\n" +
+    "exit 0\n";
+
+  private final List<List<String>> myLines = new ArrayList<>();
+  private final List<Integer> myExitCodes = new ArrayList<>();
+
+  public void testOutputIsSplitByCommands() throws Exception
+  {
+    if( File.separatorChar != '/' )
+      return;
+
+    File dir = createTempDir();
+    File ss = write( new File( dir, "ss" ), STAND_IN );
+    assertTrue( ss.setExecutable( true ));
+
+    List<List<String>> commands = Arrays.asList( Arrays.asList( "Get", "$/Project/It's here.txt" ),
+                                                 Arrays.asList( "Fail", "$/Project/Missing.txt" ),
+                                                 Arrays.asList( "Blank", "$/Project/B.txt" ),
+                                                 Arrays.asList( "Partial", "$/Project/C.txt" ));
+    VssBatchScript script = new VssBatchScript( false );
+    File scriptFile = write( new File( dir, "batch" + script.getExtension() ), script.build( ss.getPath(), commands ));
+
+    Process process = new ProcessBuilder( script.getShellCommand( scriptFile.getPath() )).redirectErrorStream( true ).start();
+    VssBatchScript.Receiver receiver = new VssBatchScript.Receiver()
+    {
+      public void lineAvailable( int command, String line )
+      {
+        while( myLines.size() <= command )
+          myLines.add( new ArrayList<>() );
+        myLines.get( command ).add( line );
+      }
+
+      public void commandFinished( int command, int exitCode )
+      {
+        assertEquals( myExitCodes.size(), command );
+        myExitCodes.add( exitCode );
+      }
+    };
+    try( BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() )))
+    {
+      String line;
+      while(( line = reader.readLine() ) != null )
+        script.processLine( line, receiver );
+    }
+    assertEquals( 0, process.waitFor() );
+
+    assertEquals( 4, script.getFinishedCount() );
+    assertEquals( Arrays.asList( 0, 100, 0, 0 ), myExitCodes );
+    assertEquals( Arrays.asList( "Get: $/Project/It's here.txt" ), myLines.get( 0 ));
+    assertEquals( Arrays.asList( "Fail: $/Project/Missing.txt", "$/Project/Missing.txt is not an existing filename or project" ),
+                  myLines.get( 1 ));
+    assertEquals( Arrays.asList( "Blank: $/Project/B.txt", "" ), myLines.get( 2 ));
+    assertEquals( Arrays.asList( "Partial: $/Project/C.txt", "no line separator" ), myLines.get( 3 ));
+  }
+
+  private static File createTempDir() throws IOException
+  {
+    File dir = File.createTempFile( "vssbatch", "" );
+    assertTrue( dir.delete() && dir.mkdir() );
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  private static File write( File file, String text ) throws IOException
+  {
+    try( Writer writer = new FileWriter( file ))
+    {
+      writer.write( text );
+    }
+    file.deleteOnExit();
+    return file;
+  }
+}
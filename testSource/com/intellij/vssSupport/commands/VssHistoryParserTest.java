@@ -133,4 +133,35 @@ public class VssHistoryParserTest extends TestCase
       assertTrue( "User is valid", change.submitter.equals("Lloix") );
     }
   }
+
+  public void testMergeLatestEntries()
+  {
+    String full = fileVersion( 3, "6:33p" ) + fileVersion( 2, "5:10p" ) + fileVersion( 1, "2:32p" );
+    ArrayList<HistoryParser.SubmissionData> cached = HistoryParser.parse( "History of $/VssTest ...\n\n" + full );
+
+    String latest = "History of $/VssTest ...\n\n" + fileVersion( 5, "7:01p" ) + fileVersion( 4, "6:50p" ) + fileVersion( 3, "6:33p" );
+    ArrayList<HistoryParser.SubmissionData> merged = HistoryParser.merge( cached, HistoryParser.parse( latest ), false );
+
+    assertNotNull( merged );
+    assertEquals( 5, merged.size() );
+    assertEquals( "5", merged.get( 0 ).version );
+    assertSame( cached.get( 0 ), merged.get( 2 ) );
+    for( int i = 1; i < merged.size(); i++ )
+      assertTrue( "Order is not preserved", merged.get( i - 1 ).order < merged.get( i ).order );
+  }
+
+  public void testMergeNeedsMoreEntries()
+  {
+    ArrayList<HistoryParser.SubmissionData> cached = HistoryParser.parse( fileVersion( 1, "2:32p" ) );
+    ArrayList<HistoryParser.SubmissionData> latest = HistoryParser.parse( fileVersion( 3, "6:33p" ) + fileVersion( 2, "5:10p" ) );
+
+    assertNull( HistoryParser.merge( cached, latest, false ) );
+    assertEquals( 2, HistoryParser.merge( cached, latest, true ).size() );
+  }
+
+  private static String fileVersion( int version, String time )
+  {
+    return "*****  file3.java  *****\n" + "Version " + version + "\n" +
+           "User: Lloix        Date: 24-04-06   Time:  " + time + "\n" + "Checked in $/vsstest/src/DIR2\n" + "\n";
+  }
 }
@@ -0,0 +1,128 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class VssProcessSlotsTest extends TestCase
+{
+  private static final Object PROJECT = "Project";
+
+  private final List<String> myStarted = Collections.synchronizedList( new ArrayList<>() );
+
+  public void testInteractiveCommandGoesFirst() throws Exception
+  {
+    VssProcessSlots slots = VssProcessSlots.getInstance( "InteractiveFirst" );
+    assertTrue( slots.acquire( 1, VssCommandPriority.BACKGROUND, PROJECT, () -> false ));
+
+    Thread background = start( slots, 1, VssCommandPriority.BACKGROUND, PROJECT, "background" );
+    Thread batch = start( slots, 1, VssCommandPriority.USER_BATCH, PROJECT, "batch" );
+    Thread interactive = start( slots, 1, VssCommandPriority.INTERACTIVE, PROJECT, "interactive" );
+    slots.release( PROJECT );
+
+    background.join();
+    batch.join();
+    interactive.join();
+    assertEquals( 3, myStarted.size() );
+    assertEquals( "interactive", myStarted.get( 0 ));
+    assertEquals( "batch", myStarted.get( 1 ));
+    assertEquals( "background", myStarted.get( 2 ));
+  }
+
+  public void testLastSlotIsKeptForUser() throws Exception
+  {
+    VssProcessSlots slots = VssProcessSlots.getInstance( "LastSlot" );
+    CountDownLatch done = hold( slots, 2, VssCommandPriority.BACKGROUND, PROJECT );
+
+    //  The second background command waits although one slot is free.
+    assertFalse( slots.acquire( 2, VssCommandPriority.BACKGROUND, PROJECT, () -> true ));
+    assertTrue( slots.acquire( 2, VssCommandPriority.INTERACTIVE, PROJECT, () -> false ));
+    slots.release( PROJECT );
+    done.countDown();
+  }
+
+  public void testOwnersShareSlots() throws Exception
+  {
+    VssProcessSlots slots = VssProcessSlots.getInstance( "Owners" );
+    CountDownLatch done1 = hold( slots, 2, VssCommandPriority.USER_BATCH, "First" );
+    CountDownLatch done2 = hold( slots, 2, VssCommandPriority.USER_BATCH, "First" );
+
+    Thread first = start( slots, 2, VssCommandPriority.USER_BATCH, "First", "first" );
+    Thread second = start( slots, 2, VssCommandPriority.USER_BATCH, "Second", "second" );
+    done1.countDown();
+
+    //  The project without running commands goes first although it came later.
+    second.join();
+    done2.countDown();
+    first.join();
+    assertEquals( "second", myStarted.get( 0 ));
+    assertEquals( "first", myStarted.get( 1 ));
+  }
+
+  public void testNestedCommandKeepsSlot() throws Exception
+  {
+    VssProcessSlots slots = VssProcessSlots.getInstance( "Nested" );
+    assertTrue( slots.acquire( 1, VssCommandPriority.USER_BATCH, PROJECT, () -> false ));
+
+    //  A command started from the listener of the running one does not wait
+    //  for its own slot.
+    assertTrue( slots.acquire( 1, VssCommandPriority.USER_BATCH, PROJECT, () -> true ));
+    slots.release( PROJECT );
+
+    Thread other = start( slots, 1, VssCommandPriority.INTERACTIVE, PROJECT, "other" );
+    assertTrue( myStarted.isEmpty() );
+    slots.release( PROJECT );
+    other.join();
+    assertEquals( "other", myStarted.get( 0 ));
+  }
+
+  /**
+   * Occupies a slot in another thread until the returned latch is released.
+   */
+  private static CountDownLatch hold( VssProcessSlots slots, int limit, VssCommandPriority priority,
+                                      Object owner ) throws InterruptedException
+  {
+    CountDownLatch started = new CountDownLatch( 1 );
+    CountDownLatch done = new CountDownLatch( 1 );
+    new Thread( () -> {
+      try
+      {
+        slots.acquire( limit, priority, owner, () -> false );
+        started.countDown();
+        done.await();
+        slots.release( owner );
+      }
+      catch( InterruptedException e )
+      {
+        started.countDown();
+      }
+    }).start();
+    started.await();
+    return done;
+  }
+
+  private Thread start( VssProcessSlots slots, int limit, VssCommandPriority priority, Object owner,
+                        String name ) throws InterruptedException
+  {
+    Thread thread = new Thread( () -> {
+      try
+      {
+        slots.acquire( limit, priority, owner, () -> false );
+        myStarted.add( name );
+        slots.release( owner );
+      }
+      catch( InterruptedException e )
+      {
+        myStarted.add( e.getMessage() );
+      }
+    });
+    thread.start();
+
+    //  Let the command get into the queue.
+    Thread.sleep( 200 );
+    return thread;
+  }
+}
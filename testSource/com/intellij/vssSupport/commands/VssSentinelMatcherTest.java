@@ -0,0 +1,58 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+public class VssSentinelMatcherTest extends TestCase
+{
+  public void testFatalMessageSplitBetweenChunks()
+  {
+    VssSentinelMatcher matcher = new VssSentinelMatcher();
+    assertNull( feed( matcher, "$/vsstest/SRC:\nYou do not have acc" ) );
+    assertEquals( VssSentinelMatcher.Sentinel.NO_ACCESS_RIGHTS, feed( matcher, "ess rights to $/vsstest\n" ) );
+  }
+
+  public void testUserNameOnlyAtStart()
+  {
+    VssSentinelMatcher matcher = new VssSentinelMatcher();
+    assertEquals( VssSentinelMatcher.Sentinel.USERNAME, feed( matcher, "Username:" ) );
+
+    matcher = new VssSentinelMatcher();
+    assertNull( feed( matcher, "Comment: Username: was changed\n" ) );
+  }
+
+  public void testQuestionWithDefaultAnswer()
+  {
+    VssSentinelMatcher matcher = new VssSentinelMatcher();
+    assertNull( feed( matcher, "Undo check out and lose changes?(Y/N)" ) );
+    assertTrue( matcher.endsWithQuestion() );
+
+    assertNull( feed( matcher, "N\n" ) );
+    assertFalse( matcher.endsWithQuestion() );
+  }
+
+  public void testEverySectionHasItsStart()
+  {
+    VssSentinelMatcher matcher = new VssSentinelMatcher( "##vss-batch-1f " );
+    assertNull( feed( matcher, "$/vsstest/A.txt\n\n##vss-batch-1f 0 0\nUser" ) );
+    assertEquals( VssSentinelMatcher.Sentinel.USERNAME, feed( matcher, "name:" ) );
+  }
+
+  public void testQuestionEndsWithSection()
+  {
+    VssSentinelMatcher matcher = new VssSentinelMatcher( "##vss-batch-1f " );
+    assertNull( feed( matcher, "Undo check out and lose changes?(Y/N)" ) );
+    assertTrue( matcher.endsWithQuestion() );
+    assertTrue( matcher.hasSections() );
+
+    assertNull( feed( matcher, "\n##vss-batch-1f 0 100\n" ) );
+    assertFalse( matcher.endsWithQuestion() );
+  }
+
+  private static VssSentinelMatcher.Sentinel feed( VssSentinelMatcher matcher, String text )
+  {
+    byte[] bytes = text.getBytes( StandardCharsets.US_ASCII );
+    return matcher.feed( bytes, 0, bytes.length );
+  }
+}
@@ -0,0 +1,62 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VssSingleFlightTest extends TestCase
+{
+  public void testConcurrentRequestsShareOneRun() throws Exception
+  {
+    final VssSingleFlight<String> flights = new VssSingleFlight<>();
+    final String key = VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "-R-", "$/Project/src" ));
+    final CountDownLatch started = new CountDownLatch( 1 );
+    final CountDownLatch finish = new CountDownLatch( 1 );
+    final CountDownLatch joined = new CountDownLatch( 1 );
+    flights.setJoinListener( joined::countDown );
+    final AtomicInteger runs = new AtomicInteger();
+    final String[] results = new String[ 2 ];
+
+    Thread first = new Thread( () -> results[ 0 ] = flights.run( key, () -> {
+      runs.incrementAndGet();
+      started.countDown();
+      try {  finish.await();  } catch( InterruptedException e ) {  throw new RuntimeException( e );  }
+      return "result";
+    }));
+    first.start();
+    started.await();
+
+    Thread second = new Thread( () -> results[ 1 ] = flights.run( key, () -> {
+      runs.incrementAndGet();
+      return "second";
+    }));
+    second.start();
+    joined.await();
+    finish.countDown();
+    first.join();
+    second.join();
+
+    assertEquals( 1, runs.get() );
+    assertEquals( "result", results[ 0 ] );
+    assertEquals( "result", results[ 1 ] );
+
+    //  Nothing is kept after the run.
+    assertEquals( "again", flights.run( key, () -> "again" ));
+  }
+
+  public void testKeyIgnoresCaseOfPathsOnly()
+  {
+    assertEquals( VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "$/Project/Src" )),
+                  VssSingleFlight.key( "c:\\vss", Arrays.asList( "properties", "$/project/src" )));
+    assertEquals( VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "-R-", "$/Project/Src", "-YUser,Secret" )),
+                  VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "-r-", "$/Project/src", "-YUser,Secret" )));
+    assertFalse( VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "$/Project/Src" )).equals(
+                 VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "$/Project/Lib" ))));
+
+    //  Passwords differing in case are different passwords.
+    assertFalse( VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "$/Project/Src", "-YUser,Secret" )).equals(
+                 VssSingleFlight.key( "C:\\VSS", Arrays.asList( "Properties", "$/Project/Src", "-YUser,secret" ))));
+  }
+}
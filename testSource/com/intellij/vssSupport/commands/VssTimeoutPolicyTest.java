@@ -0,0 +1,39 @@
+package com.intellij.vssSupport.commands;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class VssTimeoutPolicyTest extends TestCase
+{
+  public void testKinds()
+  {
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "Dir", "$/Project", "-I-" )));
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "history", "$/Project/A.java" )));
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "Checkin", "$/Project", "-R", "-I-Y" )));
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "Checkout", "@C:\\Temp\\vsslist1.txt" )));
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "Checkout", "$/Project/A.java", "$/Project/B.java" )));
+
+    assertEquals( VssTimeoutPolicy.Kind.WRITE, VssTimeoutPolicy.getKind( Arrays.asList( "Checkout", "$/Project/A.java", "-C-", "-I-Y" )));
+    assertEquals( VssTimeoutPolicy.Kind.WRITE, VssTimeoutPolicy.getKind( Arrays.asList( "Rename", "A.java", "-I-" )));
+    assertEquals( VssTimeoutPolicy.Kind.WRITE, VssTimeoutPolicy.getKind( Arrays.asList( "Undocheckout", "$/Project/A.java", "-G-" )));
+
+    assertEquals( VssTimeoutPolicy.Kind.QUICK, VssTimeoutPolicy.getKind( Arrays.asList( "cp", "$/Project" )));
+    assertEquals( VssTimeoutPolicy.Kind.QUICK, VssTimeoutPolicy.getKind( Arrays.asList( "Properties", "$/Project/A.java", "-I-" )));
+    assertEquals( VssTimeoutPolicy.Kind.QUICK, VssTimeoutPolicy.getKind( Arrays.asList( "Status", "$/Project/A.java", "-U" )));
+    assertEquals( VssTimeoutPolicy.Kind.LONG, VssTimeoutPolicy.getKind( Arrays.asList( "Status", "$/Project/A.java", "$/Project/B.java", "-U" )));
+  }
+
+  public void testLimits()
+  {
+    VssTimeoutPolicy policy = new VssTimeoutPolicy( 40000, 15000 );
+    assertFalse( policy.isExpired( 0, 39999 ));
+    assertTrue( policy.isExpired( 0, 40000 ));
+    assertFalse( policy.isInactive( 30000, 44999 ));
+    assertTrue( policy.isInactive( 30000, 45000 ));
+
+    VssTimeoutPolicy unlimited = new VssTimeoutPolicy( 0, 0 );
+    assertFalse( unlimited.isExpired( 0, Long.MAX_VALUE ));
+    assertFalse( unlimited.isInactive( 0, Long.MAX_VALUE ));
+  }
+}
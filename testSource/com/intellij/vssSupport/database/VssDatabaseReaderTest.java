@@ -0,0 +1,216 @@
+package com.intellij.vssSupport.database;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the decoding of the record structures as the reader expects them;
+ * it is not a proof of compatibility with the files SourceSafe writes.
+ * Builds a tiny database in a temporary folder:
+ * $/         (AAAAAAAA) - a.txt (BAAAAAAA, checked out by Lloix), old.txt (deleted), Sub
+ * $/Sub      (CAAAAAAA) - a file with the long name (DAAAAAAA)
+ */
+public class VssDatabaseReaderTest extends TestCase
+{
+  private static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+  private static final String LONG_NAME = "VeryLongFileNameWhichDoesNotFitIntoTheShortField.java";
+
+  private File myRoot;
+
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+    myRoot = Files.createTempDirectory( "vssdb" ).toFile();
+    File data = new File( myRoot, "data" );
+
+    write( new File( myRoot, "srcsafe.ini" ), "; comment\r\nData_Path = data\r\n".getBytes( CHARSET ) );
+
+    byte[] names = concat( fileSignature(), record( "SN", nameRecord( 2, LONG_NAME ) ) );
+    write( new File( data, "names.dat" ), names );
+
+    write( new File( data, "a/aaaaaaaa" ), itemFile( 1, "a", null ) );
+    write( new File( data, "a/aaaaaaaa.a" ), concat( fileSignature(),
+                                                      record( "JP", entry( 2, 0, "a.txt", 0, "BAAAAAAA" ) ),
+                                                      record( "JP", entry( 2, 1, "old.txt", 0, "EAAAAAAA" ) ),
+                                                      record( "JP", entry( 1, 0, "Sub", 0, "CAAAAAAA" ) ) ) );
+
+    write( new File( data, "b/baaaaaaa" ), itemFile( 2, "a", "Lloix" ) );
+
+    write( new File( data, "c/caaaaaaa" ), itemFile( 1, "b", null ) );
+    write( new File( data, "c/caaaaaaa.b" ), concat( fileSignature(),
+                                                      record( "JP", entry( 2, 0, LONG_NAME.substring( 0, 33 ), SIGNATURE_LENGTH, "DAAAAAAA" ) ) ) );
+
+    write( new File( data, "d/daaaaaaa" ), itemFile( 2, "a", null ) );
+  }
+
+  protected void tearDown() throws Exception
+  {
+    delete( myRoot );
+    super.tearDown();
+  }
+
+  public void testWalkWholeDatabase() throws IOException
+  {
+    final List<String> found = new ArrayList<>();
+    VssDatabaseReader reader = new VssDatabaseReader( new File( myRoot, "srcsafe.ini" ), CHARSET );
+    reader.walkProject( "$/", ( path, checkout ) -> found.add( path + (checkout == null ? "" : " " + checkout.getUser() + " " + checkout.getWorkingFolder()) ) );
+
+    assertEquals( Arrays.asList( "a.txt Lloix D:\\Projects\\Test", "Sub/" + LONG_NAME ), found );
+  }
+
+  public void testWalkSubproject() throws IOException
+  {
+    final List<String> found = new ArrayList<>();
+    VssDatabaseReader reader = new VssDatabaseReader( new File( myRoot, "srcsafe.ini" ), CHARSET );
+    reader.walkProject( "$/sub", ( path, checkout ) -> found.add( path ) );
+
+    assertEquals( Arrays.asList( LONG_NAME ), found );
+  }
+
+  public void testMissingProject() throws IOException
+  {
+    VssDatabaseReader reader = new VssDatabaseReader( new File( myRoot, "srcsafe.ini" ), CHARSET );
+    try
+    {
+      reader.walkProject( "$/NoSuchProject", ( path, checkout ) -> {} );
+      fail();
+    }
+    catch( IOException e )
+    {
+      //  expected
+    }
+  }
+
+  public void testCorruptedRecord() throws IOException
+  {
+    File entries = new File( myRoot, "data/a/aaaaaaaa.a" );
+    byte[] content = Files.readAllBytes( entries.toPath() );
+    content[ content.length - 1 ] ^= 0x55;
+    write( entries, content );
+
+    VssDatabaseReader reader = new VssDatabaseReader( new File( myRoot, "srcsafe.ini" ), CHARSET );
+    try
+    {
+      reader.walkProject( "$/", ( path, checkout ) -> {} );
+      fail();
+    }
+    catch( IOException e )
+    {
+      assertTrue( e.getMessage(), e.getMessage().contains( "CRC" ) );
+    }
+  }
+
+  //---------------------------------------------------------------------------
+  //  Database writing helpers.
+  //---------------------------------------------------------------------------
+  private static final int SIGNATURE_LENGTH = 0x20;
+
+  private static byte[] fileSignature()
+  {
+    return fixed( "SourceSafe@Microsoft", SIGNATURE_LENGTH );
+  }
+
+  private static byte[] itemFile( int type, String dataExt, @Nullable String checkoutUser )
+  {
+    ByteBuffer prefix = buffer( 20 );
+    prefix.putShort( (short)type ).putShort( (short)6 );
+
+    int headerOffset = SIGNATURE_LENGTH + 20;
+    ByteBuffer header = buffer( 120 );
+    header.putShort( (short)type );
+    header.position( 46 );
+    header.put( fixed( dataExt, 2 ) );
+
+    byte[] checkout = new byte[ 0 ];
+    if( checkoutUser != null )
+    {
+      header.putInt( 108, headerOffset + 8 + 120 );
+      ByteBuffer cf = buffer( 340 );
+      cf.put( fixed( checkoutUser, 32 ) );
+      cf.putInt( 1170000000 );
+      cf.put( fixed( "D:\\Projects\\Test", 260 ) );
+      cf.put( fixed( "WORKSTATION", 32 ) );
+      checkout = record( "CF", cf.array() );
+    }
+    return concat( fileSignature(), prefix.array(), record( "DH", header.array() ), checkout );
+  }
+
+  private static byte[] entry( int type, int flags, String name, int namesOffset, String physical )
+  {
+    ByteBuffer buffer = buffer( 56 );
+    buffer.putShort( (short)type ).putShort( (short)flags );
+    buffer.putShort( (short)0 ).put( fixed( name, 34 ) ).putInt( namesOffset );
+    buffer.putShort( (short)0 ).put( fixed( physical, 10 ) );
+    return buffer.array();
+  }
+
+  private static byte[] nameRecord( int kind, String name )
+  {
+    byte[] dosName = fixed( "VERYLO~1.JAV", 13 );
+    byte[] longName = fixed( name, name.length() + 1 );
+    ByteBuffer buffer = buffer( 4 + 2 * 4 + dosName.length + longName.length );
+    buffer.putShort( (short)2 ).putShort( (short)0 );
+    buffer.putShort( (short)1 ).putShort( (short)0 );
+    buffer.putShort( (short)kind ).putShort( (short)dosName.length );
+    buffer.put( dosName ).put( longName );
+    return buffer.array();
+  }
+
+  private static byte[] record( String signature, byte[] data )
+  {
+    ByteBuffer buffer = buffer( VssRecord.HEADER_LENGTH + data.length );
+    buffer.putInt( data.length ).put( signature.getBytes( StandardCharsets.US_ASCII ) );
+    buffer.putShort( (short)VssRecord.crc16( data, 0, data.length ) ).put( data );
+    return buffer.array();
+  }
+
+  private static ByteBuffer buffer( int length )
+  {
+    return ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+  }
+
+  private static byte[] fixed( String text, int length )
+  {
+    return Arrays.copyOf( text.getBytes( CHARSET ), length );
+  }
+
+  private static byte[] concat( byte[]... parts )
+  {
+    int length = 0;
+    for( byte[] part : parts )
+      length += part.length;
+
+    ByteBuffer buffer = ByteBuffer.allocate( length );
+    for( byte[] part : parts )
+      buffer.put( part );
+    return buffer.array();
+  }
+
+  private static void write( File file, byte[] content ) throws IOException
+  {
+    file.getParentFile().mkdirs();
+    Files.write( file.toPath(), content );
+  }
+
+  private static void delete( File file )
+  {
+    File[] children = file.listFiles();
+    if( children != null )
+    {
+      for( File child : children )
+        delete( child );
+    }
+    file.delete();
+  }
+}